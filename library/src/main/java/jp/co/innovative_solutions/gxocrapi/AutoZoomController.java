@@ -0,0 +1,112 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * スキャン帯の候補となるテキストの大きさに応じて、カメラのズームを段階的に変更するコントローラー。
+ * <ul>
+ * <li>候補の1行の高さが下限より小さい場合は、1段階ズームインします。</li>
+ * <li>候補の1行の高さが上限より大きい場合は、1段階ズームアウトします。</li>
+ * <li>候補が{@link #LOST_MILLIS}の間見つからない場合は、1段階ずつズームアウトします。</li>
+ * </ul>
+ * 1段階は最大のズームの1/{@link #STEPS}です。ズームを変更した後は、カメラが適用してフォーカスを合わせ直すまで
+ * {@link #SETTLE_MILLIS}の間は変更しません。手動でズームした後は{@link #MANUAL_HOLD_MILLIS}の間変更しません。
+ * 時刻は全て呼び出し元から渡されるため、テストでは任意の時刻を与えることができます。
+ */
+public final class AutoZoomController {
+    // ズームを変更した後、次に変更するまでの時間
+    static final long SETTLE_MILLIS = 500;
+    // 候補が見つからなくなってからズームアウトを始めるまでの時間
+    static final long LOST_MILLIS = 1500;
+    // 手動でズームした後、自動のズームを止める時間
+    static final long MANUAL_HOLD_MILLIS = 3000;
+    // 最大のズームを分割する段階の数
+    static final int STEPS = 10;
+
+    private final int mMinTextHeight;
+    private final int mMaxTextHeight;
+
+    // このオブジェクト自身のロックで、以下のメンバ変数すべてを保護します。
+    private long mHoldUntilMillis;
+    private long mLastTextMillis;
+    private int mZoomInCount;
+    private int mZoomOutCount;
+
+    /**
+     * 上限は下限の2倍以上にすると、1段階のズームで上限と下限の間を行き来しにくくなります。
+     *
+     * @param minTextHeight 確実に読み取れる1行の高さの下限（フレームのピクセル）
+     * @param maxTextHeight 1行の高さの上限（フレームのピクセル）
+     */
+    AutoZoomController(int minTextHeight, int maxTextHeight) {
+        if ((minTextHeight <= 0) || (maxTextHeight <= minTextHeight)) {
+            throw new IllegalArgumentException("Invalid text height range: " + minTextHeight + ", " + maxTextHeight);
+        }
+        mMinTextHeight = minTextHeight;
+        mMaxTextHeight = maxTextHeight;
+    }
+
+    /**
+     * 状態を初期化します。カメラの開始時に呼び出されます。
+     */
+    synchronized void start(long nowMillis) {
+        mHoldUntilMillis = nowMillis;
+        mLastTextMillis = nowMillis;
+    }
+
+    /**
+     * 利用者が手動でズームしたことを記録し、しばらく自動のズームを止めます。
+     */
+    synchronized void onManualZoom(long nowMillis) {
+        mHoldUntilMillis = Math.max(mHoldUntilMillis, nowMillis + MANUAL_HOLD_MILLIS);
+    }
+
+    /**
+     * 1フレーム分の候補の大きさを評価し、要求するズームを返します。
+     *
+     * @param textHeight  スキャン帯の候補のうち最も小さい1行の高さ（フレームのピクセル）。候補がない場合は0
+     * @param currentZoom 現在のズーム
+     * @param maxZoom     最大のズーム。ズームがサポートされていない場合は0
+     * @return 要求するズーム。変更しない場合はcurrentZoom
+     */
+    synchronized int onCandidates(long nowMillis, int textHeight, int currentZoom, int maxZoom) {
+        if (textHeight > 0) {
+            mLastTextMillis = nowMillis;
+        }
+        if ((maxZoom <= 0) || (nowMillis < mHoldUntilMillis)) {
+            return currentZoom;
+        }
+
+        int step = Math.max(1, maxZoom / STEPS);
+        int zoom = currentZoom;
+        if ((textHeight > 0) && (textHeight < mMinTextHeight)) {
+            zoom = Math.min(maxZoom, currentZoom + step);
+        } else if (textHeight > mMaxTextHeight) {
+            zoom = Math.max(0, currentZoom - step);
+        } else if ((textHeight == 0) && (nowMillis - mLastTextMillis >= LOST_MILLIS)) {
+            zoom = Math.max(0, currentZoom - step);
+        }
+
+        if (zoom > currentZoom) {
+            ++mZoomInCount;
+        } else if (zoom < currentZoom) {
+            ++mZoomOutCount;
+        } else {
+            return currentZoom;
+        }
+        mHoldUntilMillis = nowMillis + SETTLE_MILLIS;
+        return zoom;
+    }
+
+    /**
+     * 自動でズームインした回数を返します。
+     */
+    public synchronized int getZoomInCount() {
+        return mZoomInCount;
+    }
+
+    /**
+     * 自動でズームアウトした回数を返します。
+     */
+    public synchronized int getZoomOutCount() {
+        return mZoomOutCount;
+    }
+}
@@ -0,0 +1,120 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * フレームの正立座標の矩形を、カメラのフォーカスと測光の領域の座標（-1000〜1000）に変換します。
+ * <p>
+ * カメラの領域の座標はセンサーの向き、つまりNV21プレビューフレームの向きで表され、
+ * 画面の回転やフロントカメラの表示の反転の影響を受けません。
+ * 検出器には回転を指定したフレームを渡しているため、検出された矩形は回転を戻してから変換します。
+ * 変換した矩形は{left, top, right, bottom}の配列で返します。
+ */
+final class CameraAreas {
+    // {@link com.google.android.gms.vision.Frame}の回転定数に対応します。
+    private static final int ROTATION_90 = 1;
+    private static final int ROTATION_180 = 2;
+    private static final int ROTATION_270 = 3;
+
+    // カメラの領域の座標の範囲
+    static final int MIN = -1000;
+    static final int MAX = 1000;
+
+    private CameraAreas() {
+    }
+
+    /**
+     * 正立画像の縦方向中央にあるスキャン帯を、カメラの領域に変換します。
+     *
+     * @param frameWidth  NV21フレームの幅
+     * @param frameHeight NV21フレームの高さ
+     * @param rotation    フレームの回転（{@link com.google.android.gms.vision.Frame#ROTATION_0}など）
+     * @param bandRatio   正立画像の高さに対するスキャン帯の高さの比率
+     */
+    static int[] scanBand(int frameWidth, int frameHeight, int rotation, float bandRatio) {
+        if ((bandRatio <= 0) || (bandRatio > 1)) {
+            throw new IllegalArgumentException("Invalid scan band ratio: " + bandRatio);
+        }
+        boolean sideways = (rotation == ROTATION_90) || (rotation == ROTATION_270);
+        int uprightWidth = sideways ? frameHeight : frameWidth;
+        int uprightHeight = sideways ? frameWidth : frameHeight;
+        int bandHeight = Math.round(uprightHeight * bandRatio);
+        int top = (uprightHeight - bandHeight) / 2;
+        return fromUpright(frameWidth, frameHeight, rotation, 0, top, uprightWidth, top + bandHeight);
+    }
+
+    /**
+     * フレームの正立座標の矩形を、カメラの領域に変換します。範囲外の部分は切り捨てます。
+     *
+     * @param frameWidth  NV21フレームの幅
+     * @param frameHeight NV21フレームの高さ
+     * @param rotation    フレームの回転（{@link com.google.android.gms.vision.Frame#ROTATION_0}など）
+     */
+    static int[] fromUpright(int frameWidth, int frameHeight, int rotation,
+                             int left, int top, int right, int bottom) {
+        // 正立画像の矩形を、NV21画像の矩形に戻します（ScanBandCropの移動量の計算の逆変換です）。
+        int x0;
+        int y0;
+        int x1;
+        int y1;
+        switch (rotation) {
+            case ROTATION_90:
+                x0 = top;
+                x1 = bottom;
+                y0 = frameHeight - right;
+                y1 = frameHeight - left;
+                break;
+            case ROTATION_180:
+                x0 = frameWidth - right;
+                x1 = frameWidth - left;
+                y0 = frameHeight - bottom;
+                y1 = frameHeight - top;
+                break;
+            case ROTATION_270:
+                x0 = frameWidth - bottom;
+                x1 = frameWidth - top;
+                y0 = left;
+                y1 = right;
+                break;
+            default:
+                x0 = left;
+                x1 = right;
+                y0 = top;
+                y1 = bottom;
+                break;
+        }
+        return new int[] {
+                toArea(x0, frameWidth), toArea(y0, frameHeight),
+                toArea(x1, frameWidth), toArea(y1, frameHeight)
+        };
+    }
+
+    /**
+     * 領域の中心を保ったまま、幅と高さが少なくともminSizeになるように広げます。範囲の端では内側にずらします。
+     */
+    static int[] expand(int[] area, int minSize) {
+        int[] expanded = new int[4];
+        for (int axis = 0; axis < 2; ++axis) {
+            int start = area[axis];
+            int end = area[axis + 2];
+            if (end - start < minSize) {
+                int center = (start + end) / 2;
+                start = center - minSize / 2;
+                end = start + minSize;
+                if (start < MIN) {
+                    end += MIN - start;
+                    start = MIN;
+                } else if (end > MAX) {
+                    start -= end - MAX;
+                    end = MAX;
+                }
+            }
+            expanded[axis] = start;
+            expanded[axis + 2] = end;
+        }
+        return expanded;
+    }
+
+    private static int toArea(int position, int size) {
+        int value = (int) ((long) position * (MAX - MIN) / size) + MIN;
+        return Math.max(MIN, Math.min(MAX, value));
+    }
+}
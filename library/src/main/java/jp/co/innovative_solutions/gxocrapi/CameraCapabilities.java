@@ -0,0 +1,252 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * カメラを開いて調べた機能の一覧。カメラID、向き、プレビューと画像のサイズ、フレームレートの範囲、フォーカスとフラッシュのモードを保持します。
+ * <p>
+ * {@link #encode()}で1行の文字列に変換して保存し、次回の起動では{@link #decode(String)}で読み戻して、
+ * {@code Camera.getParameters()}の解析やカメラの検索を省略します。
+ * 形式を変更する場合は{@link #FORMAT_VERSION}を上げてください。古い形式の文字列は読み込まれません。
+ */
+final class CameraCapabilities {
+    static final int FORMAT_VERSION = 1;
+
+    private static final String FIELD_SEPARATOR = ";";
+    private static final String ITEM_SEPARATOR = ",";
+    private static final String SIZE_SEPARATOR = "x";
+    private static final String RANGE_SEPARATOR = "-";
+    private static final int FIELD_COUNT = 9;
+
+    private final int mCameraId;
+    private final int mFacing;
+    private final int mOrientation;
+    private final int[] mPreviewSizes;
+    private final int[] mPictureSizes;
+    private final int[] mFpsRanges;
+    private final List<String> mFocusModes;
+    private final List<String> mFlashModes;
+
+    /**
+     * @param previewSizes {幅, 高さ, 幅, 高さ, ...}の順のプレビューサイズ
+     * @param pictureSizes {幅, 高さ, ...}の順の画像サイズ
+     * @param fpsRanges    {最小, 最大, 最小, 最大, ...}の順の、1000倍にスケールされたフレームレートの範囲
+     * @param focusModes   サポートされるフォーカスモード。nullの場合は空とします
+     * @param flashModes   サポートされるフラッシュモード。nullの場合は空とします
+     */
+    CameraCapabilities(int cameraId, int facing, int orientation, int[] previewSizes, int[] pictureSizes,
+                       int[] fpsRanges, List<String> focusModes, List<String> flashModes) {
+        if ((cameraId < 0) || ((previewSizes.length % 2) != 0) || ((pictureSizes.length % 2) != 0)
+                || ((fpsRanges.length % 2) != 0)) {
+            throw new IllegalArgumentException("Invalid camera capabilities for camera " + cameraId);
+        }
+        mCameraId = cameraId;
+        mFacing = facing;
+        mOrientation = orientation;
+        mPreviewSizes = previewSizes.clone();
+        mPictureSizes = pictureSizes.clone();
+        mFpsRanges = fpsRanges.clone();
+        mFocusModes = unmodifiableCopy(focusModes);
+        mFlashModes = unmodifiableCopy(flashModes);
+    }
+
+    int getCameraId() {
+        return mCameraId;
+    }
+
+    int getFacing() {
+        return mFacing;
+    }
+
+    int getOrientation() {
+        return mOrientation;
+    }
+
+    int getPreviewSizeCount() {
+        return mPreviewSizes.length / 2;
+    }
+
+    int getPreviewWidth(int index) {
+        return mPreviewSizes[index * 2];
+    }
+
+    int getPreviewHeight(int index) {
+        return mPreviewSizes[index * 2 + 1];
+    }
+
+    int getPictureSizeCount() {
+        return mPictureSizes.length / 2;
+    }
+
+    int getPictureWidth(int index) {
+        return mPictureSizes[index * 2];
+    }
+
+    int getPictureHeight(int index) {
+        return mPictureSizes[index * 2 + 1];
+    }
+
+    int getFpsRangeCount() {
+        return mFpsRanges.length / 2;
+    }
+
+    int getMinFps(int index) {
+        return mFpsRanges[index * 2];
+    }
+
+    int getMaxFps(int index) {
+        return mFpsRanges[index * 2 + 1];
+    }
+
+    List<String> getFocusModes() {
+        return mFocusModes;
+    }
+
+    List<String> getFlashModes() {
+        return mFlashModes;
+    }
+
+    /**
+     * 保存用の1行の文字列に変換します。
+     */
+    String encode() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(FORMAT_VERSION).append(FIELD_SEPARATOR)
+                .append(mCameraId).append(FIELD_SEPARATOR)
+                .append(mFacing).append(FIELD_SEPARATOR)
+                .append(mOrientation).append(FIELD_SEPARATOR);
+        appendPairs(builder, mPreviewSizes, SIZE_SEPARATOR);
+        builder.append(FIELD_SEPARATOR);
+        appendPairs(builder, mPictureSizes, SIZE_SEPARATOR);
+        builder.append(FIELD_SEPARATOR);
+        appendPairs(builder, mFpsRanges, RANGE_SEPARATOR);
+        builder.append(FIELD_SEPARATOR);
+        appendModes(builder, mFocusModes);
+        builder.append(FIELD_SEPARATOR);
+        appendModes(builder, mFlashModes);
+        return builder.toString();
+    }
+
+    /**
+     * {@link #encode()}の文字列から読み戻します。
+     *
+     * @return 読み戻した機能。形式のバージョンが異なるか、文字列が壊れている場合はnull
+     */
+    static CameraCapabilities decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        // 空のフィールドを残すため、limitに-1を指定します。
+        String[] fields = encoded.split(FIELD_SEPARATOR, -1);
+        if (fields.length != FIELD_COUNT) {
+            return null;
+        }
+        try {
+            if (Integer.parseInt(fields[0]) != FORMAT_VERSION) {
+                return null;
+            }
+            return new CameraCapabilities(
+                    Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2]),
+                    Integer.parseInt(fields[3]),
+                    parsePairs(fields[4], SIZE_SEPARATOR),
+                    parsePairs(fields[5], SIZE_SEPARATOR),
+                    parsePairs(fields[6], RANGE_SEPARATOR),
+                    parseModes(fields[7]),
+                    parseModes(fields[8]));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatExceptionを含みます。
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CameraCapabilities)) {
+            return false;
+        }
+        CameraCapabilities other = (CameraCapabilities) o;
+        return (mCameraId == other.mCameraId)
+                && (mFacing == other.mFacing)
+                && (mOrientation == other.mOrientation)
+                && Arrays.equals(mPreviewSizes, other.mPreviewSizes)
+                && Arrays.equals(mPictureSizes, other.mPictureSizes)
+                && Arrays.equals(mFpsRanges, other.mFpsRanges)
+                && mFocusModes.equals(other.mFocusModes)
+                && mFlashModes.equals(other.mFlashModes);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mCameraId;
+        result = 31 * result + mFacing;
+        result = 31 * result + mOrientation;
+        result = 31 * result + Arrays.hashCode(mPreviewSizes);
+        result = 31 * result + Arrays.hashCode(mPictureSizes);
+        result = 31 * result + Arrays.hashCode(mFpsRanges);
+        result = 31 * result + mFocusModes.hashCode();
+        result = 31 * result + mFlashModes.hashCode();
+        return result;
+    }
+
+    private static List<String> unmodifiableCopy(List<String> modes) {
+        if (modes == null) {
+            return Collections.emptyList();
+        }
+        for (String mode : modes) {
+            if (mode.isEmpty() || mode.contains(FIELD_SEPARATOR) || mode.contains(ITEM_SEPARATOR)) {
+                throw new IllegalArgumentException("Invalid camera mode: " + mode);
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(modes));
+    }
+
+    private static void appendPairs(StringBuilder builder, int[] values, String separator) {
+        for (int i = 0; i < values.length; i += 2) {
+            if (i > 0) {
+                builder.append(ITEM_SEPARATOR);
+            }
+            builder.append(values[i]).append(separator).append(values[i + 1]);
+        }
+    }
+
+    private static void appendModes(StringBuilder builder, List<String> modes) {
+        for (int i = 0; i < modes.size(); ++i) {
+            if (i > 0) {
+                builder.append(ITEM_SEPARATOR);
+            }
+            builder.append(modes.get(i));
+        }
+    }
+
+    private static int[] parsePairs(String field, String separator) {
+        if (field.isEmpty()) {
+            return new int[0];
+        }
+        String[] items = field.split(ITEM_SEPARATOR);
+        int[] values = new int[items.length * 2];
+        for (int i = 0; i < items.length; ++i) {
+            String item = items[i];
+            int split = item.indexOf(separator);
+            if (split < 0) {
+                throw new IllegalArgumentException("Invalid pair: " + item);
+            }
+            values[i * 2] = Integer.parseInt(item.substring(0, split));
+            values[i * 2 + 1] = Integer.parseInt(item.substring(split + separator.length()));
+        }
+        return values;
+    }
+
+    private static List<String> parseModes(String field) {
+        if (field.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(field.split(ITEM_SEPARATOR));
+    }
+}
@@ -0,0 +1,132 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.hardware.Camera;
+import android.hardware.Camera.CameraInfo;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * カメラの機能を端末に保存するキャッシュ。
+ * <p>
+ * 機能はカメラIDごとに保存し、カメラの向きからIDを引けるようにします。
+ * 保存した値は{@link Build#FINGERPRINT}と組で管理し、OSの更新などでフィンガープリントが変わった場合は全て破棄します。
+ * キャッシュを使って開いたカメラは、{@link #verify(CameraCapabilities, Camera.Parameters)}で実際の機能と照合してください。
+ */
+final class CameraCapabilityCache {
+    private static final String TAG = "CameraCapabilityCache";
+
+    private static final String PREFERENCES_NAME = "gxocrapi_camera_capabilities";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_CAMERA_PREFIX = "camera.";
+    private static final String KEY_FACING_PREFIX = "facing.";
+
+    private final SharedPreferences mPreferences;
+
+    CameraCapabilityCache(Context context) {
+        mPreferences = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 指定した向きのカメラの、保存された機能を返します。
+     * 初回のアクセスでは設定ファイルを読み込むため、メインスレッドから呼び出さないでください。
+     *
+     * @return 保存された機能。保存されていないか、フィンガープリントが異なる場合はnull
+     */
+    synchronized CameraCapabilities get(int facing) {
+        if (!Build.FINGERPRINT.equals(mPreferences.getString(KEY_FINGERPRINT, null))) {
+            return null;
+        }
+        int cameraId = mPreferences.getInt(KEY_FACING_PREFIX + facing, -1);
+        if (cameraId < 0) {
+            return null;
+        }
+        CameraCapabilities capabilities =
+                CameraCapabilities.decode(mPreferences.getString(KEY_CAMERA_PREFIX + cameraId, null));
+        if ((capabilities == null) || (capabilities.getFacing() != facing)) {
+            return null;
+        }
+        return capabilities;
+    }
+
+    /**
+     * 機能を保存します。フィンガープリントが異なる古い値は破棄します。
+     */
+    synchronized void put(CameraCapabilities capabilities) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        if (!Build.FINGERPRINT.equals(mPreferences.getString(KEY_FINGERPRINT, null))) {
+            editor.clear();
+            editor.putString(KEY_FINGERPRINT, Build.FINGERPRINT);
+        }
+        editor.putString(KEY_CAMERA_PREFIX + capabilities.getCameraId(), capabilities.encode());
+        editor.putInt(KEY_FACING_PREFIX + capabilities.getFacing(), capabilities.getCameraId());
+        editor.apply();
+    }
+
+    /**
+     * 保存された機能で設定できなかったカメラの値を破棄します。
+     */
+    synchronized void remove(int cameraId) {
+        CameraCapabilities capabilities =
+                CameraCapabilities.decode(mPreferences.getString(KEY_CAMERA_PREFIX + cameraId, null));
+        SharedPreferences.Editor editor = mPreferences.edit();
+        editor.remove(KEY_CAMERA_PREFIX + cameraId);
+        if (capabilities != null) {
+            editor.remove(KEY_FACING_PREFIX + capabilities.getFacing());
+        }
+        editor.apply();
+    }
+
+    /**
+     * 保存された機能を開いたカメラの実際の機能と照合し、異なる場合は保存し直します。
+     * パラメータを変更しないスレッド、つまりカメラの制御スレッドで呼び出してください。
+     *
+     * @return 保存された機能が正しかった場合はtrue
+     */
+    boolean verify(CameraCapabilities cached, Camera.Parameters parameters) {
+        CameraCapabilities actual = probe(cached.getCameraId(), parameters);
+        if (actual.equals(cached)) {
+            return true;
+        }
+        Log.i(TAG, "Camera " + cached.getCameraId() + " capabilities changed; updating the cache.");
+        put(actual);
+        return false;
+    }
+
+    /**
+     * 開いたカメラのパラメータから機能を調べます。
+     */
+    static CameraCapabilities probe(int cameraId, Camera.Parameters parameters) {
+        CameraInfo cameraInfo = new CameraInfo();
+        Camera.getCameraInfo(cameraId, cameraInfo);
+
+        List<int[]> fpsRangeList = parameters.getSupportedPreviewFpsRange();
+        int[] fpsRanges = new int[(fpsRangeList != null) ? fpsRangeList.size() * 2 : 0];
+        for (int i = 0; i < fpsRanges.length / 2; ++i) {
+            int[] range = fpsRangeList.get(i);
+            fpsRanges[i * 2] = range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
+            fpsRanges[i * 2 + 1] = range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+        }
+
+        return new CameraCapabilities(cameraId, cameraInfo.facing, cameraInfo.orientation,
+                toPairs(parameters.getSupportedPreviewSizes()),
+                toPairs(parameters.getSupportedPictureSizes()),
+                fpsRanges,
+                parameters.getSupportedFocusModes(),
+                parameters.getSupportedFlashModes());
+    }
+
+    private static int[] toPairs(List<Camera.Size> sizes) {
+        int[] pairs = new int[(sizes != null) ? sizes.size() * 2 : 0];
+        for (int i = 0; i < pairs.length / 2; ++i) {
+            Camera.Size size = sizes.get(i);
+            pairs[i * 2] = size.width;
+            pairs[i * 2 + 1] = size.height;
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,432 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * カメラの設定の変更を1つの専用スレッドで順に実行するコントローラー。
+ * <p>
+ * {@link Camera#getParameters()}は文字列を解析するため遅く、UIスレッドで呼び出すとピンチ操作が引っかかります。
+ * このクラスはカメラを開いたときのパラメータとサポートされる値を保持し、呼び出し元のスレッドではそれだけを参照します。
+ * ズームの要求は目標値だけを更新し、まだ適用されていない要求は1回の{@link Camera#setParameters(Camera.Parameters)}にまとめられます。
+ * 結果はメインスレッドに通知されます。
+ */
+final class CameraControl {
+    private static final String TAG = "CameraControl";
+
+    private final Object mCameraLock;
+    private final Handler mMainHandler;
+
+    // 設定を変更するスレッド。最初の要求で作成されます。thisで保護されます。
+    private ExecutorService mExecutor;
+
+    // mCameraLockで保護されます。パラメータは制御スレッドとカメラを開くスレッドでのみ変更されます。
+    private Camera mCamera;
+    private Camera.Parameters mParameters;
+
+    // thisで保護されます。カメラを開いたときに読み取ったサポートされる値と、要求された値。
+    private boolean mAttached;
+    private boolean mZoomSupported;
+    private int mMaxZoom;
+    private List<String> mFocusModes = Collections.emptyList();
+    private List<String> mFlashModes = Collections.emptyList();
+    private boolean mFocusAreasSupported;
+    private boolean mMeteringAreasSupported;
+    private int mRequestedZoom;
+    // ピンチ操作の丸める前の目標の倍率。ズームの倍率がわからない場合はnull
+    private ZoomRatioTarget mZoomTarget;
+    private boolean mZoomPending;
+    private final List<CameraSource.ZoomCallback> mZoomCallbacks = new ArrayList<>();
+
+    private final Runnable mApplyZoom = new Runnable() {
+        @Override
+        public void run() {
+            applyZoom();
+        }
+    };
+
+    // 領域を指定したオートフォーカスの完了後に、連続オートフォーカスに戻します。
+    private final Camera.AutoFocusCallback mResumeContinuousFocus = new Camera.AutoFocusCallback() {
+        @Override
+        public void onAutoFocus(boolean success, Camera camera) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mCameraLock) {
+                        if ((mCamera != null) && isContinuousFocus(mParameters.getFocusMode())) {
+                            mCamera.cancelAutoFocus();
+                        }
+                    }
+                }
+            });
+        }
+    };
+
+    CameraControl(Object cameraLock, Handler mainHandler) {
+        mCameraLock = cameraLock;
+        mMainHandler = mainHandler;
+    }
+
+    /**
+     * 開いたカメラと、設定済みのパラメータを保持します。mCameraLockを保持して呼び出してください。
+     */
+    void attach(Camera camera, Camera.Parameters parameters) {
+        mCamera = camera;
+        mParameters = parameters;
+
+        boolean zoomSupported = parameters.isZoomSupported();
+        int[] zoomRatios = new int[0];
+        if (zoomSupported) {
+            List<Integer> ratios = parameters.getZoomRatios();
+            zoomRatios = new int[ratios.size()];
+            for (int i = 0; i < zoomRatios.length; ++i) {
+                zoomRatios[i] = ratios.get(i);
+            }
+        }
+        List<String> focusModes = parameters.getSupportedFocusModes();
+        List<String> flashModes = parameters.getSupportedFlashModes();
+        boolean focusAreasSupported = parameters.getMaxNumFocusAreas() > 0;
+        boolean meteringAreasSupported = parameters.getMaxNumMeteringAreas() > 0;
+
+        synchronized (this) {
+            mAttached = true;
+            mZoomSupported = zoomSupported;
+            mMaxZoom = zoomSupported ? parameters.getMaxZoom() : 0;
+            mFocusModes = (focusModes != null) ? focusModes : Collections.<String>emptyList();
+            mFlashModes = (flashModes != null) ? flashModes : Collections.<String>emptyList();
+            mFocusAreasSupported = focusAreasSupported;
+            mMeteringAreasSupported = meteringAreasSupported;
+            mRequestedZoom = zoomSupported ? parameters.getZoom() : 0;
+            mZoomTarget = (zoomSupported && (zoomRatios.length > 0))
+                    ? new ZoomRatioTarget(zoomRatios, mRequestedZoom) : null;
+            mZoomCallbacks.clear();
+        }
+    }
+
+    /**
+     * カメラを閉じる前に呼び出します。まだ適用されていない要求は破棄されます。mCameraLockを保持して呼び出してください。
+     */
+    void detach() {
+        mCamera = null;
+        mParameters = null;
+        synchronized (this) {
+            mAttached = false;
+            mZoomCallbacks.clear();
+        }
+    }
+
+    /**
+     * 制御スレッドで処理を実行します。処理は受け付けた順に1つずつ実行されます。
+     * カメラにアクセスする処理は、mCameraLockを保持してカメラが開いていることを確認してください。
+     */
+    synchronized void execute(Runnable task) {
+        if (mExecutor == null) {
+            mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "CameraControl");
+                }
+            });
+        }
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Camera control has been shut down.");
+        }
+    }
+
+    /**
+     * 制御スレッドを終了します。
+     */
+    synchronized void shutdown() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 以前の{@link CameraSource#doZoom(float)}と同じ計算で、要求されたズームから次のズームを求めて適用を要求します。
+     *
+     * @return 要求したズーム。カメラが開いていないかズームがサポートされていない場合は0
+     */
+    synchronized int zoom(float scale) {
+        if (!mAttached) {
+            return 0;
+        }
+        if (!mZoomSupported) {
+            Log.w(TAG, "Zoom is not supported on this device");
+            return 0;
+        }
+        int currentZoom = mRequestedZoom + 1;
+        float newZoom;
+        if (scale > 1) {
+            newZoom = currentZoom + scale * (mMaxZoom / 10);
+        } else {
+            newZoom = currentZoom * scale;
+        }
+        int zoom = clampZoom(Math.round(newZoom) - 1);
+        requestZoomLocked(zoom, null);
+        return zoom;
+    }
+
+    /**
+     * 要求されたズームの倍率をscale倍にし、最も近い倍率のズームの適用を要求します。
+     * ピンチ操作の途中の倍率の変化をそのまま渡すことができます。
+     * 目標の倍率は丸めずに呼び出しの間で保持するため、1段階に満たない小さな変化も積み上がります。
+     *
+     * @return 要求したズーム。カメラが開いていないかズームがサポートされていない場合は0
+     */
+    synchronized int zoomBy(float scale, CameraSource.ZoomCallback callback) {
+        if (!mAttached || (mZoomTarget == null)) {
+            return 0;
+        }
+        int zoom = clampZoom(mZoomTarget.scaleBy(scale));
+        requestZoomLocked(zoom, callback);
+        return zoom;
+    }
+
+    /**
+     * ズームを設定します。
+     *
+     * @return 要求したズーム。カメラが開いていないかズームがサポートされていない場合は0
+     */
+    synchronized int setZoom(int zoom, CameraSource.ZoomCallback callback) {
+        if (!mAttached || !mZoomSupported) {
+            return 0;
+        }
+        zoom = clampZoom(zoom);
+        requestZoomLocked(zoom, callback);
+        return zoom;
+    }
+
+    /**
+     * 要求されたズームを返します。まだ適用されていない場合があります。
+     */
+    synchronized int getZoom() {
+        return mRequestedZoom;
+    }
+
+    /**
+     * 最大のズームを返します。ズームがサポートされていない場合は0です。
+     */
+    synchronized int getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    /**
+     * フォーカスモードの適用を要求します。
+     *
+     * @return カメラが開いていて、モードがサポートされている場合はtrue
+     */
+    boolean setFocusMode(final String mode) {
+        synchronized (this) {
+            if (!mAttached || !mFocusModes.contains(mode)) {
+                return false;
+            }
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mCameraLock) {
+                    if (mCamera == null) {
+                        return;
+                    }
+                    String previous = mParameters.getFocusMode();
+                    mParameters.setFocusMode(mode);
+                    if (!applyParameters()) {
+                        mParameters.setFocusMode(previous);
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * フラッシュモードの適用を要求します。
+     *
+     * @return カメラが開いていて、モードがサポートされている場合はtrue
+     */
+    boolean setFlashMode(final String mode) {
+        synchronized (this) {
+            if (!mAttached || !mFlashModes.contains(mode)) {
+                return false;
+            }
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mCameraLock) {
+                    if (mCamera == null) {
+                        return;
+                    }
+                    String previous = mParameters.getFlashMode();
+                    mParameters.setFlashMode(mode);
+                    if (!applyParameters()) {
+                        mParameters.setFlashMode(previous);
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * フォーカスと測光の領域を設定し、その領域でフォーカスを合わせ直します。
+     * 連続オートフォーカスの場合は、フォーカスが合った後に連続オートフォーカスに戻します。
+     *
+     * @param area カメラの座標（-1000〜1000）の{left, top, right, bottom}
+     * @return カメラが開いていて、フォーカスの領域がサポートされている場合はtrue
+     */
+    boolean focusOn(int[] area) {
+        final List<Camera.Area> areas = createAreas(area);
+        final boolean meteringAreasSupported;
+        synchronized (this) {
+            if (!mAttached || !mFocusAreasSupported) {
+                return false;
+            }
+            meteringAreasSupported = mMeteringAreasSupported;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mCameraLock) {
+                    if (mCamera == null) {
+                        return;
+                    }
+                    mParameters.setFocusAreas(areas);
+                    if (meteringAreasSupported) {
+                        mParameters.setMeteringAreas(areas);
+                    }
+                    if (!applyParameters()) {
+                        return;
+                    }
+                    String focusMode = mParameters.getFocusMode();
+                    if (isContinuousFocus(focusMode)
+                            || Camera.Parameters.FOCUS_MODE_AUTO.equals(focusMode)
+                            || Camera.Parameters.FOCUS_MODE_MACRO.equals(focusMode)) {
+                        try {
+                            mCamera.autoFocus(mResumeContinuousFocus);
+                        } catch (RuntimeException e) {
+                            Log.e(TAG, "Failed to start auto focus.", e);
+                        }
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * カメラを開く前のパラメータに、フォーカスと測光の領域を設定します。サポートされていない場合は何もしません。
+     *
+     * @param area カメラの座標（-1000〜1000）の{left, top, right, bottom}
+     */
+    static void setAreas(Camera.Parameters parameters, int[] area) {
+        List<Camera.Area> areas = createAreas(area);
+        if (parameters.getMaxNumFocusAreas() > 0) {
+            parameters.setFocusAreas(areas);
+        }
+        if (parameters.getMaxNumMeteringAreas() > 0) {
+            parameters.setMeteringAreas(areas);
+        }
+    }
+
+    private static List<Camera.Area> createAreas(int[] area) {
+        return Collections.singletonList(
+                new Camera.Area(new Rect(area[0], area[1], area[2], area[3]), 1000));
+    }
+
+    private static boolean isContinuousFocus(String focusMode) {
+        return Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE.equals(focusMode)
+                || Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO.equals(focusMode);
+    }
+
+    private int clampZoom(int zoom) {
+        if (zoom < 0) {
+            return 0;
+        }
+        return (zoom > mMaxZoom) ? mMaxZoom : zoom;
+    }
+
+    private void requestZoomLocked(int zoom, CameraSource.ZoomCallback callback) {
+        mRequestedZoom = zoom;
+        if ((mZoomTarget != null) && (mZoomTarget.getZoom() != zoom)) {
+            // ピンチ以外で変更された場合は、次のピンチをそのズームの倍率から始めます。
+            mZoomTarget.setZoom(zoom);
+        }
+        if (callback != null) {
+            mZoomCallbacks.add(callback);
+        }
+        if (!mZoomPending) {
+            // 適用を待っている間の要求は、同じ1回の適用にまとめられます。
+            mZoomPending = true;
+            execute(mApplyZoom);
+        }
+    }
+
+    /**
+     * 制御スレッドで、最後に要求されたズームを適用します。
+     */
+    private void applyZoom() {
+        final int zoom;
+        final int maxZoom;
+        final CameraSource.ZoomCallback[] callbacks;
+        synchronized (this) {
+            zoom = mRequestedZoom;
+            maxZoom = mMaxZoom;
+            mZoomPending = false;
+            callbacks = mZoomCallbacks.toArray(new CameraSource.ZoomCallback[mZoomCallbacks.size()]);
+            mZoomCallbacks.clear();
+        }
+
+        final int applied;
+        synchronized (mCameraLock) {
+            if (mCamera == null) {
+                return;
+            }
+            int previous = mParameters.getZoom();
+            if (previous != zoom) {
+                mParameters.setZoom(zoom);
+                if (!applyParameters()) {
+                    mParameters.setZoom(previous);
+                }
+            }
+            applied = mParameters.getZoom();
+        }
+
+        if (callbacks.length > 0) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (CameraSource.ZoomCallback callback : callbacks) {
+                        callback.onZoomChanged(applied, maxZoom);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 保持しているパラメータをカメラに設定します。mCameraLockを保持して呼び出してください。
+     */
+    private boolean applyParameters() {
+        try {
+            mCamera.setParameters(mParameters);
+            return true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to set camera parameters.", e);
+            return false;
+        }
+    }
+}
@@ -24,11 +24,15 @@ import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
+import android.support.annotation.IntDef;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresPermission;
 import android.support.annotation.StringDef;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
@@ -39,14 +43,17 @@ import com.google.android.gms.vision.Detector;
 import com.google.android.gms.vision.Frame;
 
 import java.io.IOException;
-import java.lang.Thread.State;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 // 注：画像を保存するために間接的なバイトバッファを使用するため、これにはGoogle Playサービス8.1以上が必要です。
 
@@ -81,6 +88,21 @@ public class CameraSource {
      */
     private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
 
+    /**
+     * スキャン帯を切り出す際に帯の上下に加える余白の、帯の高さに対する比率。
+     * 帯の境界で切れたテキストは、余白の端まで届く境界ボックスとして検出されるため、帯の外にあるものとして正しく除外されます。
+     */
+    private static final float SCAN_BAND_MARGIN_RATIO = 0.25f;
+
+    // 候補の位置でフォーカスを合わせ直す最短の間隔と、合わせ直す領域の最小の大きさ（カメラの座標）
+    private static final long REFOCUS_INTERVAL_MILLIS = 2000;
+    private static final int MIN_REFOCUS_AREA_SIZE = 200;
+
+    /**
+     * プレビューバッファの最小数。1つをカメラが書き込み、もう1つを検出に使用します。
+     */
+    private static final int MIN_PREVIEW_BUFFERS = 2;
+
     @StringDef({
         Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE,
         Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO,
@@ -103,6 +125,21 @@ public class CameraSource {
     @Retention(RetentionPolicy.SOURCE)
     private @interface FlashMode {}
 
+    /**
+     * 複数の検出ワーカーを使用する場合に、検出結果をプロセッサに配信する順序。
+     * {@link #RESULT_ORDER_FRAME_ID}はフレームIDの順に全ての結果を配信し、
+     * {@link #RESULT_ORDER_LATEST_WINS}は既に配信したフレームより古い結果を破棄します。
+     */
+    public static final int RESULT_ORDER_FRAME_ID = FrameSequencer.ORDER_FRAME_ID;
+    public static final int RESULT_ORDER_LATEST_WINS = FrameSequencer.ORDER_LATEST_WINS;
+
+    @IntDef({
+        RESULT_ORDER_FRAME_ID,
+        RESULT_ORDER_LATEST_WINS
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    private @interface ResultOrder {}
+
     private Context mContext;
 
     private final Object mCameraLock = new Object();
@@ -110,6 +147,20 @@ public class CameraSource {
     // Guarded by mCameraLock
     private Camera mCamera;
 
+    // Guarded by mCameraLock
+    private boolean mReleased;
+
+    // カメラの開始と停止を非同期に実行するスレッド。最初の非同期の要求で作成されます。
+    private ExecutorService mLifecycleExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // ズーム、フォーカス、フラッシュなどの設定の変更を専用のスレッドで実行するコントローラー。
+    private final CameraControl mCameraControl = new CameraControl(mCameraLock, mMainHandler);
+
+    // 要求されてまだ完了していない非同期の停止の数。mShutdownLockで保護されます。
+    private final Object mShutdownLock = new Object();
+    private int mPendingShutdowns;
+
     private int mFacing = CAMERA_FACING_BACK;
 
     /**
@@ -120,32 +171,94 @@ public class CameraSource {
 
     private Size mPreviewSize;
 
+    // 選択されたプレビューのフレームレートの範囲（1000倍にスケールされた値）
+    private int[] mPreviewFpsRange;
+
+    // カメラの機能を端末に保存するキャッシュ。nullの場合は開くたびにカメラを調べます。
+    private CameraCapabilityCache mCapabilityCache;
+
     // これらの値は、呼び出し元によって要求されることがあります。
     // ハードウェアの制限のため、近い値を選択する必要があるかもしれませんが、正確に同じ値を選択する必要はありません。
     private float mRequestedFps = 30.0f;
     private int mRequestedPreviewWidth = 1024;
     private int mRequestedPreviewHeight = 768;
 
+    // 文字に必要な画素数からプレビューサイズを選ぶ方針。nullの場合は要求されたサイズに最も近いサイズを選びます。
+    private PreviewSizePolicy mPreviewSizePolicy;
+
 
     private String mFocusMode = null;
     private String mFlashMode = null;
 
+    private int mDetectorWorkerCount = 1;
+    private int mResultOrder = RESULT_ORDER_FRAME_ID;
+
+    // スキャン帯の高さの比率。0の場合はフレーム全体を検出器に渡します。
+    private float mScanBandRatio = 0;
+    private volatile ScanBandCrop mScanBandCrop;
+
+    // 変化のないフレームを読み飛ばすゲート。nullの場合は全てのフレームを検出します。
+    private FrameChangeGate mFrameChangeGate;
+
+    // ピンぼけやフォーカス移動中のフレームを除外するゲート。nullの場合は全てのフレームを検出します。
+    private FrameQualityGate mFrameQualityGate;
+
+    // 検出器に渡すフレームのレートを調整するコントローラー。nullの場合は届いたフレームをできるだけ早く処理します。
+    private FrameRateController mFrameRateController;
+
+    // 候補のテキストの大きさに応じてズームを変更するコントローラー。nullの場合は自動でズームしません。
+    private AutoZoomController mAutoZoomController;
+
+    // フォーカスと測光の領域をスキャン帯に合わせるかどうかと、候補の位置でフォーカスを合わせ直すかどうか
+    private boolean mScanBandFocus;
+    private boolean mRefocusOnCandidate;
+
+    // 最後に候補の位置でフォーカスを合わせ直した時刻。プロセッサのスレッドからのみ使用されます。
+    private long mLastRefocusMillis = Long.MIN_VALUE;
+
     // これらのインスタンスは、それらの基礎となるリソースのGCを避けるために保持する必要があります。
     // これらを作成するメソッドの外部では使用されませんが、依然としてハードリファレンスが維持されている必要があります。
     private SurfaceView mDummySurfaceView;
     private SurfaceTexture mDummySurfaceTexture;
 
     /**
-     * フレームがカメラから利用可能になると、フレームとともに検出器に呼び出すための専用のスレッドおよび関連する実行可能ファイル。
+     * フレームがカメラから利用可能になると、フレームとともに検出器に呼び出すための専用のスレッド（検出ワーカーごとに1つ）および関連する実行可能ファイル。
      */
-    private Thread mProcessingThread;
+    private Thread[] mProcessingThreads;
     private FrameProcessingRunnable mFrameProcessor;
 
     /**
-     * カメラから受け取ったバイト配列とそれに関連するバイトバッファを変換するマップ。
+     * カメラに渡すプレビューバッファのプール。カメラから受け取ったバイト配列を関連するバイトバッファに変換します。
      * 私たちは内部的にバイトバッファーを使用しています。これは後でネイティブコードを呼び出す方が効率的な方法です（コピーを避けるため）。
+     * カメラの作成時に作成され、停止時に破棄されます。
      */
-    private Map<byte[], ByteBuffer> mBytesToByteBuffer = new HashMap<>();
+    private volatile PreviewBufferPool mBufferPool;
+    // 最後に停止したプールのバッファ不足の回数と落としたと推定されるフレームの数。プールを破棄した後も次の開始まで保持します。
+    private volatile long mStoppedStarvationCount;
+    private volatile long mStoppedDroppedFrameCount;
+
+    // プレビューバッファの数の指定。どちらも0の場合はワーカー数から決めます。
+    private int mRequestedBufferCount = 0;
+    private long mBufferBudgetBytes = 0;
+
+    // カメラの代わりに使用するフレームの供給元。nullの場合はカメラを使用します。
+    private FrameSource mExternalFrameSource;
+
+    // 検出器に渡したフレームを記録するレコーダー。nullの場合は記録しません。
+    private FrameRecorder mFrameRecorder;
+
+    // 検出の前に実行する前処理。nullの場合はフレームをそのまま検出器に渡します。
+    private FramePreprocessorChain mPreprocessorChain;
+
+    // 処理の段階ごとの遅延を集計するトラッカー。nullの場合は集計しません。
+    private PipelineLatencyTracker mLatencyTracker;
+
+    // 受け取ったフレームの行方を数えるカウンター。開始するたびに0に戻ります。
+    private final FrameStatistics mFrameStatistics = new FrameStatistics(SystemClock.elapsedRealtime());
+
+    // Guarded by mCameraLock
+    // 現在フレームを供給している供給元。開始時に設定され、停止時にnullになります。
+    private FrameSource mFrameSource;
 
     //==============================================================================================
     // Builder
@@ -156,6 +269,11 @@ public class CameraSource {
      */
     public static class Builder {
         private final Detector<?> mDetector;
+        // 2番目以降のワーカーの専用の検出器。空の場合は全てのワーカーがmDetectorを共有します。
+        private Detector<?>[] mWorkerDetectors = new Detector<?>[0];
+        private Detector.Processor<?> mProcessor;
+        private float mAdaptiveMinFps;
+        private final List<FramePreprocessor> mPreprocessors = new ArrayList<>();
         private CameraSource mCameraSource = new CameraSource();
 
         /**
@@ -226,11 +344,244 @@ public class CameraSource {
             return this;
         }
 
+        /**
+         * 検出を並行して実行するワーカースレッドの数と、検出結果を受け取るプロセッサを設定します。
+         * プロセッサを指定した場合、各ワーカーは{@link Detector#detect(Frame)}を並行して呼び出し、
+         * 結果は{@link #setResultOrder(int)}で指定した順序でプロセッサに1つずつ配信されます。
+         * この場合、検出器自体にはプロセッサを設定せず、検出器は複数スレッドからのdetect呼び出しに対応している必要があります。
+         * プロセッサはカメラソースの解放時に一緒に解放されます。
+         * 2以上のワーカー数にはプロセッサが必須です。Default: 1 (検出器に設定されたプロセッサを使用)
+         */
+        public Builder setDetectorWorkers(int workerCount, Detector.Processor<?> processor) {
+            if (workerCount <= 0) {
+                throw new IllegalArgumentException("Invalid worker count: " + workerCount);
+            }
+            if ((workerCount > 1) && (processor == null)) {
+                throw new IllegalArgumentException("A processor is required for multiple workers.");
+            }
+            mCameraSource.mDetectorWorkerCount = workerCount;
+            mWorkerDetectors = new Detector<?>[0];
+            mProcessor = processor;
+            return this;
+        }
+
+        /**
+         * 検出を並行して実行するワーカーごとに専用の検出器を使うように設定します。
+         * 最初のワーカーはビルダーの作成時に渡した検出器を使い、2番目以降のワーカーはworkerDetectorsを1つずつ使います。
+         * ワーカーの数はworkerDetectorsの数に1を加えた数です。各検出器は1つのスレッドからしか呼び出されないため、
+         * 複数スレッドからのdetect呼び出しに対応している必要はありません。
+         * 検出結果は{@link #setResultOrder(int)}で指定した順序でプロセッサに1つずつ配信されます。
+         * 検出器とプロセッサはカメラソースの解放時に一緒に解放されます。
+         */
+        public Builder setDetectorWorkers(Detector.Processor<?> processor, Detector<?>... workerDetectors) {
+            if (processor == null) {
+                throw new IllegalArgumentException("No processor supplied.");
+            }
+            for (Detector<?> detector : workerDetectors) {
+                if ((detector == null) || (detector == mDetector)) {
+                    throw new IllegalArgumentException("Each worker needs its own detector.");
+                }
+            }
+            mCameraSource.mDetectorWorkerCount = workerDetectors.length + 1;
+            mWorkerDetectors = workerDetectors.clone();
+            mProcessor = processor;
+            return this;
+        }
+
+        /**
+         * 検出器に渡す前に、プレビューフレームを縦方向中央のスキャン帯に切り出すように設定します。
+         * 比率は正立したプレビュー画像（つまり画面上の表示）の高さに対するスキャン帯の高さです。
+         * 切り出したフレームで検出された座標は{@link #getScanBandCrop()}を使ってフレーム全体の座標に戻す必要があります。
+         * Default: 0 (切り出さない)
+         */
+        public Builder setScanBand(float bandHeightRatio) {
+            if ((bandHeightRatio < 0) || (bandHeightRatio > 1)) {
+                throw new IllegalArgumentException("Invalid scan band ratio: " + bandHeightRatio);
+            }
+            mCameraSource.mScanBandRatio = bandHeightRatio;
+            return this;
+        }
+
+        /**
+         * 前回検出器に渡したフレームからの変化が小さいフレームを読み飛ばすように設定します。
+         * 変化量は輝度のブロック平均の平均絶対差（0〜255）で、しきい値未満のフレームは検出されません。
+         * 静止したシーンでも再認識できるよう、maxSkippedFrames回連続で読み飛ばした後のフレームは必ず検出されます。
+         * 読み飛ばし数と通過数は{@link #getFrameChangeGate()}で確認できます。Default: 無効
+         */
+        public Builder setFrameChangeGate(float threshold, int maxSkippedFrames) {
+            mCameraSource.mFrameChangeGate = new FrameChangeGate(threshold, maxSkippedFrames);
+            return this;
+        }
+
+        /**
+         * ピンぼけしたフレームを検出器に渡さないように設定します。
+         * スキャン帯（切り出しが無効な場合はフレーム全体）の輝度のラプラシアンの分散がminSharpness未満のフレームと、
+         * rejectWhileFocusingがtrueの場合はオートフォーカスのレンズが移動中のフレームが除外されます。
+         * レンズの移動は連続オートフォーカスモードでのみ通知されます。
+         * 除外数は{@link #getFrameQualityGate()}で理由ごとに確認できます。Default: 無効
+         */
+        public Builder setFrameQualityGate(float minSharpness, boolean rejectWhileFocusing) {
+            mCameraSource.mFrameQualityGate = new FrameQualityGate(minSharpness, rejectWhileFocusing);
+            return this;
+        }
+
+        /**
+         * 検出器に渡すフレームのレートを自動的に調整するように設定します。
+         * スキャン帯の近くに候補が見つかるとレートはプレビューフレームレートの範囲の上限まで上がり、
+         * 候補が見つからない間はminFpsまで徐々に下がります。レートは検出器の処理時間から求めた処理能力も超えません。
+         * 上限を上げるには{@link #setRequestedFps(float)}で十分に高いフレームレートを要求してください。
+         * 候補の有無は{@link #getFrameRateController()}を通してプロセッサから報告する必要があります。Default: 無効
+         */
+        public Builder setAdaptiveFrameRate(float minFps) {
+            if (minFps <= 0) {
+                throw new IllegalArgumentException("Invalid fps: " + minFps);
+            }
+            mAdaptiveMinFps = minFps;
+            return this;
+        }
+
+        /**
+         * 読み取る文字に必要な画素数からプレビューサイズを選ぶように設定します。
+         * 設定した場合、{@link #setRequestedPreviewSize(int, int)}のサイズは縦横比が同じ候補の間の優先順位にだけ使われます。
+         * Default: 要求されたサイズに最も近いサイズ
+         */
+        public Builder setPreviewSizePolicy(PreviewSizePolicy policy) {
+            mCameraSource.mPreviewSizePolicy = policy;
+            return this;
+        }
+
+        /**
+         * フォーカスと測光の領域を{@link #setScanBand(float)}のスキャン帯に合わせるように設定します。
+         * 連続オートフォーカスが背景ではなく帯の中のラベルに合うようになります。
+         * refocusOnCandidateがtrueの場合、{@link CameraSource#focusOnCandidate(int, int, int, int)}で
+         * 検出された候補の位置にフォーカスを合わせ直すことができます。
+         * 領域の指定をサポートしないカメラでは何もしません。Default: 無効
+         */
+        public Builder setScanBandFocus(boolean refocusOnCandidate) {
+            mCameraSource.mScanBandFocus = true;
+            mCameraSource.mRefocusOnCandidate = refocusOnCandidate;
+            return this;
+        }
+
+        /**
+         * カメラの機能（カメラID、プレビューと画像のサイズ、フレームレートの範囲、フォーカスとフラッシュのモード）を端末に保存するように設定します。
+         * 2回目以降の起動では、カメラの検索とパラメータの機能の解析を省略して、保存された機能から設定を選びます。
+         * 保存された機能はカメラを開いた後にバックグラウンドで照合され、異なる場合は更新されます。Default: 無効
+         */
+        public Builder setCapabilityCache(boolean enabled) {
+            mCameraSource.mCapabilityCache = enabled ? new CameraCapabilityCache(mCameraSource.mContext) : null;
+            return this;
+        }
+
+        /**
+         * スキャン帯の候補のテキストの大きさに応じて、ズームを自動的に変更するように設定します。
+         * 候補の1行の高さがminTextHeight未満の場合はズームインし、maxTextHeightを超えるか候補が見つからない場合はズームアウトします。
+         * 高さはフレームのピクセルで、{@link CameraSource#reportCandidateTextHeight(int)}を通してプロセッサから報告する必要があります。
+         * 手動でズームした後はしばらく自動のズームを止めます。Default: 無効
+         */
+        public Builder setAutoZoom(int minTextHeight, int maxTextHeight) {
+            mCameraSource.mAutoZoomController = new AutoZoomController(minTextHeight, maxTextHeight);
+            return this;
+        }
+
+        /**
+         * カメラの代わりに使用するフレームの供給元を設定します。
+         * 設定した場合、{@link CameraSource#start()}はカメラを開かずにこの供給元のフレームを検出器に渡します。
+         * 記録したフレームを再生する{@link ReplayFrameSource}と組み合わせて、デバイスなしで処理能力を計測するために使用します。
+         */
+        public Builder setFrameSource(FrameSource source) {
+            mCameraSource.mExternalFrameSource = source;
+            return this;
+        }
+
+        /**
+         * 検出の前に実行する前処理を追加します。前処理は追加した順に実行されます。
+         * 前処理は変化と品質のゲートを通過したフレームに対して、スキャン帯の切り出し後に実行されます。
+         * 段階ごとの処理時間は{@link CameraSource#getFramePreprocessorChain()}で確認できます。
+         */
+        public Builder addFramePreprocessor(FramePreprocessor preprocessor) {
+            if (preprocessor == null) {
+                throw new IllegalArgumentException("No preprocessor supplied.");
+            }
+            mPreprocessors.add(preprocessor);
+            return this;
+        }
+
+        /**
+         * 検出器に渡したフレームを記録するレコーダーを設定します。
+         * スキャン帯を切り出している場合は切り出した画像を記録します。記録は{@link FrameRecorder#setEnabled(boolean)}で切り替えられます。
+         */
+        public Builder setFrameRecorder(FrameRecorder recorder) {
+            mCameraSource.mFrameRecorder = recorder;
+            return this;
+        }
+
+        /**
+         * カメラに渡すプレビューバッファの数を設定します。
+         * ワーカー数+3より少ない場合、カメラが空きバッファを持たずにフレームを落とすことがありますが、メモリを節約できます。
+         * 実際のバッファ不足の回数は{@link CameraSource#getBufferStarvationCount()}で確認できます。Default: ワーカー数+3
+         */
+        public Builder setPreviewBufferCount(int count) {
+            if (count < MIN_PREVIEW_BUFFERS) {
+                throw new IllegalArgumentException("Invalid preview buffer count: " + count);
+            }
+            mCameraSource.mRequestedBufferCount = count;
+            mCameraSource.mBufferBudgetBytes = 0;
+            return this;
+        }
+
+        /**
+         * プレビューバッファに使用するメモリの予算をバイト単位で設定します。
+         * バッファの数は予算と選択されたプレビューサイズから決まりますが、2つより少なくはなりません。
+         * {@link #setPreviewBufferCount(int)}とは最後に設定した方が有効になります。
+         */
+        public Builder setPreviewBufferBudget(long budgetBytes) {
+            if (budgetBytes <= 0) {
+                throw new IllegalArgumentException("Invalid preview buffer budget: " + budgetBytes);
+            }
+            mCameraSource.mBufferBudgetBytes = budgetBytes;
+            mCameraSource.mRequestedBufferCount = 0;
+            return this;
+        }
+
+        /**
+         * 複数の検出ワーカーを使用する場合に、検出結果をプロセッサに配信する順序を設定します。
+         * {@link #RESULT_ORDER_FRAME_ID}または{@link #RESULT_ORDER_LATEST_WINS}のいずれかです。
+         * Default: {@link #RESULT_ORDER_FRAME_ID}
+         */
+        public Builder setResultOrder(@ResultOrder int order) {
+            if ((order != RESULT_ORDER_FRAME_ID) && (order != RESULT_ORDER_LATEST_WINS)) {
+                throw new IllegalArgumentException("Invalid result order: " + order);
+            }
+            mCameraSource.mResultOrder = order;
+            return this;
+        }
+
+        /**
+         * プレビューのコールバックから結果の配信までの、処理の段階ごとの遅延を集計するように設定します。
+         * 集計した遅延は{@link CameraSource#getLatencyTracker()}で確認できます。Default: 無効
+         */
+        public Builder setLatencyTracking(boolean enabled) {
+            mCameraSource.mLatencyTracker = enabled ? new PipelineLatencyTracker() : null;
+            return this;
+        }
+
         /**
          * カメラソースのインスタンスを作成します。
          */
         public CameraSource build() {
-            mCameraSource.mFrameProcessor = mCameraSource.new FrameProcessingRunnable(mDetector);
+            if (mAdaptiveMinFps > 0) {
+                mCameraSource.mFrameRateController = new FrameRateController(
+                        mAdaptiveMinFps, mCameraSource.mDetectorWorkerCount);
+            }
+            if (!mPreprocessors.isEmpty()) {
+                mCameraSource.mPreprocessorChain = new FramePreprocessorChain(mPreprocessors);
+            }
+            Detector<?>[] detectors = new Detector<?>[mWorkerDetectors.length + 1];
+            detectors[0] = mDetector;
+            System.arraycopy(mWorkerDetectors, 0, detectors, 1, mWorkerDetectors.length);
+            mCameraSource.mFrameProcessor =
+                    mCameraSource.new FrameProcessingRunnable(detectors, mProcessor);
             return mCameraSource;
         }
     }
@@ -275,6 +626,35 @@ public class CameraSource {
         void onAutoFocus(boolean success);
     }
 
+    /**
+     * カメラの非同期の開始の完了を通知するためのコールバックインターフェイス。どちらのメソッドもメインスレッドで呼び出されます。
+     */
+    public interface StartCallback {
+        /**
+         * カメラのプレビューとフレームの処理が開始されたときに呼び出されます。
+         *
+         * @param elapsedMillis 開始を要求してからプレビューが開始されるまでの時間
+         */
+        void onStarted(long elapsedMillis);
+
+        /**
+         * カメラを開始できなかったときに呼び出されます。
+         */
+        void onStartFailed(Exception e);
+    }
+
+    /**
+     * カメラの非同期の停止または解放の完了を通知するためのコールバックインターフェイス。メインスレッドで呼び出されます。
+     */
+    public interface StopCallback {
+        /**
+         * フレームの処理が終了し、カメラが閉じられたときに呼び出されます。
+         *
+         * @param elapsedMillis 停止を要求してから完了するまでの時間
+         */
+        void onStopped(long elapsedMillis);
+    }
+
     /**
      * オートフォーカスの開始と停止を通知するためのコールバックインターフェイス。
      * <p/>
@@ -292,6 +672,19 @@ public class CameraSource {
         void onAutoFocusMoving(boolean start);
     }
 
+    /**
+     * ズームがカメラに適用されたことを通知するコールバック。メインスレッドで呼び出されます。
+     */
+    public interface ZoomCallback {
+        /**
+         * 続けて要求されたズームは1回にまとめて適用されるため、途中の値は通知されない場合があります。
+         *
+         * @param zoom    適用されたズーム
+         * @param maxZoom 最大のズーム
+         */
+        void onZoomChanged(int zoom, int maxZoom);
+    }
+
     //==============================================================================================
     // Public
     //==============================================================================================
@@ -301,39 +694,34 @@ public class CameraSource {
      */
     public void release() {
         synchronized (mCameraLock) {
+            if (mReleased) {
+                return;
+            }
             stop();
+            mReleased = true;
             mFrameProcessor.release();
         }
+        mCameraControl.shutdown();
+        synchronized (this) {
+            if (mLifecycleExecutor != null) {
+                // 待機中の非同期の開始は、解放済みとして失敗を通知します。
+                mLifecycleExecutor.shutdown();
+            }
+        }
     }
 
     /**
      * カメラを開き、下にある検出器にプレビューフレームを送信します。
      * プレビューフレームは表示されません。
+     * 非同期の停止が完了していない場合は、その完了を待ってから開始します。
      *
      * @throws IOException カメラのプレビューテクスチャまたはディスプレイを初期化できなかった場合
      */
     @RequiresPermission(Manifest.permission.CAMERA)
     public CameraSource start() throws IOException {
+        awaitPendingShutdown();
         synchronized (mCameraLock) {
-            if (mCamera != null) {
-                return this;
-            }
-
-            mCamera = createCamera();
-
-            // SurfaceTextureはHoneycomb（11）に導入されているので、実行していればアンドロイドの古いバージョンです。 SurfaceViewを使用するために後退します。
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                mDummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
-                mCamera.setPreviewTexture(mDummySurfaceTexture);
-            } else {
-                mDummySurfaceView = new SurfaceView(mContext);
-                mCamera.setPreviewDisplay(mDummySurfaceView.getHolder());
-            }
-            mCamera.startPreview();
-
-            mProcessingThread = new Thread(mFrameProcessor);
-            mFrameProcessor.setActive(true);
-            mProcessingThread.start();
+            startLocked(null);
         }
         return this;
     }
@@ -341,26 +729,223 @@ public class CameraSource {
     /**
      * カメラを開き、下にある検出器にプレビューフレームを送信します。
      * 付属のサーフェスホルダーはプレビューに使用され、フレームをユーザーに表示することができます。
+     * 非同期の停止が完了していない場合は、その完了を待ってから開始します。
      *
      * @param surfaceHolder プレビューフレームに使用するサーフェスホルダ
      * @throws IOException 供給された表面ホルダーがプレビュー表示として使用できなかった場合
      */
     @RequiresPermission(Manifest.permission.CAMERA)
     public CameraSource start(SurfaceHolder surfaceHolder) throws IOException {
+        awaitPendingShutdown();
         synchronized (mCameraLock) {
-            if (mCamera != null) {
-                return this;
-            }
+            startLocked(surfaceHolder);
+        }
+        return this;
+    }
+
+    /**
+     * カメラを開いてプレビューとフレームの処理を開始します。mCameraLockを保持した状態で呼び出してください。
+     *
+     * @param surfaceHolder プレビューフレームに使用するサーフェスホルダ。nullの場合はプレビューを表示しません。
+     */
+    @RequiresPermission(Manifest.permission.CAMERA)
+    private void startLocked(@Nullable SurfaceHolder surfaceHolder) throws IOException {
+        if (mReleased) {
+            throw new IllegalStateException("Camera source has been released.");
+        }
+        if (mFrameSource != null) {
+            return;
+        }
 
-            mCamera = createCamera();
+        if (mExternalFrameSource != null) {
+            // 供給元のフレームはプレビューとして表示されません。
+            startExternalFrameSource();
+            return;
+        }
+
+        mCamera = createCamera();
+
+        if (surfaceHolder != null) {
             mCamera.setPreviewDisplay(surfaceHolder);
-            mCamera.startPreview();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // SurfaceTextureはHoneycomb（11）に導入されているので、実行していればアンドロイドの古いバージョンです。 SurfaceViewを使用するために後退します。
+            mDummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
+            mCamera.setPreviewTexture(mDummySurfaceTexture);
+        } else {
+            mDummySurfaceView = new SurfaceView(mContext);
+            mCamera.setPreviewDisplay(mDummySurfaceView.getHolder());
+        }
+        mCamera.startPreview();
 
-            mProcessingThread = new Thread(mFrameProcessor);
-            mFrameProcessor.setActive(true);
-            mProcessingThread.start();
+        startProcessingThreads();
+    }
+
+    /**
+     * {@link #start()}をバックグラウンドのスレッドで実行します。
+     * カメラを開く処理やパラメータの設定、バッファの割り当てを呼び出し元のスレッドで待たないため、UIスレッドから呼び出すことができます。
+     * カメラのコールバックはメインスレッドに配信されます。
+     *
+     * @param callback 開始の完了を通知するコールバック。nullの場合は通知しません。
+     */
+    @RequiresPermission(Manifest.permission.CAMERA)
+    public void startAsync(@Nullable StartCallback callback) {
+        startAsync(null, callback);
+    }
+
+    /**
+     * {@link #start(SurfaceHolder)}をバックグラウンドのスレッドで実行します。
+     * カメラを開く処理やパラメータの設定、バッファの割り当てを呼び出し元のスレッドで待たないため、UIスレッドから呼び出すことができます。
+     * カメラのコールバックはメインスレッドに配信されます。
+     *
+     * @param surfaceHolder プレビューフレームに使用するサーフェスホルダ。nullの場合はプレビューを表示しません。
+     * @param callback      開始の完了を通知するコールバック。nullの場合は通知しません。
+     */
+    @RequiresPermission(Manifest.permission.CAMERA)
+    public void startAsync(@Nullable final SurfaceHolder surfaceHolder,
+                           @Nullable final StartCallback callback) {
+        final long requestMillis = SystemClock.elapsedRealtime();
+        boolean accepted = executeLifecycleTask(new Runnable() {
+            @SuppressLint("MissingPermission")
+            @Override
+            public void run() {
+                Exception error = null;
+                try {
+                    // 先に要求された停止は同じスレッドで完了しているため、ここでは待ちません。
+                    synchronized (mCameraLock) {
+                        startLocked(surfaceHolder);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Failed to start camera source.", e);
+                    error = e;
+                }
+                postStartResult(callback, SystemClock.elapsedRealtime() - requestMillis, error);
+            }
+        });
+        if (!accepted) {
+            postStartResult(callback, 0, new IllegalStateException("Camera source has been released."));
+        }
+    }
+
+    /**
+     * 非同期の開始の結果をメインスレッドでコールバックに通知します。
+     */
+    private void postStartResult(@Nullable final StartCallback callback, final long elapsedMillis,
+                                 @Nullable final Exception error) {
+        if (callback == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (error != null) {
+                    callback.onStartFailed(error);
+                } else {
+                    callback.onStarted(elapsedMillis);
+                }
+            }
+        });
+    }
+
+    /**
+     * カメラの処理を停止し、カメラを閉じる処理をバックグラウンドのスレッドで実行します。
+     * フレームの処理ループにはすぐに停止を指示し、処理中のフレームの完了を待つ処理とカメラの解放は呼び出し元のスレッドで待ちません。
+     * この後に{@link #startAsync(SurfaceHolder, StartCallback)}を呼び出した場合は、停止の完了後に開始されます。
+     * {@link #start()}を呼び出した場合は、停止の完了を待ってから開始します。
+     *
+     * @param callback 停止の完了を通知するコールバック。nullの場合は通知しません。
+     */
+    public void stopAsync(@Nullable StopCallback callback) {
+        shutdownAsync(false, callback);
+    }
+
+    /**
+     * {@link #release()}をバックグラウンドのスレッドで実行します。
+     * 解放を要求した後にこのカメラソースを再び開始することはできません。
+     *
+     * @param callback 解放の完了を通知するコールバック。nullの場合は通知しません。
+     */
+    public void releaseAsync(@Nullable StopCallback callback) {
+        shutdownAsync(true, callback);
+    }
+
+    private void shutdownAsync(final boolean release, @Nullable final StopCallback callback) {
+        final long requestMillis = SystemClock.elapsedRealtime();
+        synchronized (mShutdownLock) {
+            mPendingShutdowns++;
+        }
+        // 処理中のフレームが終わり次第ワーカーが終了するように、すぐに指示します。
+        mFrameProcessor.setActive(false);
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (release) {
+                        release();
+                    } else {
+                        stop();
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to stop camera source.", e);
+                } finally {
+                    synchronized (mShutdownLock) {
+                        mPendingShutdowns--;
+                        mShutdownLock.notifyAll();
+                    }
+                }
+                if (callback != null) {
+                    final long elapsedMillis = SystemClock.elapsedRealtime() - requestMillis;
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onStopped(elapsedMillis);
+                        }
+                    });
+                }
+            }
+        };
+        if (!executeLifecycleTask(task)) {
+            // 既に解放を要求されています。このスレッドで実行しても、解放済みのため待つことはありません。
+            task.run();
+        }
+    }
+
+    /**
+     * 非同期の停止が完了するまで待ちます。
+     */
+    private void awaitPendingShutdown() {
+        synchronized (mShutdownLock) {
+            while (mPendingShutdowns > 0) {
+                try {
+                    mShutdownLock.wait();
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Interrupted while waiting for camera shutdown.");
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * カメラの開始と停止を実行するスレッドで処理を実行します。処理は受け付けた順に1つずつ実行されます。
+     * 解放の要求後はスレッドが終了しているため、処理を受け付けずにfalseを返します。
+     */
+    private synchronized boolean executeLifecycleTask(Runnable task) {
+        if (mLifecycleExecutor == null) {
+            mLifecycleExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "CameraSourceLifecycle");
+                }
+            });
+        }
+        try {
+            mLifecycleExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
         }
-        return this;
     }
 
     /**
@@ -371,22 +956,38 @@ public class CameraSource {
     public void stop() {
         synchronized (mCameraLock) {
             mFrameProcessor.setActive(false);
-            if (mProcessingThread != null) {
-                try {
-                    // スレッドが完了するのを待って、複数のスレッドを同時に実行することができないようにします（つまり、停止後にstartをあまりにも早く呼び出すと起こります）。
-                    mProcessingThread.join();
-                } catch (InterruptedException e) {
-                    Log.d(TAG, "Frame processing thread interrupted on release.");
+            if (mProcessingThreads != null) {
+                for (Thread thread : mProcessingThreads) {
+                    try {
+                        // スレッドが完了するのを待って、複数のスレッドを同時に実行することができないようにします（つまり、停止後にstartをあまりにも早く呼び出すと起こります）。
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        Log.d(TAG, "Frame processing thread interrupted on release.");
+                    }
                 }
-                mProcessingThread = null;
+                mProcessingThreads = null;
             }
 
-            // oom例外を防ぐためにバッファをクリアする
-            mBytesToByteBuffer.clear();
+            if (mFrameSource != null) {
+                mFrameSource.stop();
+                mFrameSource = null;
+            }
+
+            if (mFrameRecorder != null) {
+                mFrameRecorder.close();
+            }
+
+            // oom例外を防ぐためにバッファをクリアする。バッファ不足の数は停止後も確認できるように残します。
+            PreviewBufferPool pool = mBufferPool;
+            if (pool != null) {
+                mStoppedStarvationCount = pool.getStarvationCount();
+                mStoppedDroppedFrameCount = pool.getDroppedFrameCount();
+            }
+            mBufferPool = null;
 
             if (mCamera != null) {
+                mCameraControl.detach();
                 mCamera.stopPreview();
-                mCamera.setPreviewCallbackWithBuffer(null);
                 try {
                     // 我々はジンジャーブレッドに戻って互換性を望んでいますが、SurfaceTextureはHoneycombまで紹介されていませんでした。
                     // インターフェイスはSurfaceTextureを使用できないため、開発者がプレビューを表示したい場合は、SurfaceHolderを使用する必要があります。
@@ -407,49 +1008,210 @@ public class CameraSource {
     }
 
     /**
-     * 基になるカメラで現在使用されているプレビューサイズを返します。
+     * 基になるカメラで現在使用されているプレビューサイズを返します。
+     */
+    public Size getPreviewSize() {
+        return mPreviewSize;
+    }
+
+    /**
+     * 検出器に渡しているスキャン帯の切り出し領域を返します。
+     * 切り出しが無効な場合、またはカメラがまだ作成されていない場合はnullです。
+     */
+    @Nullable
+    ScanBandCrop getScanBandCrop() {
+        return mScanBandCrop;
+    }
+
+    /**
+     * 変化のないフレームを読み飛ばすゲートを返します。読み飛ばし数と通過数の確認に使用します。
+     * {@link Builder#setFrameChangeGate(float, int)}が設定されていない場合はnullです。
+     */
+    @Nullable
+    public FrameChangeGate getFrameChangeGate() {
+        return mFrameChangeGate;
+    }
+
+    /**
+     * ピンぼけやフォーカス移動中のフレームを除外するゲートを返します。除外数の確認に使用します。
+     * {@link Builder#setFrameQualityGate(float, boolean)}が設定されていない場合はnullです。
+     */
+    @Nullable
+    public FrameQualityGate getFrameQualityGate() {
+        return mFrameQualityGate;
+    }
+
+    /**
+     * 検出器に渡すフレームのレートを調整するコントローラーを返します。
+     * プロセッサはこれを通してスキャン帯付近の候補の有無を報告します。
+     * {@link Builder#setAdaptiveFrameRate(float)}が設定されていない場合はnullです。
+     */
+    @Nullable
+    public FrameRateController getFrameRateController() {
+        return mFrameRateController;
+    }
+
+    /**
+     * カメラに渡しているプレビューバッファのプールを返します。バッファ不足の回数の確認に使用します。
+     * カメラが開始されていない場合はnullです。
+     */
+    @Nullable
+    public PreviewBufferPool getPreviewBufferPool() {
+        return mBufferPool;
+    }
+
+    /**
+     * カメラが空きバッファを持たなくなった回数を返します。
+     * 停止した後は、最後に停止するまでの回数を返します。回数はカメラソースを開始するたびに0に戻ります。
+     */
+    public long getBufferStarvationCount() {
+        PreviewBufferPool pool = mBufferPool;
+        return (pool != null) ? pool.getStarvationCount() : mStoppedStarvationCount;
+    }
+
+    /**
+     * 空きバッファがなかったためにカメラが落としたと推定されるフレームの数を返します。
+     * 停止した後は、最後に停止するまでの数を返します。数はカメラソースを開始するたびに0に戻ります。
+     */
+    public long getDroppedFrameCount() {
+        PreviewBufferPool pool = mBufferPool;
+        return (pool != null) ? pool.getDroppedFrameCount() : mStoppedDroppedFrameCount;
+    }
+
+    /**
+     * 検出の前に実行する前処理の連鎖を返します。段階ごとの処理時間の確認に使用します。
+     * {@link Builder#addFramePreprocessor(FramePreprocessor)}が呼び出されていない場合はnullです。
+     */
+    @Nullable
+    public FramePreprocessorChain getFramePreprocessorChain() {
+        return mPreprocessorChain;
+    }
+
+    /**
+     * 受け取ったフレームの数、処理前に置き換えられた数、読み飛ばした数、検出した数、検出器の例外の数を返します。
+     * 数はカメラソースを開始するたびに0に戻ります。
+     */
+    public FrameStatistics.Snapshot getFrameStatistics() {
+        return mFrameStatistics.getSnapshot(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * フレームの数を0に戻します。
+     */
+    public void resetFrameStatistics() {
+        mFrameStatistics.reset(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 処理の段階ごとの遅延を集計するトラッカーを返します。
+     * プロセッサは検出結果のフレームIDを使って、絞り込みと結果の配信の段階をこれに記録します。
+     * {@link Builder#setLatencyTracking(boolean)}が設定されていない場合はnullです。
+     */
+    @Nullable
+    public PipelineLatencyTracker getLatencyTracker() {
+        return mLatencyTracker;
+    }
+
+    /**
+     * 検出器に渡したフレームを記録するレコーダーを返します。
+     * {@link Builder#setFrameRecorder(FrameRecorder)}が設定されていない場合はnullです。
+     */
+    @Nullable
+    public FrameRecorder getFrameRecorder() {
+        return mFrameRecorder;
+    }
+
+    /**
+     * 選択したカメラを返します。 {@link #CAMERA_FACING_BACK}または{@link #CAMERA_FACING_FRONT}のいずれかです。
+     */
+    public int getCameraFacing() {
+        return mFacing;
+    }
+
+    /**
+     * ズームを変更します。scaleが1より大きい場合は最大のズームの1/10×scaleだけ上げ、1以下の場合はscale倍にします。
+     * ズームは専用のスレッドで適用されるため、このメソッドはカメラを待たずに戻ります。
+     *
+     * @return 要求したズーム。カメラが開いていないかズームがサポートされていない場合は0
+     */
+    public int doZoom(float scale) {
+        onManualZoom();
+        return mCameraControl.zoom(scale);
+    }
+
+    /**
+     * ズームの倍率をscale倍にします。{@link android.view.ScaleGestureDetector}の倍率の変化をそのまま渡すことができます。
+     * 適用を待っている間に続けて要求されたズームは、1回の設定にまとめられます。
+     *
+     * @param callback ズームが適用されたときにメインスレッドで呼び出されるコールバック、またはnull
+     * @return 要求したズーム。カメラが開いていないかズームがサポートされていない場合は0
+     */
+    public int zoomBy(float scale, @Nullable ZoomCallback callback) {
+        onManualZoom();
+        return mCameraControl.zoomBy(scale, callback);
+    }
+
+    /**
+     * スキャン帯の候補のテキストのうち、最も小さい1行の高さをフレームのピクセルで報告します。
+     * {@link Builder#setAutoZoom(int, int)}が設定されている場合、これに応じてズームを1段階ずつ変更します。
+     * 検出結果ごとにプロセッサから呼び出してください。
+     *
+     * @param textHeight 1行の高さ。候補がない場合は0
+     */
+    public void reportCandidateTextHeight(int textHeight) {
+        AutoZoomController controller = mAutoZoomController;
+        if (controller == null) {
+            return;
+        }
+        int currentZoom = mCameraControl.getZoom();
+        int zoom = controller.onCandidates(SystemClock.elapsedRealtime(), textHeight,
+                currentZoom, mCameraControl.getMaxZoom());
+        if (zoom != currentZoom) {
+            mCameraControl.setZoom(zoom, null);
+        }
+    }
+
+    /**
+     * 検出された候補の位置でフォーカスを合わせ直します。
+     * {@link Builder#setScanBandFocus(boolean)}で有効にした場合だけ動作し、合わせ直す間隔は2秒以上空けます。
+     * 座標は回転を適用したフレーム全体の座標（スキャン帯の切り出しと前処理の縮小を戻した座標）です。
+     * 検出結果を受け取ったプロセッサから呼び出してください。
+     *
+     * @return フォーカスを合わせ直した場合はtrue
      */
-    public Size getPreviewSize() {
-        return mPreviewSize;
+    public boolean focusOnCandidate(int left, int top, int right, int bottom) {
+        if (!mRefocusOnCandidate) {
+            return false;
+        }
+        Size previewSize = mPreviewSize;
+        if (previewSize == null) {
+            return false;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if ((mLastRefocusMillis != Long.MIN_VALUE) && (now - mLastRefocusMillis < REFOCUS_INTERVAL_MILLIS)) {
+            return false;
+        }
+        int[] area = CameraAreas.expand(CameraAreas.fromUpright(previewSize.getWidth(),
+                previewSize.getHeight(), mRotation, left, top, right, bottom), MIN_REFOCUS_AREA_SIZE);
+        if (!mCameraControl.focusOn(area)) {
+            return false;
+        }
+        mLastRefocusMillis = now;
+        return true;
     }
 
     /**
-     * 選択したカメラを返します。 {@link #CAMERA_FACING_BACK}または{@link #CAMERA_FACING_FRONT}のいずれかです。
+     * ズームを自動で変更するコントローラーを返します。変更した回数の確認に使用します。
+     * {@link Builder#setAutoZoom(int, int)}が設定されていない場合はnullです。
      */
-    public int getCameraFacing() {
-        return mFacing;
+    @Nullable
+    public AutoZoomController getAutoZoomController() {
+        return mAutoZoomController;
     }
 
-    public int doZoom(float scale) {
-        synchronized (mCameraLock) {
-            if (mCamera == null) {
-                return 0;
-            }
-            int currentZoom = 0;
-            int maxZoom;
-            Camera.Parameters parameters = mCamera.getParameters();
-            if (!parameters.isZoomSupported()) {
-                Log.w(TAG, "Zoom is not supported on this device");
-                return currentZoom;
-            }
-            maxZoom = parameters.getMaxZoom();
-
-            currentZoom = parameters.getZoom() + 1;
-            float newZoom;
-            if (scale > 1) {
-                newZoom = currentZoom + scale * (maxZoom / 10);
-            } else {
-                newZoom = currentZoom * scale;
-            }
-            currentZoom = Math.round(newZoom) - 1;
-            if (currentZoom < 0) {
-                currentZoom = 0;
-            } else if (currentZoom > maxZoom) {
-                currentZoom = maxZoom;
-            }
-            parameters.setZoom(currentZoom);
-            mCamera.setParameters(parameters);
-            return currentZoom;
+    private void onManualZoom() {
+        if (mAutoZoomController != null) {
+            mAutoZoomController.onManualZoom(SystemClock.elapsedRealtime());
         }
     }
 
@@ -460,16 +1222,21 @@ public class CameraSource {
      * @param shutter イメージキャプチャの瞬間のコールバック、またはnull
      * @param jpeg    JPEGイメージデータのコールバック、またはnull
      */
-    public void takePicture(ShutterCallback shutter, PictureCallback jpeg) {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                PictureStartCallback startCallback = new PictureStartCallback();
-                startCallback.mDelegate = shutter;
-                PictureDoneCallback doneCallback = new PictureDoneCallback();
-                doneCallback.mDelegate = jpeg;
-                mCamera.takePicture(startCallback, null, null, doneCallback);
+    public void takePicture(final ShutterCallback shutter, final PictureCallback jpeg) {
+        mCameraControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mCameraLock) {
+                    if (mCamera != null) {
+                        PictureStartCallback startCallback = new PictureStartCallback();
+                        startCallback.mDelegate = shutter;
+                        PictureDoneCallback doneCallback = new PictureDoneCallback();
+                        doneCallback.mDelegate = jpeg;
+                        mCamera.takePicture(startCallback, null, null, doneCallback);
+                    }
+                }
             }
-        }
+        });
     }
 
     /**
@@ -493,26 +1260,19 @@ public class CameraSource {
     }
 
     /**
-     * フォーカスモードを設定します。
+     * フォーカスモードを設定します。モードは専用のスレッドでカメラに適用されます。
      *
      * @param mode the focus mode
      * @return {@code true} if the focus mode is set, {@code false} otherwise
      * @see #getFocusMode()
      */
     public boolean setFocusMode(@FocusMode String mode) {
-        synchronized (mCameraLock) {
-            if (mCamera != null && mode != null) {
-                Camera.Parameters parameters = mCamera.getParameters();
-                if (parameters.getSupportedFocusModes().contains(mode)) {
-                    parameters.setFocusMode(mode);
-                    mCamera.setParameters(parameters);
-                    mFocusMode = mode;
-                    return true;
-                }
-            }
-
-            return false;
+        if (mode != null && mCameraControl.setFocusMode(mode)) {
+            mFocusMode = mode;
+            return true;
         }
+
+        return false;
     }
 
     /**
@@ -533,26 +1293,19 @@ public class CameraSource {
     }
 
     /**
-     * フラッシュモードを設定します。
+     * フラッシュモードを設定します。モードは専用のスレッドでカメラに適用されます。
      *
      * @param mode flash mode.
      * @return {@code true} if the flash mode is set, {@code false} otherwise
      * @see #getFlashMode()
      */
     public boolean setFlashMode(@FlashMode String mode) {
-        synchronized (mCameraLock) {
-            if (mCamera != null && mode != null) {
-                Camera.Parameters parameters = mCamera.getParameters();
-                if (parameters.getSupportedFlashModes().contains(mode)) {
-                    parameters.setFlashMode(mode);
-                    mCamera.setParameters(parameters);
-                    mFlashMode = mode;
-                    return true;
-                }
-            }
-
-            return false;
+        if (mode != null && mCameraControl.setFlashMode(mode)) {
+            mFlashMode = mode;
+            return true;
         }
+
+        return false;
     }
 
     /**
@@ -565,17 +1318,22 @@ public class CameraSource {
      * @param cb the callback to run
      * @see #cancelAutoFocus()
      */
-    public void autoFocus(@Nullable AutoFocusCallback cb) {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                CameraAutoFocusCallback autoFocusCallback = null;
-                if (cb != null) {
-                    autoFocusCallback = new CameraAutoFocusCallback();
-                    autoFocusCallback.mDelegate = cb;
+    public void autoFocus(@Nullable final AutoFocusCallback cb) {
+        mCameraControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mCameraLock) {
+                    if (mCamera != null) {
+                        CameraAutoFocusCallback autoFocusCallback = null;
+                        if (cb != null) {
+                            autoFocusCallback = new CameraAutoFocusCallback();
+                            autoFocusCallback.mDelegate = cb;
+                        }
+                        mCamera.autoFocus(autoFocusCallback);
+                    }
                 }
-                mCamera.autoFocus(autoFocusCallback);
             }
-        }
+        });
     }
 
     /**
@@ -586,11 +1344,16 @@ public class CameraSource {
      * @see #autoFocus(AutoFocusCallback)
      */
     public void cancelAutoFocus() {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                mCamera.cancelAutoFocus();
+        mCameraControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mCameraLock) {
+                    if (mCamera != null) {
+                        mCamera.cancelAutoFocus();
+                    }
+                }
             }
-        }
+        });
     }
 
     /**
@@ -601,21 +1364,27 @@ public class CameraSource {
      * otherwise
      */
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    public boolean setAutoFocusMoveCallback(@Nullable AutoFocusMoveCallback cb) {
+    public boolean setAutoFocusMoveCallback(@Nullable final AutoFocusMoveCallback cb) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
             return false;
         }
 
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                CameraAutoFocusMoveCallback autoFocusMoveCallback = null;
-                if (cb != null) {
-                    autoFocusMoveCallback = new CameraAutoFocusMoveCallback();
-                    autoFocusMoveCallback.mDelegate = cb;
+        mCameraControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mCameraLock) {
+                    if (mCamera != null) {
+                        // 品質ゲートがレンズの移動を追跡しているため、その場合はコールバックを外さずに委譲先だけを変更します。
+                        CameraAutoFocusMoveCallback autoFocusMoveCallback = null;
+                        if ((cb != null) || (mFrameQualityGate != null)) {
+                            autoFocusMoveCallback = new CameraAutoFocusMoveCallback();
+                            autoFocusMoveCallback.mDelegate = cb;
+                        }
+                        mCamera.setAutoFocusMoveCallback(autoFocusMoveCallback);
+                    }
                 }
-                mCamera.setAutoFocusMoveCallback(autoFocusMoveCallback);
             }
-        }
+        });
 
         return true;
     }
@@ -686,6 +1455,9 @@ public class CameraSource {
 
         @Override
         public void onAutoFocusMoving(boolean start, Camera camera) {
+            if (mFrameQualityGate != null) {
+                mFrameQualityGate.setFocusMoving(start);
+            }
             if (mDelegate != null) {
                 mDelegate.onAutoFocusMoving(start);
             }
@@ -697,27 +1469,141 @@ public class CameraSource {
      *
      * @throws RuntimeException if the method fails
      */
-    @SuppressLint("InlinedApi")
     private Camera createCamera() {
-        int requestedCameraId = getIdForRequestedCamera(mFacing);
+        Camera camera = null;
+        CameraCapabilities cached = (mCapabilityCache != null) ? mCapabilityCache.get(mFacing) : null;
+        if (cached != null) {
+            camera = openCamera(cached);
+        }
+        if (camera == null) {
+            camera = openCamera(null);
+        }
+        int[] previewFpsRange = mPreviewFpsRange;
+
+        if (mFrameQualityGate != null) {
+            // 品質ゲートがレンズの移動中のフレームを除外できるように、オートフォーカスの移動を追跡します。
+            mFrameQualityGate.setFocusMoving(false);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                camera.setAutoFocusMoveCallback(new CameraAutoFocusMoveCallback());
+            }
+        }
+
+        // By default these frame buffers are used for working with the camera (four with a single worker):
+        //
+        //   one per detector worker for the frame that is currently being executed upon in doing detection
+        //   one for the next pending frame to process immediately upon completing detection
+        //   two for the frames that the camera uses to populate future preview images
+        //
+        // Fewer buffers can be requested to save memory; the pool then reports how often the camera starves.
+        int bufferSize = PreviewBufferPool.bufferSizeFor(mPreviewSize.getWidth(),
+                mPreviewSize.getHeight(), ImageFormat.getBitsPerPixel(ImageFormat.NV21));
+        int bufferCount = mDetectorWorkerCount + 3;
+        if (mRequestedBufferCount > 0) {
+            bufferCount = mRequestedBufferCount;
+        } else if (mBufferBudgetBytes > 0) {
+            bufferCount = PreviewBufferPool.countForBudget(mBufferBudgetBytes, bufferSize, MIN_PREVIEW_BUFFERS);
+        }
+        if (bufferCount < mDetectorWorkerCount + 3) {
+            Log.i(TAG, "Using " + bufferCount + " preview buffers for " + mDetectorWorkerCount +
+                " workers; frames may be dropped by the camera.");
+        }
+        long frameIntervalMillis = 1000000L / previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+        PreviewBufferPool pool = new PreviewBufferPool(bufferCount, bufferSize, frameIntervalMillis);
+        mBufferPool = pool;
+
+        // カメラAPIのフレームレートは1000倍にスケールされた整数です。
+        CameraFrameSource source = new CameraFrameSource(camera, pool,
+                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000.0f);
+        prepareFrameProcessing(source);
+        source.start(mFrameProcessor);
+        mFrameSource = source;
+
+        return camera;
+    }
+
+    /**
+     * カメラを開いて設定を適用します。
+     * cachedを指定した場合は、カメラの検索とパラメータの機能の解析を省略して、保存された機能から設定を選びます。
+     *
+     * @param cached 保存されたカメラの機能。nullの場合はカメラを調べて、キャッシュがあれば保存します
+     * @return 設定を適用したカメラ。保存された機能で設定できなかった場合はnull
+     * @throws RuntimeException if the method fails
+     */
+    private Camera openCamera(@Nullable final CameraCapabilities cached) {
+        int requestedCameraId = (cached != null) ? cached.getCameraId() : getIdForRequestedCamera(mFacing);
         if (requestedCameraId == -1) {
             throw new RuntimeException("Could not find requested camera.");
         }
-        Camera camera = Camera.open(requestedCameraId);
+        Camera camera = null;
+        final Camera.Parameters parameters;
+        CameraCapabilities capabilities;
+        try {
+            camera = Camera.open(requestedCameraId);
+            parameters = camera.getParameters();
+            capabilities = (cached != null) ? cached : CameraCapabilityCache.probe(requestedCameraId, parameters);
+            configureCamera(camera, parameters, capabilities);
+        } catch (RuntimeException e) {
+            if (camera != null) {
+                camera.release();
+            }
+            if (cached == null) {
+                throw e;
+            }
+            // 保存された機能が古い可能性があるため、破棄してカメラを調べ直します。
+            Log.w(TAG, "Could not open camera " + requestedCameraId + " with cached capabilities.", e);
+            mCapabilityCache.remove(requestedCameraId);
+            return null;
+        }
+        mCameraControl.attach(camera, parameters);
 
-        SizePair sizePair = selectSizePair(camera, mRequestedPreviewWidth, mRequestedPreviewHeight);
+        final CameraCapabilityCache cache = mCapabilityCache;
+        if (cache != null) {
+            if (cached == null) {
+                cache.put(capabilities);
+            } else {
+                // 照合のためのパラメータの解析は、フレームの開始を待たせないように制御スレッドで行います。
+                mCameraControl.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        cache.verify(cached, parameters);
+                    }
+                });
+            }
+        }
+        return camera;
+    }
+
+    /**
+     * カメラの機能からプレビューサイズ、フレームレート、フォーカスとフラッシュのモードを選び、カメラに設定します。
+     *
+     * @throws RuntimeException if the method fails
+     */
+    @SuppressLint("InlinedApi")
+    private void configureCamera(Camera camera, Camera.Parameters parameters, CameraCapabilities capabilities) {
+        // フレームの回転はプレビューサイズの選択に使うため、先に求めます。
+        setRotation(camera, parameters, capabilities);
+
+        List<SizePair> validPreviewSizes = generateValidPreviewSizeList(capabilities);
+        SizePair sizePair;
+        if (mPreviewSizePolicy != null) {
+            boolean sideways = (mRotation == Frame.ROTATION_90) || (mRotation == Frame.ROTATION_270);
+            sizePair = selectSizePair(validPreviewSizes, mPreviewSizePolicy, sideways,
+                    (float) Math.max(mRequestedPreviewWidth, mRequestedPreviewHeight)
+                            / Math.min(mRequestedPreviewWidth, mRequestedPreviewHeight));
+        } else {
+            sizePair = selectSizePair(validPreviewSizes, mRequestedPreviewWidth, mRequestedPreviewHeight);
+        }
         if (sizePair == null) {
             throw new RuntimeException("Could not find suitable preview size.");
         }
         Size pictureSize = sizePair.pictureSize();
         mPreviewSize = sizePair.previewSize();
 
-        int[] previewFpsRange = selectPreviewFpsRange(camera, mRequestedFps);
+        int[] previewFpsRange = selectPreviewFpsRange(capabilities, mRequestedFps);
         if (previewFpsRange == null) {
             throw new RuntimeException("Could not find suitable preview frames per second range.");
         }
-
-        Camera.Parameters parameters = camera.getParameters();
+        mPreviewFpsRange = previewFpsRange;
 
         if (pictureSize != null) {
             parameters.setPictureSize(pictureSize.getWidth(), pictureSize.getHeight());
@@ -729,10 +1615,13 @@ public class CameraSource {
                 previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
         parameters.setPreviewFormat(ImageFormat.NV21);
 
-        setRotation(camera, parameters, requestedCameraId);
+        if (mScanBandFocus && (mScanBandRatio > 0)) {
+            CameraControl.setAreas(parameters, CameraAreas.scanBand(mPreviewSize.getWidth(),
+                    mPreviewSize.getHeight(), mRotation, mScanBandRatio));
+        }
 
         if (mFocusMode != null) {
-            if (parameters.getSupportedFocusModes().contains(
+            if (capabilities.getFocusModes().contains(
                     mFocusMode)) {
                 parameters.setFocusMode(mFocusMode);
             } else {
@@ -745,7 +1634,7 @@ public class CameraSource {
         mFocusMode = parameters.getFocusMode();
 
         if (mFlashMode != null) {
-            if (parameters.getSupportedFlashModes().contains(
+            if (capabilities.getFlashModes().contains(
                     mFlashMode)) {
                 parameters.setFlashMode(mFlashMode);
             } else {
@@ -758,19 +1647,71 @@ public class CameraSource {
         mFlashMode = parameters.getFlashMode();
 
         camera.setParameters(parameters);
+    }
 
-        // Four frame buffers are needed for working with the camera:
-        //
-        //   one for the frame that is currently being executed upon in doing detection
-        //   one for the next pending frame to process immediately upon completing detection
-        //   two for the frames that the camera uses to populate future preview images
-        camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
+    /**
+     * カメラの代わりに設定された供給元からフレームの供給を開始します。mCameraLockを保持した状態で呼び出してください。
+     */
+    private void startExternalFrameSource() throws IOException {
+        FrameSource source = mExternalFrameSource;
+        mPreviewSize = new Size(source.getWidth(), source.getHeight());
+        mRotation = source.getRotation();
+        prepareFrameProcessing(source);
+        startProcessingThreads();
+        try {
+            source.start(mFrameProcessor);
+        } catch (IOException e) {
+            stop();
+            throw e;
+        }
+        mFrameSource = source;
+    }
 
-        return camera;
+    /**
+     * 供給元のフレームサイズと回転に合わせて、フレームの処理を準備します。処理スレッドを開始する前に呼び出してください。
+     */
+    private void prepareFrameProcessing(FrameSource source) {
+        if (mFrameRateController != null) {
+            mFrameRateController.start(source.getMaxFps(), SystemClock.elapsedRealtime());
+        }
+        mFrameStatistics.reset(SystemClock.elapsedRealtime());
+        mStoppedStarvationCount = 0;
+        mStoppedDroppedFrameCount = 0;
+        if (mAutoZoomController != null) {
+            mAutoZoomController.start(SystemClock.elapsedRealtime());
+        }
+
+        if (mScanBandRatio > 0) {
+            mScanBandCrop = ScanBandCrop.create(source.getWidth(), source.getHeight(),
+                    source.getRotation(), mScanBandRatio, SCAN_BAND_MARGIN_RATIO);
+            mFrameProcessor.prepareCropBuffers(mScanBandCrop.getBufferSize());
+        }
+
+        if (mFrameRecorder != null) {
+            ScanBandCrop crop = mScanBandCrop;
+            try {
+                mFrameRecorder.open((crop != null) ? crop.getWidth() : source.getWidth(),
+                        (crop != null) ? crop.getHeight() : source.getHeight(),
+                        source.getRotation());
+            } catch (IOException e) {
+                // 記録できなくても検出は続けます。
+                Log.e(TAG, "Failed to open frame recording.", e);
+            }
+        }
+
+        mFrameProcessor.setFrameSource(source);
+    }
+
+    /**
+     * 検出ワーカーの数だけフレーム処理スレッドを作成して開始します。mCameraLockを保持した状態で呼び出してください。
+     */
+    private void startProcessingThreads() {
+        mFrameProcessor.setActive(true);
+        mProcessingThreads = new Thread[mDetectorWorkerCount];
+        for (int i = 0; i < mProcessingThreads.length; ++i) {
+            mProcessingThreads[i] = new Thread(mFrameProcessor.forWorker(i), "FrameProcessor-" + i);
+            mProcessingThreads[i].start();
+        }
     }
 
     /**
@@ -795,13 +1736,12 @@ public class CameraSource {
      * プレビューサイズのみが必要な場合もありますが、プレビューサイズとピクチャサイズの両方を同じアスペクト比にする必要があるため、両方を一緒に見つける必要があります。
      * 一部のハードウェアでは、プレビューサイズのみを設定すると、歪んだ画像が表示されます。
      *
-     * @param camera        the camera to select a preview size from
-     * @param desiredWidth  the desired width of the camera preview frames
-     * @param desiredHeight the desired height of the camera preview frames
+     * @param validPreviewSizes the valid preview sizes of the camera
+     * @param desiredWidth      the desired width of the camera preview frames
+     * @param desiredHeight     the desired height of the camera preview frames
      * @return the selected preview and picture size pair
      */
-    private static SizePair selectSizePair(Camera camera, int desiredWidth, int desiredHeight) {
-        List<SizePair> validPreviewSizes = generateValidPreviewSizeList(camera);
+    private static SizePair selectSizePair(List<SizePair> validPreviewSizes, int desiredWidth, int desiredHeight) {
 
         // 最良のサイズを選択する方法は、所望の値と幅と高さの実際の値との間の差の合計を最小にすることである。
         // これは確かに最適なサイズを選択する唯一の方法ではありませんが、最も近いアスペクト比と最も近いピクセル領域を使用する場合との間で適切なトレードオフを提供します。
@@ -820,6 +1760,34 @@ public class CameraSource {
         return selectedPair;
     }
 
+    /**
+     * {@link PreviewSizePolicy}に従って、プレビューと画像のサイズを選択します。
+     *
+     * @param validPreviewSizes the valid preview sizes of the camera
+     * @param sideways          true if frames are rotated by 90 or 270 degrees to be upright
+     * @param aspectRatio       the preferred aspect ratio (long side / short side)
+     * @return the selected preview and picture size pair, or null if there is no valid size
+     */
+    private static SizePair selectSizePair(List<SizePair> validPreviewSizes, PreviewSizePolicy policy,
+                                           boolean sideways, float aspectRatio) {
+        int[] widths = new int[validPreviewSizes.size()];
+        int[] heights = new int[validPreviewSizes.size()];
+        for (int i = 0; i < widths.length; ++i) {
+            Size size = validPreviewSizes.get(i).previewSize();
+            widths[i] = size.getWidth();
+            heights[i] = size.getHeight();
+        }
+        int index = policy.select(widths, heights, sideways, aspectRatio);
+        if (index < 0) {
+            return null;
+        }
+        SizePair selectedPair = validPreviewSizes.get(index);
+        Size size = selectedPair.previewSize();
+        Log.i(TAG, "Selected preview size " + size.getWidth() + "x" + size.getHeight() + " for text height "
+                + policy.getTextHeight(size.getWidth(), size.getHeight(), sideways));
+        return selectedPair;
+    }
+
     /**
      * プレビューサイズとそれに対応する同じアスペクト比の画像サイズを格納します。
      * 一部のデバイスでプレビュー画像が歪んで表示されないようにするには、画像のサイズをプレビューサイズと同じ縦横比のサイズに設定する必要があります。そうしないと、プレビューが歪んでしまうことがあります。
@@ -829,12 +1797,9 @@ public class CameraSource {
         private Size mPreview;
         private Size mPicture;
 
-        public SizePair(android.hardware.Camera.Size previewSize,
-                        android.hardware.Camera.Size pictureSize) {
-            mPreview = new Size(previewSize.width, previewSize.height);
-            if (pictureSize != null) {
-                mPicture = new Size(pictureSize.width, pictureSize.height);
-            }
+        public SizePair(Size previewSize, Size pictureSize) {
+            mPreview = previewSize;
+            mPicture = pictureSize;
         }
 
         public Size previewSize() {
@@ -854,22 +1819,22 @@ public class CameraSource {
      * これは、静止画を使用しない場合でも、選択したプレビューサイズと同じアスペクト比のサイズに設定する必要があるためです。
      * そうしないと、一部のデバイスでプレビュー画像が歪むことがあります。
      */
-    private static List<SizePair> generateValidPreviewSizeList(Camera camera) {
-        Camera.Parameters parameters = camera.getParameters();
-        List<android.hardware.Camera.Size> supportedPreviewSizes =
-                parameters.getSupportedPreviewSizes();
-        List<android.hardware.Camera.Size> supportedPictureSizes =
-                parameters.getSupportedPictureSizes();
+    private static List<SizePair> generateValidPreviewSizeList(CameraCapabilities capabilities) {
         List<SizePair> validPreviewSizes = new ArrayList<>();
-        for (android.hardware.Camera.Size previewSize : supportedPreviewSizes) {
-            float previewAspectRatio = (float) previewSize.width / (float) previewSize.height;
+        for (int i = 0; i < capabilities.getPreviewSizeCount(); ++i) {
+            int previewWidth = capabilities.getPreviewWidth(i);
+            int previewHeight = capabilities.getPreviewHeight(i);
+            float previewAspectRatio = (float) previewWidth / (float) previewHeight;
 
             // ピクチャサイズを順番にループすることで、より高い解像度を優先します。
             // 後で完全な解像度の写真を撮ることをサポートするために最高の解像度を選択します。
-            for (android.hardware.Camera.Size pictureSize : supportedPictureSizes) {
-                float pictureAspectRatio = (float) pictureSize.width / (float) pictureSize.height;
+            for (int j = 0; j < capabilities.getPictureSizeCount(); ++j) {
+                int pictureWidth = capabilities.getPictureWidth(j);
+                int pictureHeight = capabilities.getPictureHeight(j);
+                float pictureAspectRatio = (float) pictureWidth / (float) pictureHeight;
                 if (Math.abs(previewAspectRatio - pictureAspectRatio) < ASPECT_RATIO_TOLERANCE) {
-                    validPreviewSizes.add(new SizePair(previewSize, pictureSize));
+                    validPreviewSizes.add(new SizePair(new Size(previewWidth, previewHeight),
+                            new Size(pictureWidth, pictureHeight)));
                     break;
                 }
             }
@@ -879,9 +1844,10 @@ public class CameraSource {
         // おそらくそうではないかもしれませんが、私たちはまだそれを説明しています。
         if (validPreviewSizes.size() == 0) {
             Log.w(TAG, "No preview sizes have a corresponding same-aspect-ratio picture size");
-            for (android.hardware.Camera.Size previewSize : supportedPreviewSizes) {
+            for (int i = 0; i < capabilities.getPreviewSizeCount(); ++i) {
                 // The null picture size will let us know that we shouldn't set a picture size.
-                validPreviewSizes.add(new SizePair(previewSize, null));
+                validPreviewSizes.add(new SizePair(
+                        new Size(capabilities.getPreviewWidth(i), capabilities.getPreviewHeight(i)), null));
             }
         }
 
@@ -891,11 +1857,11 @@ public class CameraSource {
     /**
      * 1秒あたりの希望フレーム数を考慮して、1秒あたりの範囲に最も適したプレビューフレームを選択します。
      *
-     * @param camera カメラは1秒あたりのフレーム数を選択します
+     * @param capabilities 1秒あたりのフレーム数の範囲を選択するカメラの機能
      * @param desiredPreviewFps カメラのプレビューフレームの1秒間に必要なフレーム数
      * @return 選択されたプレビューフレーム/秒の範囲
      */
-    private int[] selectPreviewFpsRange(Camera camera, float desiredPreviewFps) {
+    private static int[] selectPreviewFpsRange(CameraCapabilities capabilities, float desiredPreviewFps) {
         // カメラAPIは、浮動小数点フレームレートではなく、1000倍にスケールされた整数を使用します。
         int desiredPreviewFpsScaled = (int) (desiredPreviewFps * 1000.0f);
 
@@ -904,13 +1870,14 @@ public class CameraSource {
         // 例えば、所望のフレームレートが29.97である場合、範囲（30,30）はおそらく範囲（15,30）よりも望ましい。
         int[] selectedFpsRange = null;
         int minDiff = Integer.MAX_VALUE;
-        List<int[]> previewFpsRangeList = camera.getParameters().getSupportedPreviewFpsRange();
-        for (int[] range : previewFpsRangeList) {
-            int deltaMin = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
-            int deltaMax = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+        for (int i = 0; i < capabilities.getFpsRangeCount(); ++i) {
+            int deltaMin = desiredPreviewFpsScaled - capabilities.getMinFps(i);
+            int deltaMax = desiredPreviewFpsScaled - capabilities.getMaxFps(i);
             int diff = Math.abs(deltaMin) + Math.abs(deltaMax);
             if (diff < minDiff) {
-                selectedFpsRange = range;
+                selectedFpsRange = new int[2];
+                selectedFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] = capabilities.getMinFps(i);
+                selectedFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] = capabilities.getMaxFps(i);
                 minDiff = diff;
             }
         }
@@ -921,10 +1888,10 @@ public class CameraSource {
      * 指定されたカメラIDの正しい回転を計算し、パラメータに回転を設定します。
      * また、カメラの表示方向と回転を設定します。
      *
-     * @param parameters 回転を設定するカメラパラメータ
-     * @param cameraId   カメラIDに基づいて回転を設定する
+     * @param parameters   回転を設定するカメラパラメータ
+     * @param capabilities カメラの向きと取り付けの角度に基づいて回転を設定する
      */
-    private void setRotation(Camera camera, Camera.Parameters parameters, int cameraId) {
+    private void setRotation(Camera camera, Camera.Parameters parameters, CameraCapabilities capabilities) {
         WindowManager windowManager =
                 (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
         int degrees = 0;
@@ -946,16 +1913,13 @@ public class CameraSource {
                 Log.e(TAG, "Bad rotation value: " + rotation);
         }
 
-        CameraInfo cameraInfo = new CameraInfo();
-        Camera.getCameraInfo(cameraId, cameraInfo);
-
         int angle;
         int displayAngle;
-        if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            angle = (cameraInfo.orientation + degrees) % 360;
+        if (capabilities.getFacing() == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+            angle = (capabilities.getOrientation() + degrees) % 360;
             displayAngle = (360 - angle); // compensate for it being mirrored
         } else {  // back-facing
-            angle = (cameraInfo.orientation - degrees + 360) % 360;
+            angle = (capabilities.getOrientation() - degrees + 360) % 360;
             displayAngle = angle;
         }
 
@@ -967,27 +1931,14 @@ public class CameraSource {
     }
 
     /**
-     * カメラプレビューコールバック用のバッファを1つ作成します。
-     * バッファのサイズは、カメラのプレビューサイズとカメラ画像のフォーマットに基づいています。
-     *
-     * @return 現在のカメラ設定に適したサイズの新しいプレビューバッファ
+     * プレビューバッファをカメラに戻し、バッファプールの使用状況を更新します。
      */
-    private byte[] createPreviewBuffer(Size previewSize) {
-        int bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
-        long sizeInBits = previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
-        int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
-        // 注意：このコードは、プレイサービスv。8.1以降を使用している場合にのみ機能します。
-        // バイト配列をこのように作成し、それをラッピングすることは、.allocate（）を使用するのとは対照的に、動作する配列が存在することを保証するはずです。
-        byte[] byteArray = new byte[bufferSize];
-        ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-        if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-            // 私はこれが起こるとは思わない
-            // しかし、そうであれば、プレビューコンテンツを後の検出器に後で渡すことはありません。
-            throw new IllegalStateException("Failed to create valid buffer for camera source.");
+    private void queuePreviewBuffer(Camera camera, byte[] data) {
+        PreviewBufferPool pool = mBufferPool;
+        if (pool != null) {
+            pool.onQueued(SystemClock.elapsedRealtime());
         }
-
-        mBytesToByteBuffer.put(byteArray, buffer);
-        return byteArray;
+        camera.addCallbackBuffer(data);
     }
 
     //==============================================================================================
@@ -995,12 +1946,91 @@ public class CameraSource {
     //==============================================================================================
 
     /**
-     * カメラに新しいプレビューフレームがあるときに呼び出されます。
+     * カメラのプレビューフレームを供給する供給元。
+     * カメラはプールのバッファにプレビューフレームを書き込み、返されたバッファを次のフレームに使用します。
      */
-    private class CameraPreviewCallback implements Camera.PreviewCallback {
+    private class CameraFrameSource implements FrameSource, Camera.PreviewCallback {
+        private final Camera mSourceCamera;
+        private final PreviewBufferPool mPool;
+        private final float mMaxFps;
+        private FrameCallback mCallback;
+
+        CameraFrameSource(Camera camera, PreviewBufferPool pool, float maxFps) {
+            mSourceCamera = camera;
+            mPool = pool;
+            mMaxFps = maxFps;
+        }
+
+        @Override
+        public int getWidth() {
+            return mPreviewSize.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return mPreviewSize.getHeight();
+        }
+
+        @Override
+        public int getRotation() {
+            return mRotation;
+        }
+
+        @Override
+        public float getMaxFps() {
+            return mMaxFps;
+        }
+
+        @Override
+        public void start(FrameCallback callback) {
+            mCallback = callback;
+            mSourceCamera.setPreviewCallbackWithBuffer(this);
+            for (int i = 0; i < mPool.getBufferCount(); ++i) {
+                queuePreviewBuffer(mSourceCamera, mPool.getArray(i));
+            }
+        }
+
+        @Override
+        public void stop() {
+            mSourceCamera.setPreviewCallbackWithBuffer(null);
+        }
+
+        @Override
+        public void releaseFrame(ByteBuffer data) {
+            queuePreviewBuffer(mSourceCamera, data.array());
+        }
+
+        /**
+         * カメラに新しいプレビューフレームがあるときに呼び出されます。
+         */
         @Override
         public void onPreviewFrame(byte[] data, Camera camera) {
-            mFrameProcessor.setNextFrame(data, camera);
+            ByteBuffer buffer = mPool.lookup(data);
+            if (buffer == null) {
+                mFrameStatistics.onReceived();
+                mFrameStatistics.onSkipped();
+                Log.d(TAG,
+                    "Skipping frame.  Could not find ByteBuffer associated with the image " +
+                    "data from the camera.");
+                return;
+            }
+            mPool.onFrameReceived(SystemClock.elapsedRealtime());
+            mCallback.onFrame(buffer);
+        }
+    }
+
+    /**
+     * 処理を待っているフレームとその受信時の情報。
+     * 供給元のバッファごとに1つ作成し、そのバッファが届くたびに再利用します。
+     * バッファは処理スレッドが情報を読み出した後に供給元に戻されるため、読み出し中に書き換えられることはありません。
+     */
+    private static final class PendingFrame {
+        final ByteBuffer mData;
+        int mFrameId;
+        long mTimestampMillis;
+
+        PendingFrame(ByteBuffer data) {
+            mData = data;
         }
     }
 
@@ -1009,23 +2039,42 @@ public class CameraSource {
      * これは、できるだけ早く（すなわち、不要なコンテキストの切り替えや次のフレームの待機なしに）フレームの検出を実行するように設計されています。
      * 検出はフレーム上で実行されている間、新しいフレームがカメラから受信されることがあります。
      * これらのフレームが入ってくると、最新のフレームが保留中に保持されます。
+     * 保留中のフレームはロックフリーの{@link FrameSlot}で受け渡すため、カメラのコールバックが処理スレッドを待つことはありません。
      * 前のフレームに対して検出およびそれに関連する処理が行われると直ぐに、最近受信したフレームの検出が同じスレッド上で直ちに開始される。
+     * 複数の検出ワーカーを使用する場合、同じインスタンスが各ワーカースレッドで実行され、空いたワーカーが保留中のフレームを取り出します。
+     * ワーカーごとの検出器が設定されている場合、各ワーカーは自分の検出器だけを呼び出します。
+     * 検出結果は{@link FrameSequencer}を通して、指定された順序でプロセッサに配信されます。
      */
-    private class FrameProcessingRunnable implements Runnable {
-        private Detector<?> mDetector;
+    private class FrameProcessingRunnable implements FrameSource.FrameCallback {
+        // ワーカーの番号で選ぶ検出器。1つだけの場合は全てのワーカーが共有します。
+        private Detector<?>[] mDetectors;
+        private Detector.Processor<?> mProcessor;
+        private final FrameSequencer mSequencer;
         private long mStartTimeMillis = SystemClock.elapsedRealtime();
 
-        // このロックは、以下のメンバ変数すべてを保護します。
-        private final Object mLock = new Object();
-        private boolean mActive = true;
+        // フレームを供給している供給元。処理スレッドを開始する前に設定されます。
+        private volatile FrameSource mSource;
+
+        // 処理を待っている最新のフレーム。スロットが閉じている間は、処理スレッドはループを終了します。
+        private final FrameSlot<PendingFrame> mPendingSlot;
 
-        // これらの保留中の変数は、処理を待っている新しいフレームに関連する状態を保持する。
-        private long mPendingTimeMillis;
+        // 供給元のコールバックのスレッドからのみ更新されます。
         private int mPendingFrameId = 0;
-        private ByteBuffer mPendingFrameData;
+        // 供給元のバッファごとの保留中のフレーム。供給元のコールバックのスレッドからのみ使用され、供給元を変えると作り直します。
+        private final Map<ByteBuffer, PendingFrame> mPendingFrames = new IdentityHashMap<>();
 
-        FrameProcessingRunnable(Detector<?> detector) {
-            mDetector = detector;
+        // このロックは、処理スレッドの間で以下のメンバ変数すべてとチケットの発行を保護します。供給元のコールバックは取得しません。
+        private final Object mLock = new Object();
+
+        // スキャン帯を切り出したフレームを格納するバッファ。ワーカーごとに1つずつ貸し出されます。
+        private ByteBuffer[] mCropBuffers = new ByteBuffer[0];
+        private int mFreeCropBuffers;
+
+        FrameProcessingRunnable(Detector<?>[] detectors, Detector.Processor<?> processor) {
+            mDetectors = detectors;
+            mProcessor = processor;
+            mSequencer = new FrameSequencer(mResultOrder);
+            mPendingSlot = new FrameSlot<>(mDetectorWorkerCount);
         }
 
         /**
@@ -1034,9 +2083,15 @@ public class CameraSource {
          */
         @SuppressLint("Assert")
         void release() {
-            assert (mProcessingThread.getState() == State.TERMINATED);
-            mDetector.release();
-            mDetector = null;
+            assert (mProcessingThreads == null);
+            for (Detector<?> detector : mDetectors) {
+                detector.release();
+            }
+            mDetectors = null;
+            if (mProcessor != null) {
+                mProcessor.release();
+                mProcessor = null;
+            }
         }
 
         /**
@@ -1044,37 +2099,98 @@ public class CameraSource {
          */
         void setActive(boolean active) {
             synchronized (mLock) {
-                mActive = active;
-                mLock.notifyAll();
+                if (active) {
+                    // 全てのワーカーが終了した後にのみ再開されるため、ここでチケットを初期化しても安全です。
+                    mSequencer.reset();
+                    if (mFrameChangeGate != null) {
+                        mFrameChangeGate.resetSignature();
+                    }
+                    mPendingSlot.open();
+                } else {
+                    mSequencer.cancel();
+                    mPendingSlot.close();
+                }
             }
         }
 
         /**
-         * カメラから受信したフレームデータを設定します。
-         * これにより、未使用のフレームバッファ（存在する場合）がカメラに戻され、将来の使用のためにフレームデータへの保留中の参照が保持されます。
+         * フレームを供給する供給元を設定します。処理スレッドが停止している間に呼び出してください。
          */
-        void setNextFrame(byte[] data, Camera camera) {
-            synchronized (mLock) {
-                if (mPendingFrameData != null) {
-                    camera.addCallbackBuffer(mPendingFrameData.array());
-                    mPendingFrameData = null;
-                }
+        void setFrameSource(FrameSource source) {
+            // 以前の供給元のバッファを保留したままにしないようにします。
+            mPendingSlot.poll();
+            mPendingFrames.clear();
+            mSource = source;
+        }
 
-                if (!mBytesToByteBuffer.containsKey(data)) {
-                    Log.d(TAG,
-                        "Skipping frame.  Could not find ByteBuffer associated with the image " +
-                        "data from the camera.");
+        /**
+         * スキャン帯の切り出しに使用するバッファを、ワーカーごとに1つずつ用意します。
+         * 処理スレッドが停止している間に呼び出してください。同じサイズのバッファは再利用されます。
+         */
+        void prepareCropBuffers(int bufferSize) {
+            synchronized (mLock) {
+                if ((mCropBuffers.length == mDetectorWorkerCount)
+                        && (mCropBuffers[0].capacity() == bufferSize)) {
+                    mFreeCropBuffers = mCropBuffers.length;
                     return;
                 }
+                mCropBuffers = new ByteBuffer[mDetectorWorkerCount];
+                for (int i = 0; i < mCropBuffers.length; ++i) {
+                    mCropBuffers[i] = ByteBuffer.wrap(new byte[bufferSize]);
+                }
+                mFreeCropBuffers = mCropBuffers.length;
+            }
+        }
 
-                // タイムスタンプとフレームIDはここで維持されます。これにより、受信したフレームのタイミングと途中でフレームがドロップされたタイミングを下流のコードに認識させます。
-                mPendingTimeMillis = SystemClock.elapsedRealtime() - mStartTimeMillis;
-                mPendingFrameId++;
-                mPendingFrameData = mBytesToByteBuffer.get(data);
+        /**
+         * 供給元から受信したフレームデータを設定します。
+         * これにより、未使用のフレームバッファ（存在する場合）が供給元に戻され、将来の使用のためにフレームデータへの保留中の参照が保持されます。
+         */
+        @Override
+        public void onFrame(ByteBuffer buffer) {
+            FrameSource source = mSource;
+            mFrameStatistics.onReceived();
+            if ((mFrameRateController != null)
+                    && !mFrameRateController.shouldProcess(SystemClock.elapsedRealtime())) {
+                // 目標のレートより早く届いたフレームは、処理スレッドを起こさずにそのまま供給元に戻します。
+                mFrameStatistics.onSkipped();
+                source.releaseFrame(buffer);
+                return;
+            }
 
-                // プロセッサスレッドが次のフレームで待機している場合は、プロセッサスレッドに通知します（下記参照）。
-                mLock.notifyAll();
+            // タイムスタンプとフレームIDはここで維持されます。これにより、受信したフレームのタイミングと途中でフレームがドロップされたタイミングを下流のコードに認識させます。
+            mPendingFrameId++;
+            if (mLatencyTracker != null) {
+                mLatencyTracker.mark(mPendingFrameId, PipelineLatencyTracker.STAGE_CALLBACK);
+            }
+            PendingFrame pending = mPendingFrames.get(buffer);
+            if (pending == null) {
+                // バッファが初めて届いた時だけ作成します。
+                pending = new PendingFrame(buffer);
+                mPendingFrames.put(buffer, pending);
             }
+            pending.mFrameId = mPendingFrameId;
+            pending.mTimestampMillis = SystemClock.elapsedRealtime() - mStartTimeMillis;
+
+            // 次のフレームを待っているプロセッサスレッドを起こします（下記参照）。まだ処理されていないフレームは供給元に戻します。
+            PendingFrame replaced = mPendingSlot.offer(pending);
+            if (replaced != null) {
+                mFrameStatistics.onReplaced();
+                source.releaseFrame(replaced.mData);
+            }
+        }
+
+        /**
+         * 指定した番号のワーカースレッドで実行する処理を返します。ワーカーの検出器はここで選びます。
+         */
+        Runnable forWorker(int worker) {
+            final Detector<?> detector = mDetectors[worker % mDetectors.length];
+            return new Runnable() {
+                @Override
+                public void run() {
+                    processFrames(detector);
+                }
+            };
         }
 
         /**
@@ -1086,53 +2202,208 @@ public class CameraSource {
          * これは、このループがフレームを待たずに実行され、コンテキスト切り替えやフレーム取得時間の遅延を避けることを意味します。
          * これ以上のCPUを使用している場合は、上記のFPS設定を減らして、フレーム間のアイドル時間を考慮する必要があります。
          */
-        @Override
-        public void run() {
-            Frame outputFrame;
-            ByteBuffer data;
+        private void processFrames(Detector<?> detector) {
+            // 前処理の対象はスレッドごとに1つ作成し、フレームごとに再利用します。
+            FramePreprocessor.Image preprocessImage =
+                    (mPreprocessorChain != null) ? new FramePreprocessor.Image() : null;
 
             while (true) {
+                PendingFrame pending;
+                ScanBandCrop crop = null;
+                ByteBuffer cropBuffer = null;
+                long ticket = 0;
                 synchronized (mLock) {
-                    while (mActive && (mPendingFrameData == null)) {
-                        try {
-                            // まだフレームがないので、次のフレームがカメラから受信されるのを待ちます。
-                            mLock.wait();
-                        } catch (InterruptedException e) {
-                            Log.d(TAG, "Frame processing loop terminated.", e);
-                            return;
-                        }
+                    if (!mPendingSlot.isOpen()) {
+                        // このカメラソースが停止または解放されると、ループを終了します。
+                        return;
                     }
 
-                    if (!mActive) {
-                        // このカメラソースが停止または解放されると、ループを終了します。
-                        // We check this here, immediately after the wait() above, to handle the case where setActive(false) had been called, triggering the termination of this loop.
+                    // スロットから取り出すことで、このバッファがカメラにリサイクルされないようにしてから、そのデータを使用します。
+                    pending = mPendingSlot.poll();
+                    if (pending != null) {
+                        // 各ワーカーが同時に使う切り出し用バッファは1つだけなので、プールが空になることはありません。
+                        crop = mScanBandCrop;
+                        cropBuffer = (crop != null) ? mCropBuffers[--mFreeCropBuffers] : null;
+
+                        // フレームを取り出したのと同じロックの中でチケットを発行し、チケットの順序をフレームIDの順序に一致させます。
+                        ticket = mSequencer.issue();
+                    }
+                }
+
+                if (pending == null) {
+                    try {
+                        // まだフレームがないので、ロックを持たずに次のフレームがカメラから受信されるのを待ちます。
+                        mPendingSlot.await();
+                    } catch (InterruptedException e) {
+                        Log.d(TAG, "Frame processing loop terminated.", e);
                         return;
                     }
+                    continue;
+                }
 
-                    outputFrame = new Frame.Builder()
-                            .setImageData(mPendingFrameData, mPreviewSize.getWidth(),
-                                    mPreviewSize.getHeight(), ImageFormat.NV21)
-                            .setId(mPendingFrameId)
-                            .setTimestampMillis(mPendingTimeMillis)
-                            .setRotation(mRotation)
-                            .build();
-
-                    // フレームデータをローカルに保持することで、これを検出に使用することができます。
-                    // mPendingFrameDataをクリアして、このバッファをカメラにリサイクルしないようにしてから、そのデータを使用する必要があります。
-                    data = mPendingFrameData;
-                    mPendingFrameData = null;
+                ByteBuffer data = pending.mData;
+                int frameId = pending.mFrameId;
+                long timestampMillis = pending.mTimestampMillis;
+                FrameSource source = mSource;
+                PipelineLatencyTracker tracker = mLatencyTracker;
+                if (tracker != null) {
+                    tracker.mark(frameId, PipelineLatencyTracker.STAGE_HANDOFF);
                 }
 
                 // 以下のコードは、同期外で実行する必要があります。
                 // 現在のフレームで検出を実行している間、カメラがペンディングフレームを追加できるためです。
+                ByteBuffer image;
+                int imageWidth;
+                int imageHeight;
+                if (cropBuffer != null) {
+                    // スキャン帯だけを切り出したら、元のバッファは検出を待たずにすぐ供給元に戻します。
+                    crop.copy(data.array(), cropBuffer.array());
+                    source.releaseFrame(data);
+                    data = null;
+                    image = cropBuffer;
+                    imageWidth = crop.getWidth();
+                    imageHeight = crop.getHeight();
+                } else {
+                    image = data;
+                    imageWidth = source.getWidth();
+                    imageHeight = source.getHeight();
+                }
+
+                // 品質ゲートを先に判定し、ピンぼけしたフレームが変化判定の基準にならないようにします。
+                if ((mFrameQualityGate != null)
+                        && !mFrameQualityGate.shouldProcess(image.array(), imageWidth, imageHeight)) {
+                    recycleBuffers(source, data, cropBuffer);
+                    mSequencer.skip(ticket);
+                    mFrameStatistics.onSkipped();
+                    continue;
+                }
+
+                if ((mFrameChangeGate != null)
+                        && !mFrameChangeGate.shouldProcess(image.array(), imageWidth, imageHeight)) {
+                    // 前回検出したフレームから変化がないため、検出器は呼び出しません。
+                    recycleBuffers(source, data, cropBuffer);
+                    mSequencer.skip(ticket);
+                    mFrameStatistics.onSkipped();
+                    continue;
+                }
+
+                if (mFrameRecorder != null) {
+                    mFrameRecorder.record(image.array(), frameId, timestampMillis);
+                }
+
+                if (preprocessImage != null) {
+                    // 前処理は検出に渡すバッファをその場で書き換えます。縮小した場合はサイズが変わります。
+                    preprocessImage.set(image.array(), imageWidth, imageHeight);
+                    mPreprocessorChain.process(preprocessImage);
+                    imageWidth = preprocessImage.getWidth();
+                    imageHeight = preprocessImage.getHeight();
+                }
+
+                Frame outputFrame = new Frame.Builder()
+                        .setImageData(image, imageWidth, imageHeight, ImageFormat.NV21)
+                        .setId(frameId)
+                        .setTimestampMillis(timestampMillis)
+                        .setRotation(source.getRotation())
+                        .build();
+
+                if (mProcessor == null) {
+                    // 検出器に設定されたプロセッサを使う場合、ワーカーは1つだけなので順番はすぐに得られます。
+                    if (mSequencer.acquire(ticket)) {
+                        long detectStartMillis = SystemClock.elapsedRealtime();
+                        if (tracker != null) {
+                            tracker.mark(frameId, PipelineLatencyTracker.STAGE_DETECT_START);
+                        }
+                        mFrameStatistics.onProcessed();
+                        try {
+                            detector.receiveFrame(outputFrame);
+                        } catch (Throwable t) {
+                            Log.e(TAG, "Exception thrown from receiver.", t);
+                            mFrameStatistics.onDetectorError();
+                        } finally {
+                            mSequencer.release(ticket);
+                        }
+                        // 検出の終了はプロセッサが検出結果を受け取った時に記録します。
+                        // 記録しないプロセッサの場合だけ、ここでの記録が使われ、プロセッサの処理時間も含まれます。
+                        if (tracker != null) {
+                            tracker.mark(frameId, PipelineLatencyTracker.STAGE_DETECT_END);
+                        }
+                        onFrameProcessed(detectStartMillis);
+                    } else {
+                        // より新しいフレームが先に配信されたため、検出せずに読み飛ばします。
+                        mFrameStatistics.onSkipped();
+                    }
+                    recycleBuffers(source, data, cropBuffer);
+                    continue;
+                }
+
+                SparseArray<?> detectedItems = null;
+                long detectStartMillis = SystemClock.elapsedRealtime();
+                if (tracker != null) {
+                    tracker.mark(frameId, PipelineLatencyTracker.STAGE_DETECT_START);
+                }
+                mFrameStatistics.onProcessed();
                 try {
-                    mDetector.receiveFrame(outputFrame);
+                    detectedItems = detector.detect(outputFrame);
                 } catch (Throwable t) {
-                    Log.e(TAG, "Exception thrown from receiver.", t);
+                    Log.e(TAG, "Exception thrown from detector.", t);
+                    mFrameStatistics.onDetectorError();
                 } finally {
-                    mCamera.addCallbackBuffer(data.array());
+                    if (tracker != null) {
+                        tracker.mark(frameId, PipelineLatencyTracker.STAGE_DETECT_END);
+                    }
+                    // 検出結果はフレームデータを参照しないため、配信の順番を待つ前にバッファを戻します。
+                    recycleBuffers(source, data, cropBuffer);
+                }
+                onFrameProcessed(detectStartMillis);
+
+                // 検出に失敗した場合でも、後続のフレームが待たされないように順番は消費します。
+                if (mSequencer.acquire(ticket)) {
+                    try {
+                        if (detectedItems != null) {
+                            deliverDetections(detectedItems, outputFrame.getMetadata(), detector);
+                        }
+                    } catch (Throwable t) {
+                        Log.e(TAG, "Exception thrown from processor.", t);
+                        mFrameStatistics.onDetectorError();
+                    } finally {
+                        mSequencer.release(ticket);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 1フレームの検出にかかった時間をフレームレートの調整に反映します。
+         */
+        private void onFrameProcessed(long detectStartMillis) {
+            if (mFrameRateController != null) {
+                mFrameRateController.onFrameProcessed(
+                        SystemClock.elapsedRealtime() - detectStartMillis);
+            }
+        }
+
+        /**
+         * 検出に使用したフレームバッファを供給元に、切り出し用バッファをプールに戻します。どちらもnullの場合があります。
+         */
+        private void recycleBuffers(FrameSource source, ByteBuffer data, ByteBuffer cropBuffer) {
+            if (data != null) {
+                source.releaseFrame(data);
+            }
+            if (cropBuffer != null) {
+                synchronized (mLock) {
+                    mCropBuffers[mFreeCropBuffers++] = cropBuffer;
                 }
             }
         }
+
+        /**
+         * 検出結果をプロセッサに渡します。{@link FrameSequencer}の配信の順番を得たスレッドからのみ呼び出されます。
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void deliverDetections(SparseArray<?> detectedItems, Frame.Metadata metadata, Detector<?> detector) {
+            Detector.Processor processor = mProcessor;
+            processor.receiveDetections(new Detector.Detections(
+                    detectedItems, metadata, detector.isOperational()));
+        }
     }
 }
@@ -37,6 +37,7 @@ public class CameraSourcePreview extends ViewGroup {
     private boolean mStartRequested;
     private boolean mSurfaceAvailable;
     private CameraSource mCameraSource;
+    private CameraSource.StartCallback mStartCallback;
 
     private GraphicOverlay mOverlay;
 
@@ -71,35 +72,76 @@ public class CameraSourcePreview extends ViewGroup {
         start(cameraSource);
     }
 
+    /**
+     * カメラのプレビューが開始されたとき、または開始できなかったときに通知するコールバックを設定します。
+     * プレビューの表示までの時間の計測に使用します。
+     */
+    public void setStartCallback(CameraSource.StartCallback callback) {
+        mStartCallback = callback;
+    }
+
+    /**
+     * カメラソースの停止を要求します。処理中のフレームの完了とカメラの解放はバックグラウンドで行われ、UIスレッドは待ちません。
+     */
     public void stop() {
         if (mCameraSource != null) {
-            mCameraSource.stop();
+            mCameraSource.stopAsync(null);
         }
     }
 
+    /**
+     * カメラソースの解放を要求します。解放はバックグラウンドで行われ、UIスレッドは待ちません。
+     */
     public void release() {
         if (mCameraSource != null) {
-            mCameraSource.release();
+            mCameraSource.releaseAsync(null);
             mCameraSource = null;
         }
     }
 
+    /**
+     * サーフェスが利用可能であれば、カメラソースをバックグラウンドで開始します。
+     * カメラを開く間もUIスレッドは描画を続け、開始が完了するとオーバーレイにプレビューのサイズを設定します。
+     */
     @RequiresPermission(Manifest.permission.CAMERA)
-    private void startIfReady() throws IOException, SecurityException {
+    private void startIfReady() throws SecurityException {
         if (mStartRequested && mSurfaceAvailable) {
-            mCameraSource.start(mSurfaceView.getHolder());
-            if (mOverlay != null) {
-                Size size = mCameraSource.getPreviewSize();
-                int min = Math.min(size.getWidth(), size.getHeight());
-                int max = Math.max(size.getWidth(), size.getHeight());
-                if (isPortraitMode()) {
-                    // 肖像画の場合、90度回転するので幅と高さのサイズを入れ替えます
-                    mOverlay.setCameraInfo(min, max, mCameraSource.getCameraFacing());
-                } else {
-                    mOverlay.setCameraInfo(max, min, mCameraSource.getCameraFacing());
+            final CameraSource cameraSource = mCameraSource;
+            cameraSource.startAsync(mSurfaceView.getHolder(), new CameraSource.StartCallback() {
+                @Override
+                public void onStarted(long elapsedMillis) {
+                    Log.i(TAG, "Camera source started in " + elapsedMillis + " ms");
+                    if (cameraSource != mCameraSource) {
+                        // 開始を待つ間に別のカメラソースに切り替えられました。
+                        return;
+                    }
+                    if (mOverlay != null) {
+                        Size size = cameraSource.getPreviewSize();
+                        int min = Math.min(size.getWidth(), size.getHeight());
+                        int max = Math.max(size.getWidth(), size.getHeight());
+                        if (isPortraitMode()) {
+                            // 肖像画の場合、90度回転するので幅と高さのサイズを入れ替えます
+                            mOverlay.setCameraInfo(min, max, cameraSource.getCameraFacing());
+                        } else {
+                            mOverlay.setCameraInfo(max, min, cameraSource.getCameraFacing());
+                        }
+                        mOverlay.clear();
+                    }
+                    // プレビューのサイズが決まったので、アスペクト比に合わせて配置し直します。
+                    requestLayout();
+                    if (mStartCallback != null) {
+                        mStartCallback.onStarted(elapsedMillis);
+                    }
                 }
-                mOverlay.clear();
-            }
+
+                @Override
+                public void onStartFailed(Exception e) {
+                    Log.e(TAG, "Could not start camera source.", e);
+                    if (mStartCallback != null) {
+                        mStartCallback.onStartFailed(e);
+                    }
+                }
+            });
             mStartRequested = false;
         }
     }
@@ -112,8 +154,6 @@ public class CameraSourcePreview extends ViewGroup {
                 startIfReady();
             } catch (SecurityException se) {
                 Log.e(TAG,"Do not have permission to start the camera", se);
-            } catch (IOException e) {
-                Log.e(TAG, "Could not start camera source.", e);
             }
         }
 
@@ -180,8 +220,6 @@ public class CameraSourcePreview extends ViewGroup {
             startIfReady();
         } catch (SecurityException se) {
             Log.e(TAG,"Do not have permission to start the camera", se);
-        } catch (IOException e) {
-            Log.e(TAG, "Could not start camera source.", e);
         }
     }
 
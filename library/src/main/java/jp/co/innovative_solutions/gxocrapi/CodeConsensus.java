@@ -0,0 +1,339 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 直近のフレームで読み取ったコードを1文字ずつ投票し、結果が一致したコードだけを報告する投票箱。
+ * <p>
+ * 読み取ったコードは、同じコードを読んだと考えられる候補ごとの投票表に、位置ごとの文字の票として加えます。
+ * 保持している票のうち、同じ書式で異なる文字の数（ハミング距離）が最も小さく、{@link #maxMisreads(int)}以下の票の候補に加え、
+ * そのような票がなければ新しい候補にします。候補は{@link #MAX_CANDIDATES}個までで、足りない場合は最後の票が最も古い候補を取り消します。
+ * 異なるコードを交互に読み取っても、それぞれ別の候補の票になるため、実際には読み取っていないコードが組み合わされることはありません。
+ * <p>
+ * 候補の全ての位置で、最も票の多い文字が他の文字より多く、{@code requiredVotes}票以上あり、
+ * その書式の票の{@code minAgreement}以上を占める場合に、それらの文字を並べたコードを報告します。
+ * 1文字だけを読み違えたフレームがあっても、同じ候補の他のフレームの票で正しい文字が選ばれます。
+ * <p>
+ * 票は直近の{@code windowFrames}フレーム分だけを保持し、古いフレームの票は取り消します。
+ * 報告したコードの書式と修正した文字の数は、そのコードの票から求め、{@link #getReportedFormat()}と{@link #getReportedCost()}で返します。
+ * 候補の表とフレームの履歴は使い回し、投票では候補の長さが変わる場合とコードを報告する場合を除いてヒープの割り当てを行いません。
+ */
+public final class CodeConsensus {
+    private static final int ASCII_SIZE = 128;
+    /** 同時に投票を受け付ける候補の数 */
+    static final int MAX_CANDIDATES = 4;
+
+    private final int mRequiredVotes;
+    private final float mMinAgreement;
+    private final int mWindowFrames;
+
+    // このオブジェクト自身のロックで、以下のメンバ変数すべてを保護します。
+    // 候補ごとの、位置と文字ごとの票の数。候補の長さが変わった場合は作り直します。
+    private final int[][][] mVotes = new int[MAX_CANDIDATES][][];
+    private final int[] mCandidateVotes = new int[MAX_CANDIDATES];
+    private final long[] mCandidateFrames = new long[MAX_CANDIDATES];
+    private final int[] mFormatVotes = new int[CodeGrammar.MAX_POSITIONS];
+    // 票を取り消すための、直近の投票の履歴（リングバッファ）。候補を取り消した票の候補は-1です。
+    private final long[] mHistoryFrames;
+    private final int[] mHistoryFormats;
+    private final int[] mHistoryCandidates;
+    private final char[][] mHistoryCodes;
+    private final int[] mHistoryLengths;
+    private final int[] mHistoryCosts;
+    private int mHistoryStart;
+    private int mHistoryCount;
+    private final char[] mResult = new char[CodeGrammar.MAX_POSITIONS];
+    private long mFrame;
+    private long mReportCount;
+    private int mReportedFormat = -1;
+    private int mReportedCost;
+
+    /**
+     * @param requiredVotes コードを報告するために各位置の文字に必要な票の数。1の場合は最初に読み取ったコードをそのまま報告します
+     * @param minAgreement  各位置で最も多い文字がその書式の票に占める割合の下限（0〜1）
+     * @param windowFrames  票を保持するフレームの数。requiredVotes以上
+     */
+    CodeConsensus(int requiredVotes, float minAgreement, int windowFrames) {
+        if ((requiredVotes <= 0) || (minAgreement < 0) || (minAgreement > 1) || (windowFrames < requiredVotes)) {
+            throw new IllegalArgumentException("Invalid consensus: " + requiredVotes + ", " + minAgreement
+                    + ", " + windowFrames);
+        }
+        mRequiredVotes = requiredVotes;
+        mMinAgreement = minAgreement;
+        mWindowFrames = windowFrames;
+        mHistoryFrames = new long[windowFrames];
+        mHistoryFormats = new int[windowFrames];
+        mHistoryCandidates = new int[windowFrames];
+        mHistoryCodes = new char[windowFrames][CodeGrammar.MAX_POSITIONS];
+        mHistoryLengths = new int[windowFrames];
+        mHistoryCosts = new int[windowFrames];
+    }
+
+    /**
+     * 同じコードの読み違いとみなす、異なる文字の数の上限を返します。長さの4分の1で、少なくとも1文字です。
+     */
+    static int maxMisreads(int length) {
+        return Math.max(1, length / 4);
+    }
+
+    /**
+     * 全ての票を取り消します。
+     */
+    synchronized void reset() {
+        while (mHistoryCount > 0) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * 新しいフレームの処理を始めます。コードが読み取れたかどうかに関わらず、フレームごとに1回呼び出してください。
+     * 保持するフレームの数より古い票は取り消されます。
+     */
+    synchronized void onFrame() {
+        mFrame++;
+        while ((mHistoryCount > 0) && (mHistoryFrames[mHistoryStart] <= mFrame - mWindowFrames)) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * 現在のフレームで、書式にそのまま一致したコードを投票します。
+     *
+     * @see #vote(int, CharSequence, int)
+     */
+    synchronized String vote(int format, CharSequence code) {
+        return vote(format, code, 0);
+    }
+
+    /**
+     * 現在のフレームで読み取ったコードを投票します。
+     *
+     * @param format 一致した書式の{@link CodeGrammar}での順番
+     * @param code   読み取ったコード
+     * @param cost   コードを得るために{@link CodeCorrector}で直した文字の数。そのまま一致した場合は0
+     * @return 結果が一致したコード。まだ一致していない場合はnull。報告した場合、全ての票は取り消されます
+     */
+    synchronized String vote(int format, CharSequence code, int cost) {
+        int length = code.length();
+        if ((format < 0) || (format >= mFormatVotes.length) || (length == 0)
+                || (length > CodeGrammar.MAX_POSITIONS) || (cost < 0)) {
+            throw new IllegalArgumentException("Invalid code for format " + format + ": " + code + ", " + cost);
+        }
+        for (int i = 0; i < length; ++i) {
+            if (code.charAt(i) >= ASCII_SIZE) {
+                // 文法はASCII文字だけを受け付けるため、ここには来ません。
+                throw new IllegalArgumentException("Non-ASCII code: " + code);
+            }
+        }
+
+        if (mHistoryCount == mWindowFrames) {
+            removeOldest();
+        }
+        int candidate = findCandidate(format, code);
+        if (candidate < 0) {
+            candidate = takeCandidate(length);
+        }
+        int[][] votes = mVotes[candidate];
+        int slot = (mHistoryStart + mHistoryCount) % mWindowFrames;
+        mHistoryFrames[slot] = mFrame;
+        mHistoryFormats[slot] = format;
+        mHistoryCandidates[slot] = candidate;
+        mHistoryLengths[slot] = length;
+        mHistoryCosts[slot] = cost;
+        char[] history = mHistoryCodes[slot];
+        for (int i = 0; i < length; ++i) {
+            char c = code.charAt(i);
+            history[i] = c;
+            votes[i][c]++;
+        }
+        mCandidateVotes[candidate]++;
+        mCandidateFrames[candidate] = mFrame;
+        mFormatVotes[format]++;
+        mHistoryCount++;
+
+        // 浮動小数点の誤差で票の数が1つ多く必要にならないように、わずかに小さくしてから切り上げます。
+        int required = Math.max(mRequiredVotes, (int) Math.ceil(mMinAgreement * mFormatVotes[format] - 1e-4));
+        for (int i = 0; i < length; ++i) {
+            int[] positionVotes = votes[i];
+            int best = 0;
+            int second = 0;
+            for (int c = 1; c < ASCII_SIZE; ++c) {
+                if (positionVotes[c] > positionVotes[best]) {
+                    second = positionVotes[best];
+                    best = c;
+                } else if (positionVotes[c] > second) {
+                    second = positionVotes[c];
+                }
+            }
+            // 同じ数の票の文字がある位置は、どちらを選んでも他の位置と同じフレームの文字とは限らないため、報告しません。
+            if ((positionVotes[best] < required) || (positionVotes[best] == second)) {
+                return null;
+            }
+            mResult[i] = (char) best;
+        }
+        mReportCount++;
+        mReportedFormat = format;
+        mReportedCost = reportedCost(candidate, length);
+        reset();
+        return new String(mResult, 0, length);
+    }
+
+    /**
+     * 保持している書式の票の数を返します。
+     */
+    synchronized int getVoteCount(int format) {
+        return mFormatVotes[format];
+    }
+
+    /**
+     * 票を保持している候補の数を返します。
+     */
+    synchronized int getCandidateCount() {
+        int count = 0;
+        for (int candidate = 0; candidate < MAX_CANDIDATES; ++candidate) {
+            if (mCandidateVotes[candidate] > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 最後に報告したコードの書式の{@link CodeGrammar}での順番を返します。まだ報告していない場合は-1です。
+     */
+    synchronized int getReportedFormat() {
+        return mReportedFormat;
+    }
+
+    /**
+     * 最後に報告したコードを得るために直した文字の数を返します。
+     * そのコードを読み取った票のうち最も少ない数です。どのフレームもそのコードを丸ごとは読み取っておらず、
+     * 同じ候補の複数のフレームの票を組み合わせた場合は、その候補の票のうち最も少ない数です。
+     */
+    synchronized int getReportedCost() {
+        return mReportedCost;
+    }
+
+    /**
+     * これまでに報告したコードの数を返します。
+     */
+    synchronized long getReportCount() {
+        return mReportCount;
+    }
+
+    /**
+     * 保持している票のうち、同じ書式でハミング距離が最も小さく、読み違いの上限以下の票の候補を返します。ない場合は-1です。
+     */
+    private int findCandidate(int format, CharSequence code) {
+        int length = code.length();
+        int nearest = -1;
+        int nearestDistance = maxMisreads(length) + 1;
+        for (int k = 0; k < mHistoryCount; ++k) {
+            int slot = (mHistoryStart + k) % mWindowFrames;
+            if ((mHistoryCandidates[slot] < 0) || (mHistoryFormats[slot] != format)
+                    || (mHistoryLengths[slot] != length)) {
+                continue;
+            }
+            char[] history = mHistoryCodes[slot];
+            int distance = 0;
+            for (int i = 0; (i < length) && (distance < nearestDistance); ++i) {
+                if (history[i] != code.charAt(i)) {
+                    distance++;
+                }
+            }
+            if (distance < nearestDistance) {
+                nearest = mHistoryCandidates[slot];
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * 新しい候補の表を用意します。空いている候補がなければ、最後の票が最も古い候補の票を取り消して使います。
+     */
+    private int takeCandidate(int length) {
+        int candidate = 0;
+        for (int c = 0; c < MAX_CANDIDATES; ++c) {
+            if (mCandidateVotes[c] == 0) {
+                candidate = c;
+                break;
+            }
+            if (mCandidateFrames[c] < mCandidateFrames[candidate]) {
+                candidate = c;
+            }
+        }
+        if (mCandidateVotes[candidate] > 0) {
+            evict(candidate);
+        }
+        int[][] votes = mVotes[candidate];
+        if ((votes == null) || (votes.length != length)) {
+            // 票が残っていない表は全て0のため、同じ長さであればそのまま使えます。
+            mVotes[candidate] = new int[length][ASCII_SIZE];
+        }
+        return candidate;
+    }
+
+    /**
+     * 候補の票を全て取り消します。履歴の項目は、古い順に取り除かれるまで候補なしとして残します。
+     */
+    private void evict(int candidate) {
+        for (int k = 0; k < mHistoryCount; ++k) {
+            int slot = (mHistoryStart + k) % mWindowFrames;
+            if (mHistoryCandidates[slot] == candidate) {
+                removeVotes(slot);
+            }
+        }
+    }
+
+    /**
+     * mResultに並べたコードの、修正した文字の数を候補の票から求めます。
+     */
+    private int reportedCost(int candidate, int length) {
+        int exactCost = Integer.MAX_VALUE;
+        int anyCost = Integer.MAX_VALUE;
+        for (int k = 0; k < mHistoryCount; ++k) {
+            int slot = (mHistoryStart + k) % mWindowFrames;
+            if (mHistoryCandidates[slot] != candidate) {
+                continue;
+            }
+            int cost = mHistoryCosts[slot];
+            anyCost = Math.min(anyCost, cost);
+            if ((cost < exactCost) && sameCode(mHistoryCodes[slot], length)) {
+                exactCost = cost;
+            }
+        }
+        return (exactCost != Integer.MAX_VALUE) ? exactCost : anyCost;
+    }
+
+    private boolean sameCode(char[] code, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (code[i] != mResult[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void removeOldest() {
+        int slot = mHistoryStart;
+        if (mHistoryCandidates[slot] >= 0) {
+            removeVotes(slot);
+        }
+        mHistoryStart = (mHistoryStart + 1) % mWindowFrames;
+        mHistoryCount--;
+    }
+
+    /**
+     * 履歴の項目の票を候補の表から取り消し、項目を候補なしにします。
+     */
+    private void removeVotes(int slot) {
+        int candidate = mHistoryCandidates[slot];
+        int[][] votes = mVotes[candidate];
+        char[] history = mHistoryCodes[slot];
+        for (int i = 0; i < mHistoryLengths[slot]; ++i) {
+            votes[i][history[i]]--;
+        }
+        mCandidateVotes[candidate]--;
+        mFormatVotes[mHistoryFormats[slot]]--;
+        mHistoryCandidates[slot] = -1;
+    }
+}
@@ -0,0 +1,186 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * OCRで取り違えやすい文字を書式の位置の文字種に合わせて直し、コードを探すマッチャー。
+ * <p>
+ * 書式は位置ごとに英字か数字かが決まっているため、数字の位置の{@code O}は{@code 0}、英字の位置の{@code 8}は{@code B}のように、
+ * 取り違えを予測して直すことができます。候補の途中に入った空白とハイフンは読み飛ばします。
+ * 置き換えた文字と読み飛ばした文字の数をそれぞれコスト1として数え、コストが上限以下の一致のうち、
+ * コストが最も小さいもの、同じ場合は最も左から始まるもの、さらに同じ場合は先に指定した書式のものを選びます。
+ * <p>
+ * {@link CodePatternMatcher}で一致が見つからなかった場合にだけ使うことを想定しています。
+ * 処理は入力の長さ×書式の長さの合計に比例し、ヒープの割り当ては{@link #group()}の呼び出し時だけです。
+ * 1つのインスタンスを使い回せますが、スレッドセーフではありません。
+ */
+final class CodeCorrector {
+    // 取り違えやすい文字と、その代わりに試す文字の組。数字の位置では英字や記号を数字に、英字の位置では数字を英字に直します。
+    private static final String CONFUSIONS = "O0o0D0Q0I1i1l1|1S5s5B8Z2z2G60O1I|I2Z5S8B6G7T";
+
+    private final CodeGrammar mGrammar;
+    private final int mMaxCost;
+
+    private final char[] mWork;
+    private final char[] mBest;
+    private int mBestLength;
+    private int mStart = -1;
+    private int mEnd;
+    private int mFormat;
+    private int mCost;
+
+    /**
+     * @param maxCost 許容する置き換えと読み飛ばしの合計。1以上
+     */
+    CodeCorrector(CodeGrammar grammar, int maxCost) {
+        if (maxCost <= 0) {
+            throw new IllegalArgumentException("Invalid correction cost: " + maxCost);
+        }
+        mGrammar = grammar;
+        mMaxCost = maxCost;
+        mWork = new char[grammar.getMaxLength()];
+        mBest = new char[grammar.getMaxLength()];
+    }
+
+    CodeGrammar getGrammar() {
+        return mGrammar;
+    }
+
+    int getMaxCost() {
+        return mMaxCost;
+    }
+
+    /**
+     * 入力から、直してコードになる部分を探します。
+     *
+     * @return 見つかった場合はtrue
+     */
+    boolean find(CharSequence input) {
+        mStart = -1;
+        int bestCost = mMaxCost + 1;
+        for (int start = 0; start < input.length(); ++start) {
+            if (isSeparator(input.charAt(start))) {
+                continue;
+            }
+            for (int format = 0; format < mGrammar.getFormatCount(); ++format) {
+                int end = correct(input, start, format, bestCost - 1);
+                if (end < 0) {
+                    continue;
+                }
+                // 左から順に調べるため、同じコストの一致は先に見つかったものが優先されます。
+                int cost = mCost;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    mStart = start;
+                    mEnd = end;
+                    mFormat = format;
+                    mBestLength = mGrammar.getLength(format);
+                    System.arraycopy(mWork, 0, mBest, 0, mBestLength);
+                    if (cost == 0) {
+                        mCost = 0;
+                        return true;
+                    }
+                }
+            }
+        }
+        mCost = bestCost;
+        return mStart >= 0;
+    }
+
+    /**
+     * 直前の{@link #find(CharSequence)}で見つかった部分の、入力での開始位置を返します。
+     */
+    int start() {
+        checkMatch();
+        return mStart;
+    }
+
+    /**
+     * 見つかった部分の、入力での終了位置を返します。読み飛ばした文字を含むため、書式の長さより長い場合があります。
+     */
+    int end() {
+        checkMatch();
+        return mEnd;
+    }
+
+    /**
+     * 一致した書式の、{@link CodeGrammar}での順番を返します。
+     */
+    int format() {
+        checkMatch();
+        return mFormat;
+    }
+
+    /**
+     * 置き換えた文字と読み飛ばした文字の数を返します。
+     */
+    int cost() {
+        checkMatch();
+        return mCost;
+    }
+
+    /**
+     * 直したコードを返します。文字列はこの呼び出しで作成されます。
+     */
+    String group() {
+        checkMatch();
+        return new String(mBest, 0, mBestLength);
+    }
+
+    /**
+     * 入力のstartから書式に合わせて文字を直し、mWorkに書き込みます。
+     *
+     * @return 入力での終了位置。コストがmaxCostを超える場合は-1
+     */
+    private int correct(CharSequence input, int start, int format, int maxCost) {
+        int length = mGrammar.getLength(format);
+        int cost = 0;
+        int index = start;
+        for (int position = 0; position < length; ++index) {
+            if (index >= input.length()) {
+                return -1;
+            }
+            char c = input.charAt(index);
+            if (mGrammar.accepts(format, position, c)) {
+                mWork[position++] = c;
+                continue;
+            }
+            if (isSeparator(c)) {
+                // 書式の文字でない空白とハイフンは読み飛ばします。
+                cost++;
+            } else {
+                char replacement = replacementFor(format, position, c);
+                if (replacement == 0) {
+                    return -1;
+                }
+                mWork[position++] = replacement;
+                cost++;
+            }
+            if (cost > maxCost) {
+                return -1;
+            }
+        }
+        mCost = cost;
+        return index;
+    }
+
+    private char replacementFor(int format, int position, char c) {
+        for (int i = 0; i < CONFUSIONS.length(); i += 2) {
+            if (CONFUSIONS.charAt(i) == c) {
+                char replacement = CONFUSIONS.charAt(i + 1);
+                if (mGrammar.accepts(format, position, replacement)) {
+                    return replacement;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isSeparator(char c) {
+        return (c == ' ') || (c == '-');
+    }
+
+    private void checkMatch() {
+        if (mStart < 0) {
+            throw new IllegalStateException("No match available");
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.util.Arrays;
+
+/**
+ * 読み取るコードの書式をまとめてコンパイルした文法。
+ * <p>
+ * 書式は1文字ごとの文字種を並べた文字列で指定します。
+ * <ul>
+ * <li>{@code A}: 英字（[a-zA-Z]）</li>
+ * <li>{@code N}: 数字（[0-9]）</li>
+ * <li>{@code X}: 英字または数字（[a-zA-Z0-9]）</li>
+ * <li>{@code (}と{@code )}: キャプチャグループ（入れ子にはできません）</li>
+ * <li>{@code \}の後の文字、またはその他のASCII文字: その文字自体</li>
+ * </ul>
+ * 例えば、10文字のコードは{@value #DEFAULT_FORMAT}、英字2文字とハイフンと数字5桁の地域のコードは{@code "AA-NNNNN"}です。
+ * <p>
+ * 全ての書式の位置を1つの64ビットの状態にまとめ、文字ごとに一致している位置の集合を表に従って更新する決定的なオートマトンにします。
+ * 書式を増やしても1文字あたりの処理は表の参照とシフトの1回ずつで変わりません。書式の位置の合計は{@link #MAX_POSITIONS}までです。
+ * コンパイルした文法は変更できず、複数のスレッドから共有できます。
+ */
+public final class CodeGrammar {
+    /**
+     * README のコード。Alphabet x 3 + Numeric x 2 + (Alphabet or Numeric) x 1 + Numeric x 3 + Alphabet x 1
+     */
+    public static final String DEFAULT_FORMAT = "(AAA)(NN)(X)(NNN)(A)";
+
+    /** 全ての書式の位置の合計の上限 */
+    public static final int MAX_POSITIONS = 64;
+
+    /** {@link #DEFAULT_FORMAT}だけの文法 */
+    public static final CodeGrammar DEFAULT = compile(DEFAULT_FORMAT);
+
+    private static final int ASCII_SIZE = 128;
+
+    private final String[] mFormats;
+    private final int[] mLengths;
+    private final int[] mFirstBits;
+    private final int[][] mGroupStarts;
+    private final int[][] mGroupEnds;
+    private final int mMinLength;
+    private final int mMaxLength;
+
+    // 文字ごとの、その文字を受け付ける位置のビット。ASCII以外の文字はどの位置も受け付けません。
+    final long[] mTable = new long[ASCII_SIZE];
+    // 各書式の先頭と末尾の位置のビット
+    final long mStartMask;
+    final long mEndMask;
+    // 末尾の位置のビットから書式の番号を引く表
+    final int[] mFormatAtBit = new int[MAX_POSITIONS];
+
+    private CodeGrammar(String[] formats) {
+        if (formats.length == 0) {
+            throw new IllegalArgumentException("No code formats supplied.");
+        }
+        mFormats = formats.clone();
+        mLengths = new int[formats.length];
+        mFirstBits = new int[formats.length];
+        mGroupStarts = new int[formats.length][];
+        mGroupEnds = new int[formats.length][];
+
+        int[] groupStarts = new int[MAX_POSITIONS];
+        int[] groupEnds = new int[MAX_POSITIONS];
+        long startMask = 0;
+        long endMask = 0;
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        int bit = 0;
+        for (int f = 0; f < formats.length; ++f) {
+            String format = formats[f];
+            mFirstBits[f] = bit;
+            int length = 0;
+            int groupCount = 0;
+            int groupStart = -1;
+            for (int i = 0; i < format.length(); ++i) {
+                char c = format.charAt(i);
+                if (c == '(') {
+                    if (groupStart >= 0) {
+                        throw new IllegalArgumentException("Nested group in code format: " + format);
+                    }
+                    groupStart = length;
+                    continue;
+                }
+                if (c == ')') {
+                    if ((groupStart < 0) || (groupStart == length)) {
+                        throw new IllegalArgumentException("Invalid group in code format: " + format);
+                    }
+                    groupStarts[groupCount] = groupStart;
+                    groupEnds[groupCount] = length;
+                    groupCount++;
+                    groupStart = -1;
+                    continue;
+                }
+                if (bit >= MAX_POSITIONS) {
+                    throw new IllegalArgumentException("Code formats are longer than " + MAX_POSITIONS + " characters.");
+                }
+                long position = 1L << bit;
+                if (c == 'A') {
+                    addRange(position, 'a', 'z');
+                    addRange(position, 'A', 'Z');
+                } else if (c == 'N') {
+                    addRange(position, '0', '9');
+                } else if (c == 'X') {
+                    addRange(position, 'a', 'z');
+                    addRange(position, 'A', 'Z');
+                    addRange(position, '0', '9');
+                } else {
+                    if (c == '\\') {
+                        if (++i == format.length()) {
+                            throw new IllegalArgumentException("Trailing escape in code format: " + format);
+                        }
+                        c = format.charAt(i);
+                    }
+                    if (c >= ASCII_SIZE) {
+                        throw new IllegalArgumentException("Non-ASCII character in code format: " + format);
+                    }
+                    mTable[c] |= position;
+                }
+                if (length == 0) {
+                    startMask |= position;
+                }
+                length++;
+                bit++;
+            }
+            if ((length == 0) || (groupStart >= 0)) {
+                throw new IllegalArgumentException("Invalid code format: \"" + format + "\"");
+            }
+            endMask |= 1L << (bit - 1);
+            mFormatAtBit[bit - 1] = f;
+            mLengths[f] = length;
+            mGroupStarts[f] = Arrays.copyOf(groupStarts, groupCount);
+            mGroupEnds[f] = Arrays.copyOf(groupEnds, groupCount);
+            minLength = Math.min(minLength, length);
+            maxLength = Math.max(maxLength, length);
+        }
+        mStartMask = startMask;
+        mEndMask = endMask;
+        mMinLength = minLength;
+        mMaxLength = maxLength;
+    }
+
+    /**
+     * 書式をコンパイルします。複数の書式が同じ位置から一致する場合は、先に指定した書式が優先されます。
+     *
+     * @throws IllegalArgumentException 書式が正しくないか、位置の合計が{@link #MAX_POSITIONS}を超える場合
+     */
+    public static CodeGrammar compile(String... formats) {
+        return new CodeGrammar(formats);
+    }
+
+    public int getFormatCount() {
+        return mFormats.length;
+    }
+
+    /**
+     * 指定した順番の書式の文字列を返します。
+     */
+    public String getFormat(int index) {
+        return mFormats[index];
+    }
+
+    /**
+     * 書式に一致する文字列の長さを返します。
+     */
+    public int getLength(int index) {
+        return mLengths[index];
+    }
+
+    /**
+     * 書式のキャプチャグループの数を返します。
+     */
+    public int getGroupCount(int index) {
+        return mGroupStarts[index].length;
+    }
+
+    /**
+     * 最も短い書式の長さを返します。これより短い文字列は一致しません。
+     */
+    int getMinLength() {
+        return mMinLength;
+    }
+
+    /**
+     * 最も長い書式の長さを返します。
+     */
+    int getMaxLength() {
+        return mMaxLength;
+    }
+
+    /**
+     * 書式の位置positionの文字として、文字cを受け付けるかどうかを返します。
+     */
+    boolean accepts(int index, int position, char c) {
+        return (c < ASCII_SIZE) && ((mTable[c] & (1L << (mFirstBits[index] + position))) != 0);
+    }
+
+    /**
+     * 書式の一致の先頭からの、グループの開始位置を返します。groupは1から始まります。
+     */
+    int getGroupStart(int index, int group) {
+        return mGroupStarts[index][group - 1];
+    }
+
+    /**
+     * 書式の一致の先頭からの、グループの終了位置を返します。groupは1から始まります。
+     */
+    int getGroupEnd(int index, int group) {
+        return mGroupEnds[index][group - 1];
+    }
+
+    private void addRange(long position, char first, char last) {
+        for (char c = first; c <= last; ++c) {
+            mTable[c] |= position;
+        }
+    }
+}
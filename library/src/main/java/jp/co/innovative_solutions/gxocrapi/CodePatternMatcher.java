@@ -0,0 +1,179 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * {@link CodeGrammar}の書式のいずれかに一致するコードを探すマッチャー。
+ * <p>
+ * 書式をまとめた正規表現{@code (?:書式1|書式2|...)}の{@link java.util.regex.Matcher#find()}と同じ結果、
+ * つまり最も左から始まる一致を、同じ位置から複数の書式が一致する場合は先に指定した書式の一致を返します。
+ * 文字列を1回走査するだけで、ヒープの割り当ては行いません。
+ * 文法の表から入力の1文字ごとに「各書式の先頭何文字まで一致しているか」の集合を更新します（Shift-And法）。
+ * 最初の一致が見つかった後は、それより左から始まる長い書式の一致がないかを、最長の書式の長さの分だけ確かめます。
+ * <p>
+ * 1つのインスタンスを使い回せますが、スレッドセーフではありません。
+ */
+final class CodePatternMatcher {
+    private final CodeGrammar mGrammar;
+
+    private CharSequence mInput;
+    private int mStart = -1;
+    private int mFormat = -1;
+
+    /**
+     * {@link CodeGrammar#DEFAULT}の10文字のコードを探すマッチャーを作成します。
+     */
+    CodePatternMatcher() {
+        this(CodeGrammar.DEFAULT);
+    }
+
+    CodePatternMatcher(CodeGrammar grammar) {
+        mGrammar = grammar;
+    }
+
+    CodeGrammar getGrammar() {
+        return mGrammar;
+    }
+
+    /**
+     * 入力の先頭から一致を探します。
+     *
+     * @return 一致が見つかった場合はtrue
+     */
+    boolean find(CharSequence input) {
+        return find(input, 0);
+    }
+
+    /**
+     * 入力のfromの位置から一致を探します。
+     *
+     * @return 一致が見つかった場合はtrue
+     */
+    boolean find(CharSequence input, int from) {
+        if ((from < 0) || (from > input.length())) {
+            throw new IndexOutOfBoundsException("Invalid start: " + from);
+        }
+        CodeGrammar grammar = mGrammar;
+        long[] table = grammar.mTable;
+        long startMask = grammar.mStartMask;
+        long endMask = grammar.mEndMask;
+
+        mInput = input;
+        mStart = -1;
+        mFormat = -1;
+        long state = 0;
+        int limit = input.length();
+        for (int i = from; i < limit; ++i) {
+            char c = input.charAt(i);
+            state = ((state << 1) | startMask) & ((c < table.length) ? table[c] : 0);
+            long matched = state & endMask;
+            while (matched != 0) {
+                int format = grammar.mFormatAtBit[Long.numberOfTrailingZeros(matched)];
+                matched &= matched - 1;
+                int start = i - grammar.getLength(format) + 1;
+                if ((mStart < 0) || (start < mStart) || ((start == mStart) && (format < mFormat))) {
+                    mStart = start;
+                    mFormat = format;
+                }
+            }
+            if (mStart >= 0) {
+                // mStart以前から始まる一致は、mStart + 最長の書式の長さより前で終わります。
+                limit = Math.min(limit, mStart + grammar.getMaxLength());
+            }
+        }
+        return mStart >= 0;
+    }
+
+    /**
+     * 直前の{@link #find(CharSequence)}で一致が見つかったかどうかを返します。
+     */
+    boolean hasMatch() {
+        return mStart >= 0;
+    }
+
+    /**
+     * 一致の開始位置を返します。
+     */
+    int start() {
+        checkMatch();
+        return mStart;
+    }
+
+    /**
+     * 一致の終了位置（一致の最後の文字の次の位置）を返します。
+     */
+    int end() {
+        checkMatch();
+        return mStart + mGrammar.getLength(mFormat);
+    }
+
+    /**
+     * 一致した書式の、{@link CodeGrammar}での順番を返します。
+     */
+    int format() {
+        checkMatch();
+        return mFormat;
+    }
+
+    /**
+     * 一致した書式のキャプチャグループの数を返します。
+     */
+    int groupCount() {
+        checkMatch();
+        return mGrammar.getGroupCount(mFormat);
+    }
+
+    /**
+     * グループの開始位置を返します。0は一致全体、1以降は書式の括弧の順です。
+     */
+    int start(int group) {
+        checkGroup(group);
+        return (group == 0) ? mStart : mStart + mGrammar.getGroupStart(mFormat, group);
+    }
+
+    /**
+     * グループの終了位置を返します。
+     */
+    int end(int group) {
+        checkGroup(group);
+        return (group == 0) ? end() : mStart + mGrammar.getGroupEnd(mFormat, group);
+    }
+
+    /**
+     * 一致した文字列を返します。文字列はこの呼び出しで作成されます。
+     */
+    String group() {
+        return group(0);
+    }
+
+    /**
+     * グループの文字列を返します。文字列はこの呼び出しで作成されます。
+     */
+    String group(int group) {
+        return mInput.subSequence(start(group), end(group)).toString();
+    }
+
+    /**
+     * グループの文字を返します。文字列を作らずにフィールドを読むために使います。
+     *
+     * @param index グループの中の位置
+     */
+    char charAt(int group, int index) {
+        int start = start(group);
+        if ((index < 0) || (start + index >= end(group))) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + " in group " + group);
+        }
+        return mInput.charAt(start + index);
+    }
+
+    private void checkMatch() {
+        if (mStart < 0) {
+            throw new IllegalStateException("No match available");
+        }
+    }
+
+    private void checkGroup(int group) {
+        checkMatch();
+        if ((group < 0) || (group > mGrammar.getGroupCount(mFormat))) {
+            throw new IndexOutOfBoundsException("No group " + group);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 輝度の最小値と最大値が0から255に広がるように、輝度平面のコントラストを引き伸ばす前処理。
+ * 薄暗い場所や低コントラストのラベルの文字を検出しやすくします。色差は変更しません。
+ */
+public final class ContrastStretchPreprocessor implements FramePreprocessor {
+    private final int mMinRange;
+
+    /**
+     * @param minRange 引き伸ばしを行う最小の輝度の幅。幅がこれより狭い平坦な画像はノイズを強調しないようにそのままにします。
+     */
+    public ContrastStretchPreprocessor(int minRange) {
+        if ((minRange < 1) || (minRange > 255)) {
+            throw new IllegalArgumentException("Invalid contrast range: " + minRange);
+        }
+        mMinRange = minRange;
+    }
+
+    @Override
+    public void process(Image image) {
+        byte[] data = image.getData();
+        int size = image.getWidth() * image.getHeight();
+
+        int min = 255;
+        int max = 0;
+        for (int i = 0; i < size; ++i) {
+            int value = data[i] & 0xff;
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        int range = max - min;
+        if ((range < mMinRange) || (range == 255)) {
+            return;
+        }
+
+        // 16ビットの固定小数点で倍率を表し、画素ごとの除算を避けます。最大値が255になるように切り上げます。
+        int scale = ((255 << 16) + range - 1) / range;
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) ((((data[i] & 0xff) - min) * scale) >> 16);
+        }
+    }
+}
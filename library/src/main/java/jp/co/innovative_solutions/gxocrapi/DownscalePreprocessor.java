@@ -0,0 +1,61 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 画像を整数の比率で縮小し、グレースケールにする前処理。
+ * 輝度は比率×比率の画素の平均を取り、色差は無彩色で埋めます。文字が十分に大きい場合に検出の時間を短くします。
+ * 縮小した画像は同じバッファの先頭に書き込まれます。
+ */
+public final class DownscalePreprocessor implements FramePreprocessor {
+    // 無彩色を表す色差の値
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    private final int mFactor;
+
+    /**
+     * @param factor 縮小の比率（2以上）
+     */
+    public DownscalePreprocessor(int factor) {
+        if (factor < 2) {
+            throw new IllegalArgumentException("Invalid downscale factor: " + factor);
+        }
+        mFactor = factor;
+    }
+
+    @Override
+    public void process(Image image) {
+        int width = image.getWidth();
+        int factor = mFactor;
+        // NV21の色差は2×2画素ごとなので、縮小後のサイズは偶数にそろえます。
+        int outWidth = (width / factor) & ~1;
+        int outHeight = (image.getHeight() / factor) & ~1;
+        if ((outWidth == 0) || (outHeight == 0)) {
+            return;
+        }
+
+        byte[] data = image.getData();
+        int area = factor * factor;
+        // 書き込む位置は常に読み込む位置より前にあるため、先頭から順に処理すれば同じバッファで縮小できます。
+        for (int y = 0; y < outHeight; ++y) {
+            int srcRow = y * factor * width;
+            int dst = y * outWidth;
+            for (int x = 0; x < outWidth; ++x) {
+                int src = srcRow + x * factor;
+                int sum = 0;
+                for (int dy = 0; dy < factor; ++dy) {
+                    int row = src + dy * width;
+                    for (int dx = 0; dx < factor; ++dx) {
+                        sum += data[row + dx] & 0xff;
+                    }
+                }
+                data[dst + x] = (byte) (sum / area);
+            }
+        }
+
+        int lumaSize = outWidth * outHeight;
+        int end = lumaSize + lumaSize / 2;
+        for (int i = lumaSize; i < end; ++i) {
+            data[i] = NEUTRAL_CHROMA;
+        }
+        image.setSize(outWidth, outHeight);
+    }
+}
@@ -0,0 +1,125 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 前回検出器に渡したフレームからほとんど変化していないフレームを検出前に読み飛ばすためのゲート。
+ * NV21画像の輝度平面を格子状のブロックに分け、各ブロックから一定間隔で標本を取った平均値を署名とします。
+ * 直前に通過したフレームの署名との平均絶対差がしきい値未満であれば、そのフレームは読み飛ばされます。
+ * 静止したままのシーンでも認識を再試行できるように、連続して読み飛ばせるフレーム数には上限があります。
+ * 署名の計算にヒープの割り当ては行いません。
+ */
+public final class FrameChangeGate {
+    // 署名の格子の分割数と、各ブロックから取る標本の数（縦横それぞれ）
+    private static final int GRID = 16;
+    private static final int SAMPLES = 4;
+
+    private final float mThreshold;
+    private final int mMaxSkippedFrames;
+
+    // このオブジェクト自身のロックで、以下のメンバ変数すべてを保護します。
+    private int[] mSignature = new int[GRID * GRID];
+    private int[] mLastSignature = new int[GRID * GRID];
+    private boolean mHasLastSignature;
+    private int mConsecutiveSkips;
+    private long mPassedCount;
+    private long mSkippedCount;
+
+    /**
+     * @param threshold        通過に必要なブロック平均の平均絶対差（0〜255）
+     * @param maxSkippedFrames 連続して読み飛ばせるフレームの最大数
+     */
+    FrameChangeGate(float threshold, int maxSkippedFrames) {
+        if ((threshold < 0) || (maxSkippedFrames < 0)) {
+            throw new IllegalArgumentException(
+                    "Invalid frame change gate: " + threshold + ", " + maxSkippedFrames);
+        }
+        mThreshold = threshold;
+        mMaxSkippedFrames = maxSkippedFrames;
+    }
+
+    /**
+     * フレームを検出器に渡すべきかどうかを判定します。
+     * trueを返した場合、このフレームの署名が次回の比較の基準になります。
+     *
+     * @param nv21   NV21画像（輝度平面のみ参照します）
+     * @param width  画像の幅
+     * @param height 画像の高さ
+     */
+    synchronized boolean shouldProcess(byte[] nv21, int width, int height) {
+        computeSignature(nv21, width, height, mSignature);
+
+        if (mHasLastSignature && (mConsecutiveSkips < mMaxSkippedFrames)
+                && (difference(mSignature, mLastSignature) < mThreshold)) {
+            mConsecutiveSkips++;
+            mSkippedCount++;
+            return false;
+        }
+
+        int[] last = mLastSignature;
+        mLastSignature = mSignature;
+        mSignature = last;
+        mHasLastSignature = true;
+        mConsecutiveSkips = 0;
+        mPassedCount++;
+        return true;
+    }
+
+    /**
+     * 基準となる署名を破棄し、次のフレームを必ず通過させます。新しいセッションの開始時に呼び出してください。
+     */
+    synchronized void resetSignature() {
+        mHasLastSignature = false;
+        mConsecutiveSkips = 0;
+    }
+
+    /**
+     * 検出器に渡されたフレームの数を返します。
+     */
+    public synchronized long getPassedCount() {
+        return mPassedCount;
+    }
+
+    /**
+     * 変化が小さいために読み飛ばされたフレームの数を返します。
+     */
+    public synchronized long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * 通過数と読み飛ばし数を0に戻します。
+     */
+    public synchronized void resetCounts() {
+        mPassedCount = 0;
+        mSkippedCount = 0;
+    }
+
+    /**
+     * 輝度平面を{@link #GRID}×{@link #GRID}のブロックに分け、各ブロックの標本の平均を署名に書き込みます。
+     */
+    private static void computeSignature(byte[] nv21, int width, int height, int[] signature) {
+        for (int gy = 0; gy < GRID; ++gy) {
+            int top = gy * height / GRID;
+            int blockHeight = (gy + 1) * height / GRID - top;
+            for (int gx = 0; gx < GRID; ++gx) {
+                int left = gx * width / GRID;
+                int blockWidth = (gx + 1) * width / GRID - left;
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES; ++sy) {
+                    int row = (top + sy * blockHeight / SAMPLES) * width;
+                    for (int sx = 0; sx < SAMPLES; ++sx) {
+                        sum += nv21[row + left + sx * blockWidth / SAMPLES] & 0xff;
+                    }
+                }
+                signature[gy * GRID + gx] = sum / (SAMPLES * SAMPLES);
+            }
+        }
+    }
+
+    private static float difference(int[] a, int[] b) {
+        int sum = 0;
+        for (int i = 0; i < a.length; ++i) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return (float) sum / a.length;
+    }
+}
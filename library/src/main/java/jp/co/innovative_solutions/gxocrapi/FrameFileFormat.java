@@ -0,0 +1,104 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 記録したNV21フレームを格納するファイルの形式。
+ * <p>
+ * ファイルは{@link #HEADER_SIZE}バイトのヘッダーと、固定長のレコードの並びで構成されます。
+ * レコードの領域はリングとして使用でき、最も古いフレームのレコード番号がヘッダーに記録されます。
+ * <pre>
+ * ヘッダー（ビッグエンディアン）
+ *   int magic     {@link #MAGIC}
+ *   int version   {@link #VERSION}
+ *   int width     画像の幅
+ *   int height    画像の高さ
+ *   int rotation  {@link com.google.android.gms.vision.Frame.Metadata#getRotation()}と同じ値
+ *   int capacity  レコードの数
+ *   int count     有効なフレームの数
+ *   int first     最も古いフレームのレコード番号
+ * レコード
+ *   long timestampMillis  フレームを受信した時刻
+ *   int frameId           フレームID
+ *   int reserved          0
+ *   byte[width * height * 3 / 2]  NV21画像
+ * </pre>
+ */
+final class FrameFileFormat {
+    static final int MAGIC = 0x4e563231; // "NV21"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_HEADER_SIZE = 16;
+    static final int RECORD_OFFSET_FRAME_ID = 8;
+
+    static final int OFFSET_WIDTH = 8;
+    static final int OFFSET_HEIGHT = 12;
+    static final int OFFSET_ROTATION = 16;
+    static final int OFFSET_CAPACITY = 20;
+    static final int OFFSET_COUNT = 24;
+    static final int OFFSET_FIRST = 28;
+
+    private FrameFileFormat() {
+    }
+
+    /**
+     * 1フレームのNV21画像のバイト数を返します。
+     */
+    static int frameSize(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * 1レコードのバイト数を返します。
+     */
+    static int recordSize(int width, int height) {
+        return RECORD_HEADER_SIZE + frameSize(width, height);
+    }
+
+    /**
+     * 指定したレコード番号のレコードの、ファイル先頭からの位置を返します。
+     */
+    static long recordOffset(int index, int width, int height) {
+        return HEADER_SIZE + (long) index * recordSize(width, height);
+    }
+
+    /**
+     * ヘッダーを書き込みます。位置はbufferの先頭からの絶対位置です。
+     */
+    static void writeHeader(ByteBuffer buffer, int width, int height, int rotation,
+                            int capacity, int count, int first) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(OFFSET_WIDTH, width);
+        buffer.putInt(OFFSET_HEIGHT, height);
+        buffer.putInt(OFFSET_ROTATION, rotation);
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putInt(OFFSET_COUNT, count);
+        buffer.putInt(OFFSET_FIRST, first);
+    }
+
+    /**
+     * ヘッダーを検証します。
+     *
+     * @param fileSize ファイルのバイト数
+     * @throws IllegalArgumentException このファイル形式ではない場合、またはレコードが途中で切れている場合
+     */
+    static void checkHeader(ByteBuffer buffer, long fileSize) {
+        if ((fileSize < HEADER_SIZE) || (buffer.getInt(0) != MAGIC)) {
+            throw new IllegalArgumentException("Not a frame recording.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported frame recording version: " + buffer.getInt(4));
+        }
+        int width = buffer.getInt(OFFSET_WIDTH);
+        int height = buffer.getInt(OFFSET_HEIGHT);
+        int capacity = buffer.getInt(OFFSET_CAPACITY);
+        int count = buffer.getInt(OFFSET_COUNT);
+        int first = buffer.getInt(OFFSET_FIRST);
+        if ((width <= 0) || (height <= 0) || (count < 0) || (count > capacity)
+                || (first < 0) || ((capacity > 0) && (first >= capacity))
+                || (recordOffset(capacity, width, height) > fileSize)) {
+            throw new IllegalArgumentException("Corrupt frame recording header.");
+        }
+    }
+}
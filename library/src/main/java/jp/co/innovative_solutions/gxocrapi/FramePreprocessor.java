@@ -0,0 +1,67 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 検出の前にNV21画像を加工する前処理の1段階。
+ * {@link CameraSource.Builder#addFramePreprocessor(FramePreprocessor)}で追加した順に、{@link FramePreprocessorChain}として実行されます。
+ * <p>
+ * 各段階は渡された画像のバッファをその場で書き換え、フレームごとにヒープの割り当てを行ってはいけません。
+ * 複数の検出ワーカーから同時に呼び出されるため、フレームをまたぐ状態を持つ場合は同期が必要です。
+ */
+public interface FramePreprocessor {
+    /**
+     * 画像をその場で加工します。
+     */
+    void process(Image image);
+
+    /**
+     * 前処理の対象となるNV21画像。処理スレッドごとに1つ作成され、フレームごとに再利用されます。
+     */
+    final class Image {
+        private byte[] mData;
+        private int mWidth;
+        private int mHeight;
+
+        Image() {
+        }
+
+        /**
+         * 次のフレームの画像を設定します。
+         */
+        void set(byte[] data, int width, int height) {
+            mData = data;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        /**
+         * NV21画像のバッファを返します。先頭から幅×高さの輝度平面、続いてその半分の大きさのVU平面が格納されています。
+         */
+        public byte[] getData() {
+            return mData;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * 画像を縮小した場合に、新しいサイズを設定します。縮小した画像はバッファの先頭からNV21形式で格納してください。
+         * 検出された座標は、縮小した比率でフレームの座標に戻されます。縦横は同じ比率で縮小してください。
+         *
+         * @throws IllegalArgumentException 現在のサイズより大きい場合、または奇数の場合
+         */
+        public void setSize(int width, int height) {
+            if ((width <= 0) || (height <= 0) || (width > mWidth) || (height > mHeight)
+                    || ((width % 2) != 0) || ((height % 2) != 0)) {
+                throw new IllegalArgumentException(
+                        "Invalid preprocessed size: " + width + "x" + height);
+            }
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+}
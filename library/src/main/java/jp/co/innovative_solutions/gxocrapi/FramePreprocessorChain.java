@@ -0,0 +1,89 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link FramePreprocessor}を順に実行する前処理の連鎖。段階ごとの処理時間を記録します。
+ * 処理時間の記録にはヒープの割り当てを行わず、複数の検出ワーカーから同時に呼び出すことができます。
+ */
+public final class FramePreprocessorChain {
+    private final FramePreprocessor[] mStages;
+
+    // 段階ごとの合計の処理時間（ナノ秒）と実行回数
+    private final AtomicLongArray mTotalNanos;
+    private final AtomicLongArray mCounts;
+
+    // 最後に処理した画像の、入力に対する出力の縮小率の逆数（入力の幅÷出力の幅）
+    private volatile float mOutputScale = 1.0f;
+
+    FramePreprocessorChain(List<FramePreprocessor> stages) {
+        mStages = stages.toArray(new FramePreprocessor[stages.size()]);
+        mTotalNanos = new AtomicLongArray(mStages.length);
+        mCounts = new AtomicLongArray(mStages.length);
+    }
+
+    /**
+     * 全ての段階を順に実行します。
+     */
+    void process(FramePreprocessor.Image image) {
+        int inputWidth = image.getWidth();
+        for (int i = 0; i < mStages.length; ++i) {
+            long startNanos = System.nanoTime();
+            mStages[i].process(image);
+            mTotalNanos.addAndGet(i, System.nanoTime() - startNanos);
+            mCounts.incrementAndGet(i);
+        }
+        if (image.getWidth() != inputWidth) {
+            mOutputScale = (float) inputWidth / image.getWidth();
+        } else if (mOutputScale != 1.0f) {
+            mOutputScale = 1.0f;
+        }
+    }
+
+    /**
+     * 検出された座標をフレームの座標に戻すための倍率を返します。画像を縮小する段階がない場合は1です。
+     */
+    public float getOutputScale() {
+        return mOutputScale;
+    }
+
+    /**
+     * 段階の数を返します。
+     */
+    public int getStageCount() {
+        return mStages.length;
+    }
+
+    /**
+     * 指定した位置の段階を返します。
+     */
+    public FramePreprocessor getStage(int index) {
+        return mStages[index];
+    }
+
+    /**
+     * 指定した位置の段階の平均の処理時間をナノ秒で返します。まだ実行されていない場合は0です。
+     */
+    public long getAverageNanos(int index) {
+        long count = mCounts.get(index);
+        return (count > 0) ? mTotalNanos.get(index) / count : 0;
+    }
+
+    /**
+     * 指定した位置の段階の実行回数を返します。
+     */
+    public long getCount(int index) {
+        return mCounts.get(index);
+    }
+
+    /**
+     * 記録した処理時間を全て0に戻します。
+     */
+    public void resetTimings() {
+        for (int i = 0; i < mStages.length; ++i) {
+            mTotalNanos.set(i, 0);
+            mCounts.set(i, 0);
+        }
+    }
+}
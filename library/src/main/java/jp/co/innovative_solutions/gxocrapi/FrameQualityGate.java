@@ -0,0 +1,143 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * ピンぼけしたフレームを検出前に除外するためのゲート。次の2つの条件で判定します。
+ * <ul>
+ * <li>オートフォーカスのレンズが移動中であれば、そのフレームは除外します。</li>
+ * <li>NV21画像の輝度平面から計算したラプラシアンの分散（鮮鋭度）がしきい値未満であれば、そのフレームは除外します。</li>
+ * </ul>
+ * 両方の条件を満たしたフレームだけが検出器に渡されます。除外したフレームの数は理由ごとに記録されます。
+ * 鮮鋭度の計算にヒープの割り当ては行わず、複数のワーカーから同時に呼び出すことができます。
+ */
+public final class FrameQualityGate {
+    // 鮮鋭度を計算する画素の間隔（縦横それぞれ）
+    private static final int STEP = 2;
+
+    private final float mMinSharpness;
+    private final boolean mRejectWhileFocusing;
+
+    private volatile boolean mFocusMoving;
+
+    // このオブジェクト自身のロックで、以下のメンバ変数すべてを保護します。
+    private long mPassedCount;
+    private long mFocusRejectedCount;
+    private long mBlurRejectedCount;
+    private float mLastSharpness;
+
+    /**
+     * @param minSharpness        通過に必要なラプラシアンの分散。0の場合は鮮鋭度を判定しません。
+     * @param rejectWhileFocusing オートフォーカスのレンズが移動中のフレームを除外する場合はtrue
+     */
+    FrameQualityGate(float minSharpness, boolean rejectWhileFocusing) {
+        if (minSharpness < 0) {
+            throw new IllegalArgumentException("Invalid sharpness: " + minSharpness);
+        }
+        mMinSharpness = minSharpness;
+        mRejectWhileFocusing = rejectWhileFocusing;
+    }
+
+    /**
+     * オートフォーカスのレンズが移動中かどうかを設定します。カメラのオートフォーカス移動のコールバックから呼び出されます。
+     */
+    void setFocusMoving(boolean moving) {
+        mFocusMoving = moving;
+    }
+
+    /**
+     * フレームを検出器に渡すべきかどうかを判定します。
+     *
+     * @param nv21   NV21画像（輝度平面のみ参照します）
+     * @param width  画像の幅
+     * @param height 画像の高さ
+     */
+    boolean shouldProcess(byte[] nv21, int width, int height) {
+        if (mRejectWhileFocusing && mFocusMoving) {
+            synchronized (this) {
+                mFocusRejectedCount++;
+            }
+            return false;
+        }
+
+        if (mMinSharpness > 0) {
+            float sharpness = computeSharpness(nv21, width, height);
+            synchronized (this) {
+                mLastSharpness = sharpness;
+                if (sharpness < mMinSharpness) {
+                    mBlurRejectedCount++;
+                    return false;
+                }
+            }
+        }
+
+        synchronized (this) {
+            mPassedCount++;
+        }
+        return true;
+    }
+
+    /**
+     * 検出器に渡されたフレームの数を返します。
+     */
+    public synchronized long getPassedCount() {
+        return mPassedCount;
+    }
+
+    /**
+     * オートフォーカスのレンズが移動中だったために除外されたフレームの数を返します。
+     */
+    public synchronized long getFocusRejectedCount() {
+        return mFocusRejectedCount;
+    }
+
+    /**
+     * 鮮鋭度がしきい値未満だったために除外されたフレームの数を返します。
+     */
+    public synchronized long getBlurRejectedCount() {
+        return mBlurRejectedCount;
+    }
+
+    /**
+     * 最後に計算した鮮鋭度を返します。しきい値の調整に使用します。
+     */
+    public synchronized float getLastSharpness() {
+        return mLastSharpness;
+    }
+
+    /**
+     * 全ての件数を0に戻します。
+     */
+    public synchronized void resetCounts() {
+        mPassedCount = 0;
+        mFocusRejectedCount = 0;
+        mBlurRejectedCount = 0;
+    }
+
+    /**
+     * 輝度平面を{@link #STEP}画素おきに標本化し、4近傍ラプラシアンの分散を計算します。
+     * 焦点が合ってエッジがはっきりしているほど大きな値になります。
+     */
+    static float computeSharpness(byte[] nv21, int width, int height) {
+        long sum = 0;
+        long sumOfSquares = 0;
+        int count = 0;
+        for (int y = 1; y < height - 1; y += STEP) {
+            int row = y * width;
+            for (int x = 1; x < width - 1; x += STEP) {
+                int center = row + x;
+                int laplacian = 4 * (nv21[center] & 0xff)
+                        - (nv21[center - 1] & 0xff)
+                        - (nv21[center + 1] & 0xff)
+                        - (nv21[center - width] & 0xff)
+                        - (nv21[center + width] & 0xff);
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double mean = (double) sum / count;
+        return (float) ((double) sumOfSquares / count - mean * mean);
+    }
+}
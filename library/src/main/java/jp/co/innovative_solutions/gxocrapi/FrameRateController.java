@@ -0,0 +1,127 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 検出器に渡すフレームのレートを、スキャン帯付近の候補の有無と検出器の処理時間に応じて調整するコントローラー。
+ * <ul>
+ * <li>スキャン帯の近くに候補となるテキストが見つかると、レートをすぐに上限まで上げます。</li>
+ * <li>候補が{@link #IDLE_MILLIS}の間見つからないと、{@link #DECAY_INTERVAL_MILLIS}ごとにレートを半分にして下限まで下げます。</li>
+ * <li>レートは、検出器の処理時間の平均とワーカー数から求めた処理能力を超えないように制限されます。</li>
+ * </ul>
+ * 上限はカメラに設定したプレビューフレームレートの範囲の最大値です。
+ * 時刻は全て呼び出し元から渡されるため、テストでは任意の時刻を与えることができます。
+ */
+public final class FrameRateController {
+    // 候補が見つからなくなってからレートを下げ始めるまでの時間と、レートを下げる間隔
+    static final long IDLE_MILLIS = 1000;
+    static final long DECAY_INTERVAL_MILLIS = 1000;
+
+    // カメラのフレーム間隔のばらつきを吸収するため、目標の間隔よりこの割合だけ早いフレームも受け付けます。
+    private static final float INTERVAL_SLACK = 0.2f;
+
+    // 処理時間の指数移動平均の重み
+    private static final float LATENCY_SMOOTHING = 0.2f;
+
+    private final float mMinFps;
+    private final int mWorkerCount;
+
+    // このオブジェクト自身のロックで、以下のメンバ変数すべてを保護します。
+    private float mMaxFps;
+    private float mTargetFps;
+    private float mAverageLatencyMillis;
+    private long mLastAcceptedMillis = Long.MIN_VALUE;
+    private long mLastCandidateMillis;
+    private long mLastDecayMillis;
+
+    /**
+     * @param minFps      候補が見つからない間の最低レート
+     * @param workerCount 検出を並行して実行するワーカーの数
+     */
+    FrameRateController(float minFps, int workerCount) {
+        if ((minFps <= 0) || (workerCount <= 0)) {
+            throw new IllegalArgumentException("Invalid frame rate control: " + minFps + ", " + workerCount);
+        }
+        mMinFps = minFps;
+        mWorkerCount = workerCount;
+        mMaxFps = minFps;
+        mTargetFps = minFps;
+    }
+
+    /**
+     * カメラに設定したプレビューフレームレートの上限を設定し、レートを上限から開始します。カメラの開始時に呼び出されます。
+     */
+    synchronized void start(float maxFps, long nowMillis) {
+        mMaxFps = Math.max(maxFps, mMinFps);
+        mTargetFps = mMaxFps;
+        mAverageLatencyMillis = 0;
+        mLastAcceptedMillis = Long.MIN_VALUE;
+        mLastCandidateMillis = nowMillis;
+        mLastDecayMillis = nowMillis;
+    }
+
+    /**
+     * カメラから受信したフレームを検出器に渡すべきかどうかを判定します。trueを返した時刻が次の判定の基準になります。
+     */
+    synchronized boolean shouldProcess(long nowMillis) {
+        decay(nowMillis);
+        float fps = getEffectiveFps();
+        if ((mLastAcceptedMillis != Long.MIN_VALUE)
+                && ((nowMillis - mLastAcceptedMillis) * fps < 1000 * (1 - INTERVAL_SLACK))) {
+            return false;
+        }
+        mLastAcceptedMillis = nowMillis;
+        return true;
+    }
+
+    /**
+     * 1フレームの検出にかかった時間を記録します。
+     */
+    synchronized void onFrameProcessed(long latencyMillis) {
+        if (mAverageLatencyMillis == 0) {
+            mAverageLatencyMillis = latencyMillis;
+        } else {
+            mAverageLatencyMillis += LATENCY_SMOOTHING * (latencyMillis - mAverageLatencyMillis);
+        }
+    }
+
+    /**
+     * 1フレーム分の検出結果を評価した結果を記録します。
+     *
+     * @param candidateNearBand スキャン帯の近くに候補となるテキストがあった場合はtrue
+     */
+    public synchronized void onCandidates(long nowMillis, boolean candidateNearBand) {
+        if (candidateNearBand) {
+            mTargetFps = mMaxFps;
+            mLastCandidateMillis = nowMillis;
+            mLastDecayMillis = nowMillis;
+        } else {
+            decay(nowMillis);
+        }
+    }
+
+    /**
+     * 現在の目標レートを、処理能力による制限を適用した値で返します。
+     */
+    public synchronized float getEffectiveFps() {
+        if (mAverageLatencyMillis <= 0) {
+            return mTargetFps;
+        }
+        float capacityFps = mWorkerCount * 1000.0f / mAverageLatencyMillis;
+        return Math.max(mMinFps, Math.min(mTargetFps, capacityFps));
+    }
+
+    /**
+     * 検出器の処理時間の平均をミリ秒で返します。
+     */
+    public synchronized float getAverageLatencyMillis() {
+        return mAverageLatencyMillis;
+    }
+
+    private void decay(long nowMillis) {
+        if ((nowMillis - mLastCandidateMillis < IDLE_MILLIS)
+                || (nowMillis - mLastDecayMillis < DECAY_INTERVAL_MILLIS)) {
+            return;
+        }
+        mTargetFps = Math.max(mMinFps, mTargetFps / 2);
+        mLastDecayMillis = nowMillis;
+    }
+}
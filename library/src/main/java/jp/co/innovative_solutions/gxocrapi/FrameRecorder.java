@@ -0,0 +1,136 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 検出器に渡したNV21フレームを、固定サイズのメモリマップしたリングファイルに記録するレコーダー。
+ * 現場で起きた認識の失敗を、{@link ReplayFrameSource}で同じフレームを再生して再現するために使用します。
+ * <p>
+ * ファイルの形式は{@link FrameFileFormat}です。リングが一杯になると最も古いフレームを上書きします。
+ * フレームの記録は処理スレッドで行われ、カメラのコールバックを待たせることはありません。
+ * 記録にヒープの割り当ては行わず、無効にしている間の{@link #record(byte[], int, long)}は揮発性のフラグを読むだけです。
+ */
+public final class FrameRecorder {
+    private final File mFile;
+    private final int mCapacity;
+
+    private volatile boolean mEnabled = true;
+
+    // このオブジェクト自身のロックで、以下のメンバ変数すべてを保護します。
+    private MappedByteBuffer mMapped;
+    private int mWidth;
+    private int mHeight;
+    private int mFrameSize;
+    private int mCount;
+    private int mFirst;
+    private long mRecordedCount;
+
+    /**
+     * @param file     記録するファイル。既存の内容は上書きされます。
+     * @param capacity 記録するフレームの数
+     */
+    public FrameRecorder(File file, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid recorder capacity: " + capacity);
+        }
+        mFile = file;
+        mCapacity = capacity;
+    }
+
+    /**
+     * 記録を有効または無効にします。Default: 有効
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * 記録が有効かどうかを返します。
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * 指定した画像サイズと回転でファイルを作り直し、空のリングから記録を開始します。処理スレッドを開始する前に呼び出されます。
+     *
+     * @throws IOException ファイルを作成またはマップできなかった場合
+     */
+    synchronized void open(int width, int height, int rotation) throws IOException {
+        mMapped = null;
+        long size = FrameFileFormat.recordOffset(mCapacity, width, height);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Frame recording too large: " + size + " bytes");
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.setLength(size);
+            // マップはチャネルを閉じた後も有効です。
+            mMapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mFrameSize = FrameFileFormat.frameSize(width, height);
+        mCount = 0;
+        mFirst = 0;
+        FrameFileFormat.writeHeader(mMapped, width, height, rotation, mCapacity, 0, 0);
+    }
+
+    /**
+     * 1フレームを記録します。{@link #open(int, int, int)}で指定したサイズのNV21画像を渡してください。
+     */
+    void record(byte[] nv21, int frameId, long timestampMillis) {
+        if (!mEnabled) {
+            return;
+        }
+        synchronized (this) {
+            if (mMapped == null) {
+                return;
+            }
+            int index = (mFirst + mCount) % mCapacity;
+            if (mCount == mCapacity) {
+                // 上書きする最も古いレコードを、書き込む前にリングから外します。
+                mFirst = (mFirst + 1) % mCapacity;
+                mCount--;
+                mMapped.putInt(FrameFileFormat.OFFSET_COUNT, mCount);
+                mMapped.putInt(FrameFileFormat.OFFSET_FIRST, mFirst);
+            }
+            int offset = (int) FrameFileFormat.recordOffset(index, mWidth, mHeight);
+            mMapped.putLong(offset, timestampMillis);
+            mMapped.putInt(offset + FrameFileFormat.RECORD_OFFSET_FRAME_ID, frameId);
+            mMapped.putInt(offset + FrameFileFormat.RECORD_OFFSET_FRAME_ID + 4, 0);
+            mMapped.position(offset + FrameFileFormat.RECORD_HEADER_SIZE);
+            mMapped.put(nv21, 0, mFrameSize);
+
+            // レコードを書き終えてからヘッダーを更新し、途中で終了しても書きかけのレコードが読まれないようにします。
+            mCount++;
+            mMapped.putInt(FrameFileFormat.OFFSET_COUNT, mCount);
+            mRecordedCount++;
+        }
+    }
+
+    /**
+     * 記録した内容をファイルに書き出し、記録を終了します。カメラの停止時に呼び出されます。
+     */
+    synchronized void close() {
+        if (mMapped != null) {
+            mMapped.force();
+            mMapped = null;
+        }
+    }
+
+    /**
+     * 記録を開始してから記録したフレームの数を返します。上書きされたフレームも含みます。
+     */
+    public synchronized long getRecordedCount() {
+        return mRecordedCount;
+    }
+}
@@ -0,0 +1,138 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 複数の検出ワーカーが並行して処理したフレームの結果を、決められた順序でプロセッサに配信するための調停役。
+ * ワーカーはフレームを取り出した時点で{@link #issue()}によりチケットを受け取り、
+ * 検出が終わったら{@link #acquire(long)}で配信の順番を待ちます。
+ * チケットはフレームを取り出した順に発行されるため、チケットの順序はフレームIDの順序と一致します。
+ * <ul>
+ * <li>{@link #ORDER_FRAME_ID}: 全ての結果をチケット順に配信します。前のフレームの検出が終わるまで後のフレームは待たされます。</li>
+ * <li>{@link #ORDER_LATEST_WINS}: 既に配信された結果よりも古い結果は破棄し、待たずに配信します。</li>
+ * </ul>
+ * 配信はどちらのモードでも同時に1つだけ行われるため、プロセッサ側で同期を取る必要はありません。
+ */
+final class FrameSequencer {
+    static final int ORDER_FRAME_ID = 0;
+    static final int ORDER_LATEST_WINS = 1;
+
+    private final int mOrder;
+
+    // このロックは、以下のメンバ変数すべてを保護します。
+    private final Object mLock = new Object();
+    private boolean mActive = true;
+    private boolean mDelivering;
+    private long mNextTicket;
+    private long mNextDelivery;
+    private long mLastDelivered = -1;
+    private long mDroppedCount;
+
+    FrameSequencer(int order) {
+        if ((order != ORDER_FRAME_ID) && (order != ORDER_LATEST_WINS)) {
+            throw new IllegalArgumentException("Invalid result order: " + order);
+        }
+        mOrder = order;
+    }
+
+    /**
+     * 取り出したフレームに対して次のチケットを発行します。
+     * チケットの順序がフレームの順序と一致するように、フレームを取り出すのと同じロックの中で呼び出してください。
+     */
+    long issue() {
+        synchronized (mLock) {
+            return mNextTicket++;
+        }
+    }
+
+    /**
+     * 指定されたチケットの配信の順番を待ちます。
+     * trueが返された場合、呼び出し元は結果を配信（または検出に失敗した場合は何もせず）した後、必ず{@link #release(long)}を呼び出す必要があります。
+     * falseが返された場合、結果は古いか、シーケンサーが停止されたため配信してはいけません。
+     */
+    boolean acquire(long ticket) {
+        synchronized (mLock) {
+            try {
+                if (mOrder == ORDER_FRAME_ID) {
+                    while (mActive && (mNextDelivery != ticket)) {
+                        mLock.wait();
+                    }
+                } else {
+                    while (mActive && mDelivering) {
+                        mLock.wait();
+                    }
+                    if (ticket < mLastDelivered) {
+                        mDroppedCount++;
+                        return false;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 順番待ちが中断されると後続のチケットが進めなくなるため、シーケンサー全体を停止します。
+                Thread.currentThread().interrupt();
+                mActive = false;
+                mLock.notifyAll();
+                return false;
+            }
+
+            if (!mActive) {
+                return false;
+            }
+            mDelivering = true;
+            mLastDelivered = ticket;
+            return true;
+        }
+    }
+
+    /**
+     * {@link #acquire(long)}で得た配信の順番を解放し、次のチケットの配信を許可します。
+     */
+    void release(long ticket) {
+        synchronized (mLock) {
+            mDelivering = false;
+            if (mOrder == ORDER_FRAME_ID) {
+                mNextDelivery = ticket + 1;
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * 配信する結果がないチケット（読み飛ばしたフレームなど）を消費し、後続のチケットが待たされないようにします。
+     */
+    void skip(long ticket) {
+        if ((mOrder == ORDER_FRAME_ID) && acquire(ticket)) {
+            release(ticket);
+        }
+    }
+
+    /**
+     * 順番を待っている全てのワーカーを解放し、以降の配信を拒否します。
+     */
+    void cancel() {
+        synchronized (mLock) {
+            mActive = false;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * 新しいセッションのためにチケットを初期状態に戻します。全てのワーカーが終了した後に呼び出してください。
+     */
+    void reset() {
+        synchronized (mLock) {
+            mActive = true;
+            mDelivering = false;
+            mNextTicket = 0;
+            mNextDelivery = 0;
+            mLastDelivered = -1;
+            mDroppedCount = 0;
+        }
+    }
+
+    /**
+     * {@link #ORDER_LATEST_WINS}で古いために破棄された結果の数を返します。
+     */
+    long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 1つの供給スレッドから複数の処理スレッドへ、最新の1件だけを受け渡すロックフリーのスロット。
+ * <p>
+ * 供給側の{@link #offer(Object)}は参照の交換だけで完了し、処理スレッドを待つことはありません。
+ * 置き換えられた古い値は呼び出し元に返されるため、そのバッファを供給元に戻すことができます（最新の値が優先されます）。
+ * 処理側は{@link #poll()}で値を取り出し、値がなければ{@link #await()}でパークして待ちます。
+ * 待機中のスレッドは固定長の配列に登録されるため、受け渡しにヒープの割り当ては行いません。
+ */
+final class FrameSlot<T> {
+    // 待機中のスレッドを登録できない場合のポーリングの間隔
+    private static final long FALLBACK_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicReference<T> mItem = new AtomicReference<>();
+    private final AtomicReferenceArray<Thread> mWaiters;
+    private volatile boolean mOpen = true;
+
+    /**
+     * @param maxWaiters 同時に待機する処理スレッドの数
+     */
+    FrameSlot(int maxWaiters) {
+        if (maxWaiters <= 0) {
+            throw new IllegalArgumentException("Invalid waiter count: " + maxWaiters);
+        }
+        mWaiters = new AtomicReferenceArray<>(maxWaiters);
+    }
+
+    /**
+     * 値を置き、待機中の処理スレッドを1つ起こします。
+     *
+     * @return 取り出される前に置き換えられた値。なければnull
+     */
+    T offer(T item) {
+        T replaced = mItem.getAndSet(item);
+        for (int i = 0; i < mWaiters.length(); ++i) {
+            Thread waiter = mWaiters.getAndSet(i, null);
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+                break;
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * 値を取り出します。値がなければnullを返します。
+     */
+    T poll() {
+        return mItem.getAndSet(null);
+    }
+
+    /**
+     * 値が置かれるか、スロットが閉じられるまで待ちます。値は取り出しません。
+     * 起こされた後に他の処理スレッドが先に値を取り出す場合があるため、呼び出し元は{@link #poll()}を再度試してください。
+     */
+    void await() throws InterruptedException {
+        Thread current = Thread.currentThread();
+        int index = register(current);
+        try {
+            // 登録した後に確認することで、登録の直前に置かれた値を見逃さないようにします。
+            if ((mItem.get() != null) || !mOpen) {
+                return;
+            }
+            if (index >= 0) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, FALLBACK_PARK_NANOS);
+            }
+        } finally {
+            if (index >= 0) {
+                mWaiters.compareAndSet(index, current, null);
+            }
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * スロットを開きます。
+     */
+    void open() {
+        mOpen = true;
+    }
+
+    /**
+     * スロットを閉じ、待機中の全ての処理スレッドを起こします。置かれている値はそのまま残ります。
+     */
+    void close() {
+        mOpen = false;
+        for (int i = 0; i < mWaiters.length(); ++i) {
+            Thread waiter = mWaiters.getAndSet(i, null);
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * スロットが開いているかどうかを返します。
+     */
+    boolean isOpen() {
+        return mOpen;
+    }
+
+    private int register(Thread thread) {
+        for (int i = 0; i < mWaiters.length(); ++i) {
+            if (mWaiters.compareAndSet(i, null, thread)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,64 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 検出器に渡すNV21フレームの供給元。
+ * {@link CameraSource}は通常カメラを供給元として使用しますが、
+ * {@link CameraSource.Builder#setFrameSource(FrameSource)}で記録したフレームの再生などに置き換えることができます。
+ * <p>
+ * 供給元は自身のバッファにフレームを書き込んで{@link FrameCallback#onFrame(ByteBuffer)}に渡し、
+ * 受け取った側は使用が終わると{@link #releaseFrame(ByteBuffer)}でバッファを返します。
+ * 返されるまで、そのバッファに次のフレームを書き込んではいけません。
+ */
+public interface FrameSource {
+    /**
+     * 供給元から新しいフレームを受け取ります。
+     */
+    interface FrameCallback {
+        /**
+         * 新しいフレームが利用可能になったときに呼び出されます。
+         *
+         * @param data NV21画像が書き込まれたバッファ。{@link ByteBuffer#array()}を使用できます。
+         */
+        void onFrame(ByteBuffer data);
+    }
+
+    /**
+     * フレームの幅を返します。
+     */
+    int getWidth();
+
+    /**
+     * フレームの高さを返します。
+     */
+    int getHeight();
+
+    /**
+     * フレームの回転を返します。See {@link com.google.android.gms.vision.Frame.Metadata#getRotation()}.
+     */
+    int getRotation();
+
+    /**
+     * フレームを供給する最大のレートを返します。
+     */
+    float getMaxFps();
+
+    /**
+     * フレームの供給を開始します。
+     *
+     * @throws IOException 供給元を開始できなかった場合
+     */
+    void start(FrameCallback callback) throws IOException;
+
+    /**
+     * フレームの供給を停止します。停止後に{@link FrameCallback#onFrame(ByteBuffer)}が呼び出されることはありません。
+     */
+    void stop();
+
+    /**
+     * {@link FrameCallback#onFrame(ByteBuffer)}で渡したバッファを返します。
+     */
+    void releaseFrame(ByteBuffer data);
+}
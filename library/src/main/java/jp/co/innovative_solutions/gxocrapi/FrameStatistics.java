@@ -0,0 +1,155 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * カメラソースが受け取ったフレームの行方を数えるカウンター。
+ * フレームレート、解像度、ワーカー数を実際の数値から決めるために使用します。
+ * 数の更新はヒープの割り当てを行わず、供給元のコールバックと複数の検出ワーカーから同時に呼び出すことができます。
+ */
+public final class FrameStatistics {
+    private final AtomicLong mReceived = new AtomicLong();
+    private final AtomicLong mReplaced = new AtomicLong();
+    private final AtomicLong mSkipped = new AtomicLong();
+    private final AtomicLong mProcessed = new AtomicLong();
+    private final AtomicLong mDetectorErrors = new AtomicLong();
+    private volatile long mStartMillis;
+
+    FrameStatistics(long nowMillis) {
+        mStartMillis = nowMillis;
+    }
+
+    /**
+     * 供給元からフレームを受け取ったことを記録します。
+     */
+    void onReceived() {
+        mReceived.incrementAndGet();
+    }
+
+    /**
+     * 処理される前に新しいフレームに置き換えられたことを記録します。
+     */
+    void onReplaced() {
+        mReplaced.incrementAndGet();
+    }
+
+    /**
+     * フレームレートの調整、ゲート、または不明なバッファのために、検出せずに読み飛ばしたことを記録します。
+     */
+    void onSkipped() {
+        mSkipped.incrementAndGet();
+    }
+
+    /**
+     * フレームを検出器に渡したことを記録します。
+     */
+    void onProcessed() {
+        mProcessed.incrementAndGet();
+    }
+
+    /**
+     * 検出器またはプロセッサが例外を投げたことを記録します。
+     */
+    void onDetectorError() {
+        mDetectorErrors.incrementAndGet();
+    }
+
+    /**
+     * 現在の数を返します。各カウンターは個別に読み取るため、処理中のフレームの分だけずれる場合があります。
+     */
+    public Snapshot getSnapshot(long nowMillis) {
+        return new Snapshot(nowMillis - mStartMillis, mReceived.get(), mReplaced.get(),
+                mSkipped.get(), mProcessed.get(), mDetectorErrors.get());
+    }
+
+    /**
+     * 全ての数を0に戻し、計測の開始時刻をnowMillisにします。
+     */
+    public void reset(long nowMillis) {
+        mReceived.set(0);
+        mReplaced.set(0);
+        mSkipped.set(0);
+        mProcessed.set(0);
+        mDetectorErrors.set(0);
+        mStartMillis = nowMillis;
+    }
+
+    /**
+     * ある時点でのフレームの数。
+     */
+    public static final class Snapshot {
+        private final long mElapsedMillis;
+        private final long mReceived;
+        private final long mReplaced;
+        private final long mSkipped;
+        private final long mProcessed;
+        private final long mDetectorErrors;
+
+        Snapshot(long elapsedMillis, long received, long replaced, long skipped, long processed,
+                 long detectorErrors) {
+            mElapsedMillis = elapsedMillis;
+            mReceived = received;
+            mReplaced = replaced;
+            mSkipped = skipped;
+            mProcessed = processed;
+            mDetectorErrors = detectorErrors;
+        }
+
+        /**
+         * 計測を開始してからの経過時間をミリ秒で返します。
+         */
+        public long getElapsedMillis() {
+            return mElapsedMillis;
+        }
+
+        /**
+         * 供給元から受け取ったフレームの数を返します。
+         */
+        public long getReceivedCount() {
+            return mReceived;
+        }
+
+        /**
+         * 処理スレッドが取り出す前に新しいフレームに置き換えられたフレームの数を返します。
+         * 多い場合は、検出がフレームレートに追いついていません。
+         */
+        public long getReplacedCount() {
+            return mReplaced;
+        }
+
+        /**
+         * フレームレートの調整、ゲート、または不明なバッファのために検出しなかったフレームの数を返します。
+         */
+        public long getSkippedCount() {
+            return mSkipped;
+        }
+
+        /**
+         * 検出器に渡したフレームの数を返します。
+         */
+        public long getProcessedCount() {
+            return mProcessed;
+        }
+
+        /**
+         * 検出器またはプロセッサが例外を投げた回数を返します。
+         */
+        public long getDetectorErrorCount() {
+            return mDetectorErrors;
+        }
+
+        /**
+         * 検出器に渡したフレームの1秒あたりの数を返します。
+         */
+        public float getProcessedFps() {
+            return (mElapsedMillis > 0) ? mProcessed * 1000.0f / mElapsedMillis : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "received=" + mReceived + " replaced=" + mReplaced + " skipped=" + mSkipped
+                    + " processed=" + mProcessed + " errors=" + mDetectorErrors
+                    + " elapsed=" + mElapsedMillis + "ms";
+        }
+    }
+}
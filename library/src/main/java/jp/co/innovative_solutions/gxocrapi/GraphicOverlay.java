@@ -45,10 +45,10 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
 
     private final Object mLock = new Object();
     private int mPreviewWidth;
-    private float mWidthScaleFactor = 1.0f;
     private int mPreviewHeight;
-    private float mHeightScaleFactor = 1.0f;
     private int mFacing = CameraSource.CAMERA_FACING_BACK;
+    // カメラの属性かビューのサイズが変わった時に作り直し、描画と検出結果の処理で共有します。
+    private volatile PreviewTransform mTransform = PreviewTransform.IDENTITY;
     private Set<T> mGraphics = new HashSet<>();
 
 //    public static final int scannedAreaHeight = 330;
@@ -82,32 +82,28 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
          * 指定された値の水平値をプレビュースケールからビュースケールに調整します。
          */
         public float scaleX(float horizontal) {
-            return horizontal * mOverlay.mWidthScaleFactor;
+            return horizontal * mOverlay.mTransform.getScaleX();
         }
 
         /**
          * 指定された値の垂直方向の値をプレビュースケールからビュースケールに調整します。
          */
         public float scaleY(float vertical) {
-            return vertical * mOverlay.mHeightScaleFactor;
+            return vertical * mOverlay.mTransform.getScaleY();
         }
 
         /**
          * プレビューの座標系からビュー座標系へのx座標を調整します。
          */
         public float translateX(float x) {
-            if (mOverlay.mFacing == CameraSource.CAMERA_FACING_FRONT) {
-                return mOverlay.getWidth() - scaleX(x);
-            } else {
-                return scaleX(x);
-            }
+            return mOverlay.mTransform.toViewX(x);
         }
 
         /**
          * プレビューの座標系からビュー座標系へのy座標を調整します。
          */
         public float translateY(float y) {
-            return scaleY(y);
+            return mOverlay.mTransform.toViewY(y);
         }
 
         public void postInvalidate() {
@@ -176,10 +172,31 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
             mPreviewWidth = previewWidth;
             mPreviewHeight = previewHeight;
             mFacing = facing;
+            updateTransform();
         }
         postInvalidate();
     }
 
+    /**
+     * プレビューの座標系とビュー座標系の間の現在の変換を返します。
+     */
+    PreviewTransform getTransform() {
+        return mTransform;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        synchronized (mLock) {
+            updateTransform();
+        }
+    }
+
+    private void updateTransform() {
+        mTransform = PreviewTransform.create(mPreviewWidth, mPreviewHeight, getWidth(), getHeight(),
+                mFacing == CameraSource.CAMERA_FACING_FRONT, OcrCaptureActivity.scannedAreaHeight);
+    }
+
     /**
      * 関連付けられたグラフィックオブジェクトでオーバーレイを描画します。
      */
@@ -192,17 +209,13 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
         Paint p = new Paint();
         p.setColor(Color.argb(255,255,255,255));
         p.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
-        canvas.drawRect(0,(canvas.getHeight() - (mHeightScaleFactor * OcrCaptureActivity.scannedAreaHeight))/2,
-                canvas.getWidth(),(canvas.getHeight() + (mHeightScaleFactor *  OcrCaptureActivity.scannedAreaHeight))/2,p);
+        float bandHeight = mTransform.getScaleY() * OcrCaptureActivity.scannedAreaHeight;
+        canvas.drawRect(0,(canvas.getHeight() - bandHeight)/2,
+                canvas.getWidth(),(canvas.getHeight() + bandHeight)/2,p);
 
 
 
         synchronized (mLock) {
-            if ((mPreviewWidth != 0) && (mPreviewHeight != 0)) {
-                mWidthScaleFactor = (float) canvas.getWidth() / (float) mPreviewWidth;
-                mHeightScaleFactor = (float) canvas.getHeight() / (float) mPreviewHeight;
-            }
-
             for (Graphic graphic : mGraphics) {
                 graphic.draw(canvas);
             }
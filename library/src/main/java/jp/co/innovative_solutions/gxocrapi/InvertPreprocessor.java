@@ -0,0 +1,15 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 輝度平面を反転する前処理。黒地に白い文字のラベルを、白地に黒い文字として検出器に渡します。色差は変更しません。
+ */
+public final class InvertPreprocessor implements FramePreprocessor {
+    @Override
+    public void process(Image image) {
+        byte[] data = image.getData();
+        int size = image.getWidth() * image.getHeight();
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) ~data[i];
+        }
+    }
+}
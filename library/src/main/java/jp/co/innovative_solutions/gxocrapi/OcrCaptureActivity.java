@@ -29,6 +29,7 @@ import android.graphics.Color;
 import android.graphics.Point;
 import android.hardware.Camera;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.ActivityCompat;
@@ -51,10 +52,10 @@ import android.widget.Toast;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.common.api.CommonStatusCodes;
-import com.google.android.gms.vision.text.TextBlock;
 import com.google.android.gms.vision.text.TextRecognizer;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * マルチトラッカーアプリのアクティビティこのアプリは、テキストを検出し、リア側のカメラで値を表示します。
@@ -69,11 +70,49 @@ public final class OcrCaptureActivity extends AppCompatActivity {
     // 許可要求コードは<256
     private static final int RC_HANDLE_CAMERA_PERM = 2;
 
+    // 変化のないフレームを読み飛ばす際の、輝度のブロック平均の差のしきい値と連続読み飛ばしの上限
+    private static final float FRAME_CHANGE_THRESHOLD = 2.0f;
+    private static final int MAX_SKIPPED_FRAMES = 4;
+
+    // ピンぼけしたフレームを除外する際の、輝度のラプラシアンの分散の下限
+    private static final float MIN_SHARPNESS = 10.0f;
+
+    // 候補が見えているときに要求するプレビューのフレームレートと、何も見えていないときの検出のフレームレート
+    private static final float MAX_FPS = 15.0f;
+    private static final float MIN_FPS = 1.0f;
+
+    // 自動ズームで確実に読み取れるとみなす、候補の1行の高さの範囲（フレームのピクセル）
+    private static final int MIN_TEXT_HEIGHT = 24;
+    private static final int MAX_TEXT_HEIGHT = 64;
+
+    // プレビューサイズの選択で見込む、スキャン帯の高さに対する文字の高さの比率と、検出器に渡す画素数の上限
+    private static final float TEXT_HEIGHT_IN_BAND = 0.3f;
+    private static final int MAX_PREVIEW_PIXELS = 1920 * 1080;
+
+    // 検出を並行して実行するワーカーの上限。1つのTextRecognizerを複数スレッドから呼び出して安全かはわからないため、
+    // 各ワーカーは専用のTextRecognizerを使います。認識器ごとにネイティブのモデルを読み込んでメモリを使うことと、
+    // UIスレッドとカメラのコールバックのために1コアを残すことから、2つまでにしています。
+    private static final int MAX_DETECTOR_WORKERS = 2;
+
+    // 完全に一致しない場合に、取り違えやすい文字や空白、ハイフンとして直してよい文字の数
+    private static final int MAX_CORRECTION_COST = 2;
+
+    // 結果を報告する前に、各位置の文字が一致する必要があるフレームの数と割合、票を保持するフレームの数
+    private static final int CONSENSUS_VOTES = 2;
+    private static final float CONSENSUS_AGREEMENT = 0.6f;
+    private static final int CONSENSUS_WINDOW_FRAMES = 10;
+
     // インテントで余分なデータを渡すために使用される定数
     public static final String TextBlockObject = "String";
+    // 読み取るコードの書式の配列（{@link CodeGrammar}の書式）と、結果で一致した書式
+    public static final String CodeFormats = "CodeFormats";
+    public static final String MatchedCodeFormat = "MatchedCodeFormat";
+    // 結果のコードを得るために直した文字の数
+    public static final String CorrectionCost = "CorrectionCost";
     public static final int scannedAreaHeight = 330;
 
     private CameraSource mCameraSource;
+    private OcrDetectorProcessor mDetectorProcessor;
     private CameraSourcePreview mPreview;
     private TextView mLabel;
     private GraphicOverlay<OcrGraphic> mGraphicOverlay;
@@ -84,12 +123,18 @@ public final class OcrCaptureActivity extends AppCompatActivity {
 
     int width,height, actionBarHeight;
 
+    // プレビューの表示までの時間を計測する基準の時刻
+    private long mPreviewRequestMillis;
+    private boolean mResumed;
+    private boolean mDestroyed;
+
     /**
      * UIを初期化し、検出器のパイプラインを作成します。
      */
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
+        mPreviewRequestMillis = SystemClock.elapsedRealtime();
         setContentView(R.layout.ocr_capture);
 
 
@@ -97,6 +142,21 @@ public final class OcrCaptureActivity extends AppCompatActivity {
         mPreview = (CameraSourcePreview) findViewById(R.id.preview);
         mGraphicOverlay = (GraphicOverlay<OcrGraphic>) findViewById(R.id.graphicOverlay);
         mLabel = (TextView) findViewById(R.id.mLabel);
+        mPreview.setStartCallback(new CameraSource.StartCallback() {
+            @Override
+            public void onStarted(long elapsedMillis) {
+                Log.i(TAG, "Time to preview: " + (SystemClock.elapsedRealtime() - mPreviewRequestMillis) + " ms");
+            }
+
+            @Override
+            public void onStartFailed(Exception e) {
+                Log.e(TAG, "Unable to start camera source.", e);
+                if (mCameraSource != null) {
+                    mCameraSource.releaseAsync(null);
+                    mCameraSource = null;
+                }
+            }
+        });
 
         // 変更箇所（メッセージを常に表示しておく）
         mLabel.setText("発行コードまたは認証番号をスキャンして下さい");
@@ -171,18 +231,49 @@ public final class OcrCaptureActivity extends AppCompatActivity {
     /**
      * カメラを作成して開始します。これは、ocr検出器が長距離の小さなテキストサンプルを検出することを可能にするために、
      * 他の検出例と比較してより高い分解能を使用することに留意されたい。
+     */
+    private void createCameraSource(final boolean autoFocus, final boolean useFlash) {
+        final Context context = getApplicationContext();
+
+        // テキスト認識ツールが作成され、テキストが検索されます。検出ワーカーごとに1つずつ作成します。
+        // 作成にはネイティブライブラリの読み込みを伴うため、UIスレッドの外で行い、最初のフレームをすぐに描画できるようにします。
+        final int detectorWorkers = Math.max(1, Math.min(MAX_DETECTOR_WORKERS,
+                Runtime.getRuntime().availableProcessors() - 1));
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final TextRecognizer[] textRecognizers = new TextRecognizer[detectorWorkers];
+                for (int i = 0; i < textRecognizers.length; ++i) {
+                    textRecognizers[i] = new TextRecognizer.Builder(context).build();
+                }
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTextRecognizerCreated(textRecognizers, autoFocus, useFlash);
+                    }
+                });
+            }
+        }, "TextRecognizerSetup").start();
+    }
+
+    /**
+     * テキスト認識ツールが作成された後に、UIスレッドでカメラソースを作成し、アクティビティが再開されていれば開始します。
+     * 関連付けられたプロセッサインスタンスは、テキスト認識結果を受け取り、
+     * スクリーン上の各テキストブロックのグラフィックスを表示するように設定される。
      * InlinedApiを抑制するには、定数を使用する前に最小限のバージョンが満たされているかどうかチェックする必要があります。
      */
     @SuppressLint("InlinedApi")
-    private void createCameraSource(boolean autoFocus, boolean useFlash) {
-        Context context = getApplicationContext();
+    private void onTextRecognizerCreated(TextRecognizer[] textRecognizers, boolean autoFocus, boolean useFlash) {
+        if (mDestroyed) {
+            for (TextRecognizer textRecognizer : textRecognizers) {
+                textRecognizer.release();
+            }
+            return;
+        }
+        TextRecognizer textRecognizer = textRecognizers[0];
 
-        // テキスト認識ツールが作成され、テキストが検索されます。
-        // 関連付けられたプロセッサインスタンスは、テキスト認識結果を受け取り、
-        // スクリーン上の各テキストブロックのグラフィックスを表示するように設定される。
-        TextRecognizer textRecognizer = new TextRecognizer.Builder(context).build();
         // Defining with callback listener when detected necessary one
-        textRecognizer.setProcessor(new OcrDetectorProcessor(mGraphicOverlay, width, height, new DetectorResultInterface() {
+        OcrDetectorProcessor processor = new OcrDetectorProcessor(mGraphicOverlay, new DetectorResultInterface() {
             @Override
             public void onMatchFound(String matchedItem) {
                 if (matchedItem != null) {
@@ -190,6 +281,8 @@ public final class OcrCaptureActivity extends AppCompatActivity {
                     Log.i(TAG, "______________________________________________"+matchedItem);
                     Intent data = new Intent();
                     data.putExtra(TextBlockObject, matchedItem);
+                    data.putExtra(MatchedCodeFormat, mDetectorProcessor.getMatchedFormat());
+                    data.putExtra(CorrectionCost, mDetectorProcessor.getMatchedCorrectionCost());
                     setResult(Activity.RESULT_OK, data);
                     finish();
                 }
@@ -199,7 +292,21 @@ public final class OcrCaptureActivity extends AppCompatActivity {
             public void onMatchError(String ErrorMsg) {
 
             }
-        }));
+        });
+        String[] codeFormats = getIntent().getStringArrayExtra(CodeFormats);
+        if (codeFormats != null && codeFormats.length > 0) {
+            try {
+                processor.setCodeGrammar(CodeGrammar.compile(codeFormats));
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Invalid code formats; using the default format.", e);
+            }
+        }
+        processor.setMaxCorrectionCost(MAX_CORRECTION_COST);
+        processor.setConsensus(CONSENSUS_VOTES, CONSENSUS_AGREEMENT, CONSENSUS_WINDOW_FRAMES);
+        mDetectorProcessor = processor;
+        // プロセッサは検出器ではなくカメラソースに設定し、複数のワーカーの検出結果をフレームIDの順に受け取ります。
+        // 最初の認識器はカメラソースの検出器として、残りは2番目以降のワーカーの検出器として渡します。
+        TextRecognizer[] workerRecognizers = Arrays.copyOfRange(textRecognizers, 1, textRecognizers.length);
 
         if (!textRecognizer.isOperational()) {
             // 注：Vision APIを使用するアプリケーションが初めてデバイスにインストールされた場合、
@@ -225,11 +332,28 @@ public final class OcrCaptureActivity extends AppCompatActivity {
         mCameraSource =
                 new CameraSource.Builder(getApplicationContext(), textRecognizer)
                         .setFacing(CameraSource.CAMERA_FACING_BACK)
+                        .setDetectorWorkers(processor, workerRecognizers)
+                        .setCapabilityCache(true)
                         .setRequestedPreviewSize(width, height)
-                        .setRequestedFps(2.0f)
+                        .setPreviewSizePolicy(new PreviewSizePolicy(MIN_TEXT_HEIGHT,
+                                Math.min(1.0f, (float) scannedAreaHeight / height) * TEXT_HEIGHT_IN_BAND,
+                                MAX_PREVIEW_PIXELS))
+                        .setRequestedFps(MAX_FPS)
+                        .setAdaptiveFrameRate(MIN_FPS)
                         .setFlashMode(useFlash ? Camera.Parameters.FLASH_MODE_TORCH : null)
                         .setFocusMode(autoFocus ? Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE : null)
+                        .setScanBand(Math.min(1.0f, (float) scannedAreaHeight / height))
+                        .setFrameQualityGate(MIN_SHARPNESS, autoFocus)
+                        .setFrameChangeGate(FRAME_CHANGE_THRESHOLD, MAX_SKIPPED_FRAMES)
+                        .setScanBandFocus(autoFocus)
+                        .setAutoZoom(MIN_TEXT_HEIGHT, MAX_TEXT_HEIGHT)
+                        .setLatencyTracking(true)
                         .build();
+        processor.setCameraSource(mCameraSource);
+
+        if (mResumed) {
+            startCameraSource();
+        }
     }
 
     /**
@@ -238,6 +362,8 @@ public final class OcrCaptureActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
+        mResumed = true;
+        mPreviewRequestMillis = SystemClock.elapsedRealtime();
         startCameraSource();
     }
 
@@ -247,9 +373,34 @@ public final class OcrCaptureActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
+        mResumed = false;
         if (mPreview != null) {
             mPreview.stop();
         }
+        logPipelineStatistics();
+    }
+
+    /**
+     * フレームの数、プレビューバッファの不足の回数、処理の段階ごとの遅延の中央値と95パーセンタイルをログに出力します。
+     */
+    private void logPipelineStatistics() {
+        if (mCameraSource == null) {
+            return;
+        }
+        Log.i(TAG, "Frames: " + mCameraSource.getFrameStatistics());
+        Log.i(TAG, "Preview buffers: starved=" + mCameraSource.getBufferStarvationCount()
+                + " dropped=" + mCameraSource.getDroppedFrameCount());
+        PipelineLatencyTracker tracker = mCameraSource.getLatencyTracker();
+        if (tracker == null) {
+            return;
+        }
+        for (int stage = 0; stage < PipelineLatencyTracker.STAGE_COUNT; ++stage) {
+            if (tracker.getCount(stage) > 0) {
+                Log.i(TAG, "Latency stage " + stage + ": n=" + tracker.getCount(stage)
+                        + " p50=" + tracker.getPercentileMicros(stage, 50) + "us"
+                        + " p95=" + tracker.getPercentileMicros(stage, 95) + "us");
+            }
+        }
     }
 
     /**
@@ -258,6 +409,7 @@ public final class OcrCaptureActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mDestroyed = true;
         if (mPreview != null) {
             mPreview.release();
         }
@@ -332,14 +484,15 @@ public final class OcrCaptureActivity extends AppCompatActivity {
                 mPreview.start(mCameraSource, mGraphicOverlay);
             } catch (IOException e) {
                 Log.e(TAG, "Unable to start camera source.", e);
-                mCameraSource.release();
+                mCameraSource.releaseAsync(null);
                 mCameraSource = null;
             }
         }
     }
 
     /**
-     * onTapは、タップ位置の下にある最初のTextBlockを取得し、初期化アクティビティに戻すために呼び出されます。
+     * onTapは、タップ位置の下にある最初のグラフィックのキャプションを取得し、初期化アクティビティに戻すために呼び出されます。
+     * 直して読み取ったコードのグラフィックでは、元のテキストではなく直したコードを返します。
      *
      * @param rawX - the raw position of the tap
      * @param rawY - the raw position of the tap.
@@ -347,12 +500,12 @@ public final class OcrCaptureActivity extends AppCompatActivity {
      */
     private boolean onTap(float rawX, float rawY) {
         OcrGraphic graphic = mGraphicOverlay.getGraphicAtLocation(rawX, rawY);
-        TextBlock text = null;
+        String caption = null;
         if (graphic != null) {
-            text = graphic.getTextBlock();
-            if (text != null && text.getValue() != null) {
+            caption = graphic.getCaption();
+            if (caption != null) {
                 Intent data = new Intent();
-                data.putExtra(TextBlockObject, text.getValue());
+                data.putExtra(TextBlockObject, caption);
                 setResult(Activity.RESULT_OK, data);
                 finish();
             }
@@ -363,7 +516,7 @@ public final class OcrCaptureActivity extends AppCompatActivity {
         else {
             Log.d(TAG,"no text detected");
         }
-        return text != null;
+        return caption != null;
     }
 
     private class CaptureGestureListener extends GestureDetector.SimpleOnGestureListener {
@@ -387,7 +540,11 @@ public final class OcrCaptureActivity extends AppCompatActivity {
          */
         @Override
         public boolean onScale(ScaleGestureDetector detector) {
-            return false;
+            // ズームはカメラの制御スレッドでまとめて適用されるため、ジェスチャーの途中でも追従させます。
+            if (mCameraSource != null) {
+                mCameraSource.zoomBy(detector.getScaleFactor(), null);
+            }
+            return true;
         }
 
         /**
@@ -412,7 +569,6 @@ public final class OcrCaptureActivity extends AppCompatActivity {
          */
         @Override
         public void onScaleEnd(ScaleGestureDetector detector) {
-            mCameraSource.doZoom(detector.getScaleFactor());
         }
     }
 
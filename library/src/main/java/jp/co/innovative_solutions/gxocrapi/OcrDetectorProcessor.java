@@ -16,14 +16,15 @@
 package jp.co.innovative_solutions.gxocrapi;
 
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.SparseArray;
 
 import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.text.Text;
 import com.google.android.gms.vision.text.TextBlock;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
 
 /**
  * 検出されたTextBlockを受け取り、
@@ -32,22 +33,111 @@ import java.util.regex.Pattern;
 public class OcrDetectorProcessor implements Detector.Processor<TextBlock> {
 
     private static final String TAG = "OcrCapture";
+
+    // フレームレートの制御で候補として数えるテキストブロックの最小の文字数
+    private static final int MIN_CANDIDATE_LENGTH = 3;
     private GraphicOverlay<OcrGraphic> mGraphicOverlay;
     private DetectorResultInterface detectorResultInterface;
-    private int width, height;
+    private volatile CameraSource mCameraSource;
+    // 全フレームで使い回します。検出結果は1フレームずつ渡されます。
+    private volatile CodePatternMatcher mCodeMatcher = new CodePatternMatcher();
+    // 完全に一致するコードがない場合に取り違えやすい文字を直します。直さない場合はnullです。
+    private volatile CodeCorrector mCodeCorrector;
+    // コードを報告する前に直近のフレームで投票します。nullの場合は最初に一致したフレームのコードを報告します。
+    private volatile CodeConsensus mCodeConsensus;
+    // 最後に報告したコードの書式と直した文字の数。onMatchFoundを呼び出す前に設定します。
+    private volatile String mMatchedFormat;
+    // 現在のフレームで直した文字の数が最も少ない候補。完全に一致するコードがない場合だけ使います。
+    // 検出結果を受け取っている間だけ使い、検出結果は1フレームずつ渡されます。
+    private Text mCorrectedText;
+    private String mCorrectedValue;
+    private int mCorrectedCost;
+    private int mCorrectedFormat;
+    private volatile int mMatchedCorrectionCost;
+    // 検出された枠の座標で表した、現在のフレームのスキャン領域
+    private int mScanLeft;
+    private int mScanTop;
+    private int mScanRight;
+    private int mScanBottom;
+    // スキャン領域にかかっているブロックのインデックス。スキャン領域の中心に近い順に並べます。
+    private int[] mOrder = new int[0];
+    private int[] mOrderDistances = new int[0];
+    // 現在のフレームで、ブロックや行ごとのデバッグログを出力するかどうか。フレームごとに1回だけ判定します。
+    private boolean mLogItems;
 
 
     OcrDetectorProcessor(GraphicOverlay<OcrGraphic> ocrGraphicOverlay) {
         mGraphicOverlay = ocrGraphicOverlay;
     }
 
-    OcrDetectorProcessor(GraphicOverlay<OcrGraphic> ocrGraphicOverlay, int width, int height, DetectorResultInterface detectorResultInterface) {
+    OcrDetectorProcessor(GraphicOverlay<OcrGraphic> ocrGraphicOverlay, DetectorResultInterface detectorResultInterface) {
         mGraphicOverlay = ocrGraphicOverlay;
-        this.width = width;
-        this.height = height;
         this.detectorResultInterface = detectorResultInterface;
     }
 
+    /**
+     * 検出結果を提供しているカメラソースを設定します。
+     * カメラソースがスキャン帯を切り出している場合、検出された座標はその切り出し領域を使ってフレーム全体の座標に戻されます。
+     */
+    void setCameraSource(CameraSource cameraSource) {
+        mCameraSource = cameraSource;
+    }
+
+    /**
+     * 読み取るコードの書式を設定します。Default: {@link CodeGrammar#DEFAULT}
+     */
+    void setCodeGrammar(CodeGrammar grammar) {
+        if (grammar == null) {
+            throw new IllegalArgumentException("No code grammar supplied.");
+        }
+        mCodeMatcher = new CodePatternMatcher(grammar);
+        CodeConsensus consensus = mCodeConsensus;
+        if (consensus != null) {
+            consensus.reset();
+        }
+        CodeCorrector corrector = mCodeCorrector;
+        if (corrector != null) {
+            mCodeCorrector = new CodeCorrector(grammar, corrector.getMaxCost());
+        }
+    }
+
+    /**
+     * 完全に一致するコードが見つからない場合に、書式の位置の文字種に合わせて取り違えやすい文字を直すように設定します。
+     * 置き換えた文字と読み飛ばした空白やハイフンの数がmaxCost以下の候補を結果とします。0の場合は直しません。Default: 0
+     */
+    void setMaxCorrectionCost(int maxCost) {
+        if (maxCost < 0) {
+            throw new IllegalArgumentException("Invalid correction cost: " + maxCost);
+        }
+        mCodeCorrector = (maxCost > 0) ? new CodeCorrector(mCodeMatcher.getGrammar(), maxCost) : null;
+    }
+
+    /**
+     * 直近のフレームで読み取ったコードを1文字ずつ投票し、結果が一致してから報告するように設定します。
+     * 1フレームの読み違いで誤ったコードを返さないようにします。Default: 最初に一致したフレームのコードを報告します
+     *
+     * @param requiredVotes 各位置の文字に必要な票の数
+     * @param minAgreement  各位置で最も多い文字が票に占める割合の下限（0〜1）
+     * @param windowFrames  票を保持するフレームの数
+     */
+    void setConsensus(int requiredVotes, float minAgreement, int windowFrames) {
+        mCodeConsensus = new CodeConsensus(requiredVotes, minAgreement, windowFrames);
+    }
+
+    /**
+     * 最後に報告したコードの書式を返します。{@link DetectorResultInterface#onMatchFound(String)}の中で呼び出してください。
+     */
+    String getMatchedFormat() {
+        return mMatchedFormat;
+    }
+
+    /**
+     * 最後に報告したコードを得るために直した文字の数を返します。完全に一致した場合は0です。
+     */
+    int getMatchedCorrectionCost() {
+        return mMatchedCorrectionCost;
+    }
+
     /**
      * 検出結果を提供するために検出器によって呼び出されます。
      * アプリケーションで呼び出された場合は、
@@ -58,60 +148,282 @@ public class OcrDetectorProcessor implements Detector.Processor<TextBlock> {
     @Override
     public void receiveDetections(Detector.Detections<TextBlock> detections) {
 
+        // Stage timestamps for the latency histograms, keyed by the frame id set by the camera source
+        CameraSource cameraSource = mCameraSource;
+        PipelineLatencyTracker tracker = (cameraSource != null) ? cameraSource.getLatencyTracker() : null;
+        int frameId = (tracker != null) ? detections.getFrameMetadata().getId() : 0;
+        if (tracker != null) {
+            // When the detector delivers to this processor through receiveFrame, detection ends here;
+            // with detector workers the camera source has already marked it and this mark is ignored
+            tracker.mark(frameId, PipelineLatencyTracker.STAGE_DETECT_END);
+            tracker.mark(frameId, PipelineLatencyTracker.STAGE_FILTER_START);
+        }
+
+        CodeConsensus consensus = mCodeConsensus;
+        if (consensus != null) {
+            consensus.onFrame();
+        }
+        // Per-item messages are only built when debug logging is enabled, so rejection stays integer comparisons
+        mLogItems = Log.isLoggable(TAG, Log.DEBUG);
+
         mGraphicOverlay.clear();
         SparseArray<TextBlock> items = detections.getDetectedItems();
 
         // ignore if there is no items for safety
-        if (items.size() <= 0) return;
+        if (items.size() <= 0) {
+            if (tracker != null) {
+                tracker.mark(frameId, PipelineLatencyTracker.STAGE_FILTER_END);
+            }
+            reportCandidates(false, 0);
+            return;
+        }
 
-        // Creating rectangle for defining the area to be considered
-        Rect scanAreaRect = new Rect(0, (height - OcrCaptureActivity.scannedAreaHeight) / 2, width, (height + OcrCaptureActivity.scannedAreaHeight) / 2);
+        // Offsets for moving boxes detected in the cropped scan band back to full frame coordinates
+        ScanBandCrop crop = (cameraSource != null) ? cameraSource.getScanBandCrop() : null;
+        int offsetX = (crop != null) ? crop.getOffsetX() : 0;
+        int offsetY = (crop != null) ? crop.getOffsetY() : 0;
+        // Scale for boxes detected in a frame downscaled by preprocessing
+        FramePreprocessorChain preprocessorChain = (cameraSource != null) ? cameraSource.getFramePreprocessorChain() : null;
+        float scale = (preprocessorChain != null) ? preprocessorChain.getOutputScale() : 1.0f;
 
-        for (int i = 0; i < items.size(); ++i) {
+        // The overlay maps the scan area and the band around it to preview coordinates whenever its transform is
+        // rebuilt; here they are only moved to the coordinates of the detected boxes, so items are rejected with
+        // integer comparisons before any graphic exists
+        PreviewTransform transform = mGraphicOverlay.getTransform();
+        mScanLeft = ceilToDetector(transform.getScanLeft(), offsetX, scale);
+        mScanTop = ceilToDetector(transform.getScanTop(), offsetY, scale);
+        mScanRight = floorToDetector(transform.getScanRight(), offsetX, scale);
+        mScanBottom = floorToDetector(transform.getScanBottom(), offsetY, scale);
+        // Text within one band height above or below the scan area counts as a candidate coming into view
+        int nearTop = floorToDetector(transform.getNearTop(), offsetY, scale);
+        int nearBottom = ceilToDetector(transform.getNearBottom(), offsetY, scale);
+        // Twice the centre of the scan area, compared with the sum of the top and bottom of a box
+        int scanCenter2 = mScanTop + mScanBottom;
 
-            Log.i(TAG, " found at: " + items.valueAt(i).getBoundingBox().toString());
+        boolean candidateNearBand = false;
+        // Smallest line height of the candidates in frame pixels, used for the automatic zoom
+        int minCandidateHeight = 0;
+        String matchedValue = null;
+        int matchedFormat = -1;
+        int matchedCost = 0;
+        // Candidate nearest the centre of the scan area, focused on again when nothing matched
+        TextBlock nearestCandidate = null;
+        int nearestDistance = Integer.MAX_VALUE;
+        CodePatternMatcher codeMatcher = mCodeMatcher;
+        CodeCorrector codeCorrector = mCodeCorrector;
+        mCorrectedText = null;
 
-            String textValue = "";
+        // Collecting the blocks reaching into the scan area, nearest to its centre first
+        if (mOrder.length < items.size()) {
+            mOrder = new int[items.size()];
+            mOrderDistances = new int[items.size()];
+        }
+        int orderCount = 0;
+        for (int i = 0; i < items.size(); ++i) {
             TextBlock item = items.valueAt(i);
-            if (item != null && item.getValue() != null) {
+            if (item == null || item.getValue() == null) {
+                continue;
+            }
+            Rect box = item.getBoundingBox();
+            if (mLogItems) {
+                Log.d(TAG, " found at: " + box.toString());
+            }
+            int distance = Math.abs(box.top + box.bottom - scanCenter2);
+
+            if (box.top < nearBottom && box.bottom > nearTop
+                    && item.getValue().trim().length() >= MIN_CANDIDATE_LENGTH) {
+                candidateNearBand = true;
+                int lineHeight = lineHeight(item, scale);
+                if (lineHeight > 0 && (minCandidateHeight == 0 || lineHeight < minCandidateHeight)) {
+                    minCandidateHeight = lineHeight;
+                }
+                if (distance < nearestDistance) {
+                    nearestCandidate = item;
+                    nearestDistance = distance;
+                }
+            }
 
-                OcrGraphic graphic = new OcrGraphic(mGraphicOverlay, item);
+            // A block outside the scan area cannot hold a line inside it
+            if (box.bottom <= mScanTop || box.top >= mScanBottom) {
+                if (mLogItems) {
+                    Log.d(TAG, "Not found in scan area: " + item.getValue());
+                }
+                continue;
+            }
+            int k = orderCount++;
+            for (; k > 0 && mOrderDistances[k - 1] > distance; --k) {
+                mOrder[k] = mOrder[k - 1];
+                mOrderDistances[k] = mOrderDistances[k - 1];
+            }
+            mOrder[k] = i;
+            mOrderDistances[k] = distance;
+        }
 
-                // Defining item area by transforming with screen resolution other dependencies
-                int left = (int)graphic.translateX(items.valueAt(i).getBoundingBox().left);
-                int right = (int)graphic.translateX(items.valueAt(i).getBoundingBox().right);
-                int top = (int)graphic.translateY(items.valueAt(i).getBoundingBox().top);
-                int bottom = (int)graphic.translateY(items.valueAt(i).getBoundingBox().bottom);
-                Rect itemRect = new Rect(left, top, right, bottom);
+        for (int k = 0; k < orderCount; ++k) {
+            TextBlock item = items.valueAt(mOrder[k]);
 
-                // Ignoring if item was not in considering area
-                if (!scanAreaRect.contains(itemRect)) {
-                    Log.i(TAG, "Not found in scan area:"+ items.valueAt(i).getValue()+ " - " + scanAreaRect.contains(itemRect));
-                    continue;
+            // Matching line by line, so a block that sticks out of the scan area still yields the lines inside it
+            Text matchedText = null;
+            List<? extends Text> lines = item.getComponents();
+            if (lines == null || lines.isEmpty()) {
+                matchedText = matchInScanArea(item, codeMatcher, codeCorrector);
+            } else {
+                for (int j = 0; j < lines.size() && matchedText == null; ++j) {
+                    matchedText = matchInScanArea(lines.get(j), codeMatcher, codeCorrector);
                 }
+            }
 
-                Log.d(TAG, item.getValue());
+            // Showing and sending as automatic captured, returning to initiator
+            if (matchedText != null) {
+                matchedValue = codeMatcher.group();
+                matchedFormat = codeMatcher.format();
+                Log.d(TAG, matchedValue + " (" + codeMatcher.getGrammar().getFormat(matchedFormat) + ")");
+                // Adding if found in defined area
+                mGraphicOverlay.add(new OcrGraphic(mGraphicOverlay, matchedText, matchedValue, offsetX, offsetY, scale));
+                break;
+            }
+        }
 
-                // Alphabet x 3 + Numeric x 2 + (Alphabet or Numeric) x 1 + Numeric x 3 + Alphabet x 1
-                String regex = "([a-zA-Z]{3})([0-9]{2})([a-zA-Z0-9])([0-9]{3})([a-zA-Z])";
-                Pattern regexPattern = Pattern.compile( regex);
-                Matcher matcher = regexPattern.matcher(item.getValue());
+        if (matchedValue == null && mCorrectedText != null) {
+            Log.d(TAG, mCorrectedValue + " (" + codeMatcher.getGrammar().getFormat(mCorrectedFormat)
+                    + ", corrected " + mCorrectedCost + ")");
+            mGraphicOverlay.add(new OcrGraphic(mGraphicOverlay, mCorrectedText, mCorrectedValue, offsetX, offsetY, scale));
+            matchedValue = mCorrectedValue;
+            matchedFormat = mCorrectedFormat;
+            matchedCost = mCorrectedCost;
+        }
 
-                // Parsing necessary data
-                if(matcher.find()){
-                    textValue = matcher.group(0);
-                    // Adding if found in defined area
-                    mGraphicOverlay.add(new OcrGraphic(mGraphicOverlay, item, textValue));
-                }
+        // Frames read a code but it is only reported once the recent frames agree on it
+        boolean codeRead = matchedValue != null;
+        if (codeRead && consensus != null) {
+            matchedValue = consensus.vote(matchedFormat, matchedValue, matchedCost);
+            if (matchedValue != null) {
+                // The reported code may differ from this frame's read, so its own format and cost are passed on
+                matchedFormat = consensus.getReportedFormat();
+                matchedCost = consensus.getReportedCost();
+                Log.d(TAG, "Consensus reached: " + matchedValue);
+            }
+        }
 
-                // Showing and sending as automatic captured, returning to initiator
-                if (!textValue.isEmpty()) {
-                    Log.d(TAG, textValue);
-                    detectorResultInterface.onMatchFound(textValue);
-                    break;
-                }
+        if (tracker != null) {
+            tracker.mark(frameId, PipelineLatencyTracker.STAGE_FILTER_END);
+        }
+        if (matchedValue != null) {
+            mMatchedFormat = codeMatcher.getGrammar().getFormat(matchedFormat);
+            mMatchedCorrectionCost = matchedCost;
+            detectorResultInterface.onMatchFound(matchedValue);
+            if (tracker != null) {
+                tracker.mark(frameId, PipelineLatencyTracker.STAGE_DELIVERED);
             }
         }
+
+        if (!codeRead && nearestCandidate != null && cameraSource != null) {
+            Rect box = nearestCandidate.getBoundingBox();
+            cameraSource.focusOnCandidate(Math.round(box.left * scale + offsetX), Math.round(box.top * scale + offsetY),
+                    Math.round(box.right * scale + offsetX), Math.round(box.bottom * scale + offsetY));
+        }
+
+        reportCandidates(candidateNearBand, minCandidateHeight);
+    }
+
+    /**
+     * スキャン領域内にある行をコードの書式と照合します。
+     * 行が傾いていたり長かったりしてスキャン領域の端をまたぐ場合は、スキャン領域内にある要素を1つずつ照合します。
+     *
+     * @return 完全に一致した行または要素。一致した結果はcodeMatcherに残ります。一致しない場合はnull
+     */
+    private Text matchInScanArea(Text line, CodePatternMatcher codeMatcher, CodeCorrector codeCorrector) {
+        if (isInScanArea(line)) {
+            return matchText(line, codeMatcher, codeCorrector) ? line : null;
+        }
+        List<? extends Text> elements = line.getComponents();
+        if (elements == null || elements.size() <= 1) {
+            if (mLogItems) {
+                Log.d(TAG, "Not found in scan area: " + line.getValue());
+            }
+            return null;
+        }
+        for (int i = 0; i < elements.size(); ++i) {
+            Text element = elements.get(i);
+            if (isInScanArea(element) && matchText(element, codeMatcher, codeCorrector)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * テキストの外接矩形が現在のフレームのスキャン領域内にあるかどうかを返します。
+     */
+    private boolean isInScanArea(Text text) {
+        Rect box = text.getBoundingBox();
+        return box.left >= mScanLeft && box.top >= mScanTop && box.right <= mScanRight && box.bottom <= mScanBottom;
+    }
+
+    /**
+     * フレームの座標と同じかそれより後ろに対応する、検出器の座標の最小値を返します。
+     */
+    private static int ceilToDetector(float frame, int offset, float scale) {
+        return (int) Math.ceil((frame - offset) / scale);
+    }
+
+    /**
+     * フレームの座標と同じかそれより前に対応する、検出器の座標の最大値を返します。
+     */
+    private static int floorToDetector(float frame, int offset, float scale) {
+        return (int) Math.floor((frame - offset) / scale);
+    }
+
+    /**
+     * 行または要素の値を照合します。最も短いコードの書式より短い文字列は読み飛ばします。
+     * 完全に一致しない場合は、フレームの中で直した文字の数が最も少ない候補を残します。
+     *
+     * @return 完全に一致した場合はtrue
+     */
+    private boolean matchText(Text text, CodePatternMatcher codeMatcher, CodeCorrector codeCorrector) {
+        String value = text.getValue();
+        if (value == null || value.length() < codeMatcher.getGrammar().getMinLength()) {
+            return false;
+        }
+        if (mLogItems) {
+            Log.d(TAG, value);
+        }
+        if (codeMatcher.find(value)) {
+            return true;
+        }
+        if (codeCorrector != null && codeCorrector.find(value)
+                && (mCorrectedText == null || codeCorrector.cost() < mCorrectedCost)) {
+            mCorrectedText = text;
+            mCorrectedValue = codeCorrector.group();
+            mCorrectedCost = codeCorrector.cost();
+            mCorrectedFormat = codeCorrector.format();
+        }
+        return false;
+    }
+
+    /**
+     * テキストブロックの1行の高さをフレームのピクセル数で返します。
+     */
+    private static int lineHeight(TextBlock item, float scale) {
+        List<? extends Text> lines = item.getComponents();
+        int lineCount = (lines != null && !lines.isEmpty()) ? lines.size() : 1;
+        return Math.round(item.getBoundingBox().height() * scale / lineCount);
+    }
+
+    /**
+     * スキャン領域の近くにテキストがあったかどうかをカメラソースに伝え、フレームレートを調整できるようにします。
+     * また、そのテキストの大きさを伝え、ズームできるようにします。
+     */
+    private void reportCandidates(boolean candidateNearBand, int minCandidateHeight) {
+        CameraSource cameraSource = mCameraSource;
+        if (cameraSource == null) {
+            return;
+        }
+        FrameRateController controller = cameraSource.getFrameRateController();
+        if (controller != null) {
+            controller.onCandidates(SystemClock.elapsedRealtime(), candidateNearBand);
+        }
+        cameraSource.reportCandidateTextHeight(minCandidateHeight);
     }
 
     /**
@@ -20,6 +20,7 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.RectF;
 
+import com.google.android.gms.vision.text.Text;
 import com.google.android.gms.vision.text.TextBlock;
 
 import java.util.List;
@@ -35,13 +36,30 @@ public class OcrGraphic extends GraphicOverlay.Graphic {
 
     private static Paint sRectPaint;
     private static Paint sTextPaint;
-    private TextBlock mText;
+    // TextBlock、またはコードが一致した行や要素
+    private Text mText;
     private String cText;
 
+    // TextBlockの座標をプレビューフレーム全体の座標に戻すための移動量（スキャン帯を切り出した場合）と倍率（前処理で縮小した場合）
+    private int mOffsetX;
+    private int mOffsetY;
+    private float mScale = 1.0f;
+
     OcrGraphic(GraphicOverlay overlay, TextBlock text, String caption){
+        this(overlay, text, caption, 0, 0);
+    }
+
+    OcrGraphic(GraphicOverlay overlay, TextBlock text, String caption, int offsetX, int offsetY){
+        this(overlay, text, caption, offsetX, offsetY, 1.0f);
+    }
+
+    OcrGraphic(GraphicOverlay overlay, Text text, String caption, int offsetX, int offsetY, float scale){
         super(overlay);
         mText = text;
         cText = caption;
+        mOffsetX = offsetX;
+        mOffsetY = offsetY;
+        mScale = scale;
 
         if (sRectPaint == null) {
             sRectPaint = new Paint();
@@ -55,8 +73,6 @@ public class OcrGraphic extends GraphicOverlay.Graphic {
             sTextPaint.setColor(TEXT_COLOR);
             sTextPaint.setTextSize(54.0f);
         }
-        // Redraw the overlay, as this graphic has been added.
-        postInvalidate();
     }
 
     OcrGraphic(GraphicOverlay overlay, TextBlock text) {
@@ -78,8 +94,6 @@ public class OcrGraphic extends GraphicOverlay.Graphic {
             sTextPaint.setTextSize(54.0f);
             sTextPaint.setTextAlign(Paint.Align.CENTER);
         }
-        // Redraw the overlay, as this graphic has been added.
-        postInvalidate();
     }
 
     public int getId() {
@@ -90,10 +104,27 @@ public class OcrGraphic extends GraphicOverlay.Graphic {
         this.mId = id;
     }
 
+    /**
+     * TextBlockを返します。行や要素のグラフィックの場合はnullを返します。
+     */
     public TextBlock getTextBlock() {
+        return (mText instanceof TextBlock) ? (TextBlock) mText : null;
+    }
+
+    /**
+     * 表示しているTextBlock、行、または要素を返します。
+     */
+    public Text getText() {
         return mText;
     }
 
+    /**
+     * 表示しているキャプションを返します。コードを直して読み取った場合は、元のテキストではなく直したコードです。
+     */
+    public String getCaption() {
+        return cText;
+    }
+
     /**
      * 点がこのグラフィックの境界ボックス内にあるかどうかをチェックします。
      * 提供されるポイントは、このグラフィックのオーバーレイを含む相対的なものでなければなりません。
@@ -102,15 +133,15 @@ public class OcrGraphic extends GraphicOverlay.Graphic {
      * @return True if the provided point is contained within this graphic's bounding box.
      */
     public boolean contains(float x, float y) {
-        TextBlock text = mText;
+        Text text = mText;
         if (text == null) {
             return false;
         }
         RectF rect = new RectF(text.getBoundingBox());
-        rect.left = translateX(rect.left);
-        rect.top = translateY(rect.top);
-        rect.right = translateX(rect.right);
-        rect.bottom = translateY(rect.bottom);
+        rect.left = translateX(rect.left * mScale + mOffsetX);
+        rect.top = translateY(rect.top * mScale + mOffsetY);
+        rect.right = translateX(rect.right * mScale + mOffsetX);
+        rect.bottom = translateY(rect.bottom * mScale + mOffsetY);
         return (rect.left < x && rect.right > x && rect.top < y && rect.bottom > y);
     }
 
@@ -119,7 +150,7 @@ public class OcrGraphic extends GraphicOverlay.Graphic {
      */
     @Override
     public void draw(Canvas canvas) {
-        TextBlock text = mText;
+        Text text = mText;
         if (text == null) {
             return;
         }
@@ -127,10 +158,10 @@ public class OcrGraphic extends GraphicOverlay.Graphic {
         // ターゲットスコープ内の表示のみのため枠線は非表示とする
         // TextBlockの周囲にバウンディングボックスを描画します。
         RectF rect = new RectF(text.getBoundingBox());
-        rect.left = translateX(rect.left);
-        rect.top = translateY(rect.top);
-        rect.right = translateX(rect.right);
-        rect.bottom = translateY(rect.bottom);
+        rect.left = translateX(rect.left * mScale + mOffsetX);
+        rect.top = translateY(rect.top * mScale + mOffsetY);
+        rect.right = translateX(rect.right * mScale + mOffsetX);
+        rect.bottom = translateY(rect.bottom * mScale + mOffsetY);
         canvas.drawRect(rect, sRectPaint);
 
 //        sTextPaint.setTextScaleX((rect.top - rect.bottom) / (rect.right - rect.left) * cText.length());
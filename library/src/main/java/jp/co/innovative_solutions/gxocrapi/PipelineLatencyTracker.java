@@ -0,0 +1,195 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * OCRの処理の各段階の時刻をフレームIDごとに記録し、段階の間の遅延をヒストグラムに集計します。
+ * <p>
+ * 各段階の遅延は、直前の段階からの経過時間です。{@link #STAGE_CALLBACK}のヒストグラムには、
+ * プレビューのコールバックから結果の配信までの合計の遅延が集計されます。
+ * 各段階はフレームごとに最初の記録だけが使われるため、同じ段階を複数の場所で記録しても二重には集計されません。
+ * ヒストグラムはマイクロ秒の2の累乗ごとの固定のバケットで、メモリは作成時に確保されます。
+ * 記録にはヒープの割り当てを行わず、供給元のコールバックと複数の検出ワーカーから同時に呼び出すことができます。
+ */
+public final class PipelineLatencyTracker {
+    /** 供給元のコールバックがフレームを受け取った */
+    public static final int STAGE_CALLBACK = 0;
+    /** 処理スレッドがフレームを取り出した */
+    public static final int STAGE_HANDOFF = 1;
+    /** 検出器の呼び出しを開始した */
+    public static final int STAGE_DETECT_START = 2;
+    /** 検出器の呼び出しが終了した */
+    public static final int STAGE_DETECT_END = 3;
+    /** プロセッサが検出結果の絞り込みを開始した */
+    public static final int STAGE_FILTER_START = 4;
+    /** プロセッサが検出結果の絞り込みを終了した */
+    public static final int STAGE_FILTER_END = 5;
+    /** 一致した結果をコールバックに配信した */
+    public static final int STAGE_DELIVERED = 6;
+
+    /** 段階の数 */
+    public static final int STAGE_COUNT = 7;
+
+    /**
+     * バケットの数。バケットiには2^(i-1)以上2^i未満のマイクロ秒の遅延が集計されます。
+     * バケット0は1マイクロ秒未満、最後のバケットはそれ以上の全ての遅延です。
+     */
+    public static final int BUCKET_COUNT = 24;
+
+    // 時刻を保持するフレームの数。処理中のフレームの数より十分に大きい2の累乗です。
+    private static final int FRAME_SLOTS = 64;
+
+    // 時刻が記録されていないことを表す値。System.nanoTime()は負の値も返すため0は使いません。
+    private static final long NO_MARK = Long.MIN_VALUE;
+
+    // フレームの枠ごとの、記録しているフレームのIDと段階ごとの時刻（ナノ秒）
+    private final AtomicIntegerArray mFrameIds = new AtomicIntegerArray(FRAME_SLOTS);
+    private final AtomicLongArray mMarks = new AtomicLongArray(FRAME_SLOTS * STAGE_COUNT);
+
+    // 段階ごとのヒストグラムと、遅延の合計と最大値（ナノ秒）
+    private final AtomicLongArray mBuckets = new AtomicLongArray(STAGE_COUNT * BUCKET_COUNT);
+    private final AtomicLongArray mCounts = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray mTotalNanos = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray mMaxNanos = new AtomicLongArray(STAGE_COUNT);
+
+    public PipelineLatencyTracker() {
+        for (int i = 0; i < mMarks.length(); ++i) {
+            mMarks.set(i, NO_MARK);
+        }
+    }
+
+    /**
+     * フレームが指定した段階に到達したことを記録します。既に記録されている段階の場合は何もしません。
+     */
+    public void mark(int frameId, int stage) {
+        mark(frameId, stage, System.nanoTime());
+    }
+
+    void mark(int frameId, int stage, long nowNanos) {
+        if ((stage < 0) || (stage >= STAGE_COUNT)) {
+            throw new IllegalArgumentException("Invalid stage: " + stage);
+        }
+        int slot = frameId & (FRAME_SLOTS - 1);
+        int base = slot * STAGE_COUNT;
+        if (stage == STAGE_CALLBACK) {
+            // 枠を新しいフレームに割り当てる前に、以前のフレームの時刻を消去します。
+            mFrameIds.set(slot, frameId - FRAME_SLOTS);
+            for (int i = 1; i < STAGE_COUNT; ++i) {
+                mMarks.set(base + i, NO_MARK);
+            }
+            mMarks.set(base, nowNanos);
+            mFrameIds.set(slot, frameId);
+            return;
+        }
+        if (mFrameIds.get(slot) != frameId) {
+            // コールバックが記録されていないか、枠が新しいフレームに再利用されています。
+            return;
+        }
+
+        if (!mMarks.compareAndSet(base + stage, NO_MARK, nowNanos)) {
+            // 先に記録された時刻を使います。
+            return;
+        }
+        long previous = mMarks.get(base + stage - 1);
+        if (previous != NO_MARK) {
+            record(stage, nowNanos - previous);
+        }
+        if (stage == STAGE_DELIVERED) {
+            long start = mMarks.get(base);
+            if (start != NO_MARK) {
+                record(STAGE_CALLBACK, nowNanos - start);
+            }
+        }
+    }
+
+    private void record(int stage, long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = nanos / 1000;
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        mBuckets.incrementAndGet(stage * BUCKET_COUNT + bucket);
+        mCounts.incrementAndGet(stage);
+        mTotalNanos.addAndGet(stage, nanos);
+        long max;
+        while ((nanos > (max = mMaxNanos.get(stage))) && !mMaxNanos.compareAndSet(stage, max, nanos)) {
+            // 他のスレッドが最大値を更新したので再試行します。
+        }
+    }
+
+    /**
+     * 指定した段階の遅延の記録数を返します。
+     */
+    public long getCount(int stage) {
+        return mCounts.get(stage);
+    }
+
+    /**
+     * 指定した段階の平均の遅延をマイクロ秒で返します。まだ記録されていない場合は0です。
+     */
+    public long getAverageMicros(int stage) {
+        long count = mCounts.get(stage);
+        return (count > 0) ? mTotalNanos.get(stage) / count / 1000 : 0;
+    }
+
+    /**
+     * 指定した段階の最大の遅延をマイクロ秒で返します。
+     */
+    public long getMaxMicros(int stage) {
+        return mMaxNanos.get(stage) / 1000;
+    }
+
+    /**
+     * 指定した段階の遅延のパーセンタイルをマイクロ秒で返します。
+     * 値はそのパーセンタイルを含むバケットの上限で、最後のバケットの場合は最大値です。まだ記録されていない場合は0です。
+     *
+     * @param percentile 0より大きく100以下のパーセンタイル
+     */
+    public long getPercentileMicros(int stage, float percentile) {
+        if ((percentile <= 0) || (percentile > 100)) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        long count = mCounts.get(stage);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * (percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; ++i) {
+            seen += mBuckets.get(stage * BUCKET_COUNT + i);
+            if (seen >= rank) {
+                return getBucketUpperBoundMicros(i);
+            }
+        }
+        return getMaxMicros(stage);
+    }
+
+    /**
+     * 指定した段階のバケットの記録数を返します。
+     */
+    public long getBucketCount(int stage, int bucket) {
+        return mBuckets.get(stage * BUCKET_COUNT + bucket);
+    }
+
+    /**
+     * 指定したバケットに集計される遅延の上限（この値を含まない）をマイクロ秒で返します。
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * 集計した遅延を全て0に戻します。処理中のフレームの時刻はそのまま残ります。
+     */
+    public void reset() {
+        for (int i = 0; i < mBuckets.length(); ++i) {
+            mBuckets.set(i, 0);
+        }
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            mCounts.set(i, 0);
+            mTotalNanos.set(i, 0);
+            mMaxNanos.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * カメラのプレビューコールバックに渡すNV21バッファのプール。
+ * バッファの数は直接指定するか、メモリの予算とプレビューサイズから決めることができます。
+ * カメラから返されたバイト配列は、ハッシュではなくバッファの配列を先頭から同一性で照合して対応するバイトバッファを見つけます。
+ * バッファの数は数個しかないため、これはハッシュマップよりも速く、割り当ても行いません。
+ * <p>
+ * カメラに渡しているバッファの数を追跡し、カメラが空きバッファを持たなくなった回数（バッファ不足）と、
+ * その間にカメラが落としたと推定されるフレームの数を記録します。
+ */
+public final class PreviewBufferPool {
+    private final byte[][] mArrays;
+    private final ByteBuffer[] mBuffers;
+    private final long mFrameIntervalMillis;
+
+    // このオブジェクト自身のロックで、以下のメンバ変数すべてを保護します。
+    private int mQueuedCount;
+    private long mStarvedSinceMillis = -1;
+    private long mStarvationCount;
+    private long mDroppedFrameCount;
+
+    /**
+     * @param bufferCount         バッファの数
+     * @param bufferSize          1つのバッファのバイト数
+     * @param frameIntervalMillis カメラのフレーム間隔。落としたフレーム数の推定に使用します。
+     */
+    PreviewBufferPool(int bufferCount, int bufferSize, long frameIntervalMillis) {
+        if ((bufferCount <= 0) || (bufferSize <= 0)) {
+            throw new IllegalArgumentException("Invalid buffer pool: " + bufferCount + " x " + bufferSize);
+        }
+        mFrameIntervalMillis = Math.max(1, frameIntervalMillis);
+        mArrays = new byte[bufferCount][];
+        mBuffers = new ByteBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; ++i) {
+            // 注意：このコードは、プレイサービスv。8.1以降を使用している場合にのみ機能します。
+            // バイト配列をこのように作成し、それをラッピングすることは、.allocate（）を使用するのとは対照的に、動作する配列が存在することを保証するはずです。
+            byte[] byteArray = new byte[bufferSize];
+            ByteBuffer buffer = ByteBuffer.wrap(byteArray);
+            if (!buffer.hasArray() || (buffer.array() != byteArray)) {
+                // 私はこれが起こるとは思わない
+                // しかし、そうであれば、プレビューコンテンツを後の検出器に後で渡すことはありません。
+                throw new IllegalStateException("Failed to create valid buffer for camera source.");
+            }
+            mArrays[i] = byteArray;
+            mBuffers[i] = buffer;
+        }
+    }
+
+    /**
+     * メモリの予算に収まるバッファの数を返します。ただし、minCountより少なくはなりません。
+     */
+    static int countForBudget(long budgetBytes, int bufferSize, int minCount) {
+        long count = budgetBytes / bufferSize;
+        return (int) Math.max(minCount, Math.min(count, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 指定されたプレビューサイズのNV21画像を格納するのに必要なバッファのバイト数を返します。
+     */
+    static int bufferSizeFor(int width, int height, int bitsPerPixel) {
+        long sizeInBits = (long) height * width * bitsPerPixel;
+        return (int) Math.ceil(sizeInBits / 8.0d) + 1;
+    }
+
+    /**
+     * バッファの数を返します。
+     */
+    public int getBufferCount() {
+        return mArrays.length;
+    }
+
+    /**
+     * 指定された位置のバイト配列を返します。
+     */
+    byte[] getArray(int index) {
+        return mArrays[index];
+    }
+
+    /**
+     * カメラから返されたバイト配列に対応するバイトバッファを返します。このプールのバッファでない場合はnullです。
+     */
+    ByteBuffer lookup(byte[] data) {
+        for (int i = 0; i < mArrays.length; ++i) {
+            if (mArrays[i] == data) {
+                return mBuffers[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * カメラがバッファにフレームを書き込んで返したときに呼び出されます。
+     */
+    synchronized void onFrameReceived(long nowMillis) {
+        mQueuedCount--;
+        if ((mQueuedCount <= 0) && (mStarvedSinceMillis < 0)) {
+            // カメラは次のフレームを書き込むバッファを持っていません。
+            mStarvationCount++;
+            mStarvedSinceMillis = nowMillis;
+        }
+    }
+
+    /**
+     * バッファをカメラに渡したときに呼び出されます。
+     */
+    synchronized void onQueued(long nowMillis) {
+        mQueuedCount++;
+        if (mStarvedSinceMillis >= 0) {
+            // バッファがなかった間に届くはずだったフレームは、カメラによって落とされています。
+            mDroppedFrameCount += (nowMillis - mStarvedSinceMillis) / mFrameIntervalMillis;
+            mStarvedSinceMillis = -1;
+        }
+    }
+
+    /**
+     * カメラが空きバッファを持たなくなった回数を返します。
+     */
+    public synchronized long getStarvationCount() {
+        return mStarvationCount;
+    }
+
+    /**
+     * 空きバッファがなかったためにカメラが落としたと推定されるフレームの数を返します。
+     */
+    public synchronized long getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * 全ての件数を0に戻します。
+     */
+    public synchronized void resetCounts() {
+        mStarvationCount = 0;
+        mDroppedFrameCount = 0;
+    }
+}
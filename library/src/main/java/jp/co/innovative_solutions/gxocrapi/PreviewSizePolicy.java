@@ -0,0 +1,100 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * 読み取る文字に必要な画素数から、カメラのプレビューサイズを選ぶ方針。
+ * <p>
+ * 文字の高さは正立画像の高さに対する比率で見積もり、文字が目標の高さ（ピクセル）になる最も小さいサイズを選びます。
+ * 小さいサイズほどNV21バッファのコピーと検出の負荷が小さくなります。
+ * 画素数の上限を超えるサイズは選びません。目標を満たすサイズがない場合は、上限以内で最も文字が大きくなるサイズを選びます。
+ * 選択は{@link #select(int[], int[], boolean, float)}の純粋な関数で、カメラなしでテストできます。
+ */
+public final class PreviewSizePolicy {
+    private final int mMinTextHeight;
+    private final float mTextHeightRatio;
+    private final int mMaxPixels;
+
+    /**
+     * @param minTextHeight   文字の高さの目標（フレームのピクセル）
+     * @param textHeightRatio 正立画像の高さに対する文字の高さの見積もり（スキャン帯の比率×帯の中の文字の比率など）
+     * @param maxPixels       検出器に渡す画素数の上限。0の場合は制限しません
+     */
+    public PreviewSizePolicy(int minTextHeight, float textHeightRatio, int maxPixels) {
+        if ((minTextHeight <= 0) || (textHeightRatio <= 0) || (textHeightRatio > 1) || (maxPixels < 0)) {
+            throw new IllegalArgumentException("Invalid preview size policy: " + minTextHeight + ", "
+                    + textHeightRatio + ", " + maxPixels);
+        }
+        mMinTextHeight = minTextHeight;
+        mTextHeightRatio = textHeightRatio;
+        mMaxPixels = maxPixels;
+    }
+
+    /**
+     * 指定したサイズで見込まれる文字の高さをピクセルで返します。
+     *
+     * @param sideways フレームを90度または270度回転して正立させる場合はtrue
+     */
+    public float getTextHeight(int width, int height, boolean sideways) {
+        return (sideways ? width : height) * mTextHeightRatio;
+    }
+
+    /**
+     * プレビューサイズを選びます。
+     * 目標を満たすサイズの中では画素数が最も少ないものを、画素数が同じ場合は縦横比がaspectRatioに近いものを選びます。
+     *
+     * @param widths      候補のサイズの幅
+     * @param heights     候補のサイズの高さ
+     * @param sideways    フレームを90度または270度回転して正立させる場合はtrue
+     * @param aspectRatio 優先する縦横比（長辺÷短辺）。0の場合は考慮しません
+     * @return 選んだサイズの位置。候補がない場合は-1
+     */
+    public int select(int[] widths, int[] heights, boolean sideways, float aspectRatio) {
+        if (widths.length != heights.length) {
+            throw new IllegalArgumentException("Size lists differ: " + widths.length + ", " + heights.length);
+        }
+        int best = -1;
+        for (int i = 0; i < widths.length; ++i) {
+            if ((best < 0) || isBetter(widths[i], heights[i], widths[best], heights[best], sideways, aspectRatio)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private boolean isBetter(int width, int height, int bestWidth, int bestHeight,
+                             boolean sideways, float aspectRatio) {
+        long pixels = (long) width * height;
+        long bestPixels = (long) bestWidth * bestHeight;
+
+        // 画素数の上限を超えるサイズは、上限以内のサイズがない場合にだけ、最も小さいものを選びます。
+        boolean withinCap = (mMaxPixels == 0) || (pixels <= mMaxPixels);
+        boolean bestWithinCap = (mMaxPixels == 0) || (bestPixels <= mMaxPixels);
+        if (withinCap != bestWithinCap) {
+            return withinCap;
+        }
+        if (!withinCap) {
+            return pixels < bestPixels;
+        }
+
+        float textHeight = getTextHeight(width, height, sideways);
+        float bestTextHeight = getTextHeight(bestWidth, bestHeight, sideways);
+        boolean readable = textHeight >= mMinTextHeight;
+        boolean bestReadable = bestTextHeight >= mMinTextHeight;
+        if (readable != bestReadable) {
+            return readable;
+        }
+        if (!readable && (textHeight != bestTextHeight)) {
+            // 目標に届かない場合は、文字が大きくなるサイズを優先します。
+            return textHeight > bestTextHeight;
+        }
+        if (pixels != bestPixels) {
+            return pixels < bestPixels;
+        }
+        return (aspectRatio > 0)
+                && (aspectDistance(width, height, aspectRatio) < aspectDistance(bestWidth, bestHeight, aspectRatio));
+    }
+
+    private static float aspectDistance(int width, int height, float aspectRatio) {
+        float ratio = (float) Math.max(width, height) / Math.min(width, height);
+        return Math.abs(ratio - aspectRatio);
+    }
+}
@@ -0,0 +1,144 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * プレビューの座標系とビュー座標系の間の変換。
+ * <p>
+ * プレビューのサイズとビューのサイズの比率で拡大縮小し、フロントカメラの場合は左右を反転します。
+ * ビューの中央の読み取り範囲（スキャンバンド）と、その上下にバンドの高さずつ広げた範囲も、作成時にプレビューの座標系に戻しておきます。
+ * {@link GraphicOverlay}がカメラの属性かビューのサイズが変わった時に作り直し、検出結果ごとには計算しません。
+ * 変換は変更できず、複数のスレッドから共有できます。
+ */
+final class PreviewTransform {
+    /** カメラの属性かビューのサイズがまだわからない場合の、拡大縮小も反転もしない変換。スキャンバンドは空です */
+    static final PreviewTransform IDENTITY = new PreviewTransform(1.0f, 1.0f, 0, 0, false, 0);
+
+    private final float mScaleX;
+    private final float mScaleY;
+    private final int mViewWidth;
+    private final boolean mMirrored;
+    // プレビューの座標系のスキャンバンドと、その上下にバンドの高さずつ広げた範囲
+    private final float mScanLeft;
+    private final float mScanTop;
+    private final float mScanRight;
+    private final float mScanBottom;
+    private final float mNearTop;
+    private final float mNearBottom;
+
+    private PreviewTransform(float scaleX, float scaleY, int viewWidth, int viewHeight, boolean mirrored,
+                             int scanBandHeight) {
+        mScaleX = scaleX;
+        mScaleY = scaleY;
+        mViewWidth = viewWidth;
+        mMirrored = mirrored;
+
+        float bandTop = (viewHeight - scanBandHeight) / 2.0f;
+        float bandBottom = (viewHeight + scanBandHeight) / 2.0f;
+        float x1 = toPreviewX(0);
+        float x2 = toPreviewX(viewWidth);
+        mScanLeft = Math.min(x1, x2);
+        mScanRight = Math.max(x1, x2);
+        mScanTop = toPreviewY(bandTop);
+        mScanBottom = toPreviewY(bandBottom);
+        mNearTop = toPreviewY(bandTop - scanBandHeight);
+        mNearBottom = toPreviewY(bandBottom + scanBandHeight);
+    }
+
+    /**
+     * スキャンバンドを持たない変換を作成します。
+     *
+     * @see #create(int, int, int, int, boolean, int)
+     */
+    static PreviewTransform create(int previewWidth, int previewHeight, int viewWidth, int viewHeight,
+                                   boolean mirrored) {
+        return create(previewWidth, previewHeight, viewWidth, viewHeight, mirrored, 0);
+    }
+
+    /**
+     * プレビューをビュー全体に引き伸ばして表示する変換を作成します。
+     * いずれかのサイズが0の場合は、反転だけを行い拡大縮小しない変換を返します。
+     *
+     * @param mirrored       左右を反転する場合（フロントカメラ）はtrue
+     * @param scanBandHeight ビューの上下の中央に置くスキャンバンドの、ビュー座標系での高さ
+     */
+    static PreviewTransform create(int previewWidth, int previewHeight, int viewWidth, int viewHeight,
+                                   boolean mirrored, int scanBandHeight) {
+        if ((previewWidth <= 0) || (previewHeight <= 0) || (viewWidth <= 0) || (viewHeight <= 0)) {
+            return new PreviewTransform(1.0f, 1.0f, viewWidth, viewHeight, mirrored, scanBandHeight);
+        }
+        return new PreviewTransform((float) viewWidth / previewWidth, (float) viewHeight / previewHeight,
+                viewWidth, viewHeight, mirrored, scanBandHeight);
+    }
+
+    float getScaleX() {
+        return mScaleX;
+    }
+
+    float getScaleY() {
+        return mScaleY;
+    }
+
+    boolean isMirrored() {
+        return mMirrored;
+    }
+
+    /**
+     * プレビューの座標系のx座標をビュー座標系に変換します。
+     */
+    float toViewX(float x) {
+        return mMirrored ? mViewWidth - x * mScaleX : x * mScaleX;
+    }
+
+    /**
+     * プレビューの座標系のy座標をビュー座標系に変換します。
+     */
+    float toViewY(float y) {
+        return y * mScaleY;
+    }
+
+    /**
+     * ビュー座標系のx座標をプレビューの座標系に戻します。
+     */
+    float toPreviewX(float x) {
+        return (mMirrored ? mViewWidth - x : x) / mScaleX;
+    }
+
+    /**
+     * ビュー座標系のy座標をプレビューの座標系に戻します。
+     */
+    float toPreviewY(float y) {
+        return y / mScaleY;
+    }
+
+    /**
+     * プレビューの座標系でのスキャンバンドの左端を返します。反転した場合も右端より小さくなります。
+     */
+    float getScanLeft() {
+        return mScanLeft;
+    }
+
+    float getScanTop() {
+        return mScanTop;
+    }
+
+    float getScanRight() {
+        return mScanRight;
+    }
+
+    float getScanBottom() {
+        return mScanBottom;
+    }
+
+    /**
+     * スキャンバンドの上端からバンドの高さだけ上の位置を、プレビューの座標系で返します。
+     */
+    float getNearTop() {
+        return mNearTop;
+    }
+
+    /**
+     * スキャンバンドの下端からバンドの高さだけ下の位置を、プレビューの座標系で返します。
+     */
+    float getNearBottom() {
+        return mNearBottom;
+    }
+}
@@ -0,0 +1,306 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import android.support.annotation.IntDef;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * {@link FrameFileFormat}の形式で記録したNV21フレームを、メモリマップしたファイルから再生する供給元。
+ * デバイスがなくても検出パイプラインを実行できるため、処理能力の計測や回帰テストに使用します。
+ * <ul>
+ * <li>{@link #MODE_REAL_TIME}は記録した時刻の間隔で再生します。</li>
+ * <li>{@link #MODE_FIXED_RATE}は指定したレートで再生します。</li>
+ * <li>{@link #MODE_AS_FAST_AS_POSSIBLE}は空きバッファができ次第、次のフレームを再生します。</li>
+ * </ul>
+ * 時刻に合わせて再生する場合、空きバッファがなければカメラと同じようにそのフレームを落とします。
+ * できるだけ早く再生する場合はフレームを落とさず、バッファが返されるのを待ちます。
+ * ファイル全体をマップするため、2GB以上のファイルは再生できません。
+ */
+public final class ReplayFrameSource implements FrameSource {
+    public static final int MODE_REAL_TIME = 0;
+    public static final int MODE_FIXED_RATE = 1;
+    public static final int MODE_AS_FAST_AS_POSSIBLE = 2;
+
+    @IntDef({
+        MODE_REAL_TIME,
+        MODE_FIXED_RATE,
+        MODE_AS_FAST_AS_POSSIBLE
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Mode {}
+
+    // 記録した時刻から実際のレートを求められない場合のレート
+    private static final float DEFAULT_FPS = 30.0f;
+
+    private final MappedByteBuffer mMapped;
+    private final int mMode;
+    private final boolean mLoop;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mRotation;
+    private final int mCapacity;
+    private final int mCount;
+    private final int mFirst;
+    private final float mFps;
+    private final ByteBuffer[] mBuffers;
+
+    // このロックは、以下のメンバ変数すべてを保護します。
+    private final Object mLock = new Object();
+    private final ArrayDeque<ByteBuffer> mFreeBuffers = new ArrayDeque<>();
+    private boolean mRunning;
+    private boolean mFinished;
+    private long mDeliveredFrameCount;
+    private long mDroppedFrameCount;
+
+    private Thread mThread;
+
+    /**
+     * @param file        再生するファイル
+     * @param mode        再生のモード
+     * @param fps         {@link #MODE_FIXED_RATE}のレート。その他のモードでは無視されます。
+     * @param bufferCount フレームを渡すバッファの数
+     * @param loop        最後のフレームの後に最初から再生を繰り返す場合はtrue
+     * @throws IOException ファイルを読み込めなかった場合
+     */
+    public ReplayFrameSource(File file, @Mode int mode, float fps, int bufferCount, boolean loop)
+            throws IOException {
+        if ((mode < MODE_REAL_TIME) || (mode > MODE_AS_FAST_AS_POSSIBLE)) {
+            throw new IllegalArgumentException("Invalid replay mode: " + mode);
+        }
+        if ((mode == MODE_FIXED_RATE) && (fps <= 0)) {
+            throw new IllegalArgumentException("Invalid replay fps: " + fps);
+        }
+        if (bufferCount <= 0) {
+            throw new IllegalArgumentException("Invalid buffer count: " + bufferCount);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // マップはチャネルを閉じた後も有効です。
+            mMapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            FrameFileFormat.checkHeader(mMapped, channel.size());
+        } finally {
+            raf.close();
+        }
+
+        mMode = mode;
+        mLoop = loop;
+        mWidth = mMapped.getInt(FrameFileFormat.OFFSET_WIDTH);
+        mHeight = mMapped.getInt(FrameFileFormat.OFFSET_HEIGHT);
+        mRotation = mMapped.getInt(FrameFileFormat.OFFSET_ROTATION);
+        mCapacity = mMapped.getInt(FrameFileFormat.OFFSET_CAPACITY);
+        mCount = mMapped.getInt(FrameFileFormat.OFFSET_COUNT);
+        mFirst = mMapped.getInt(FrameFileFormat.OFFSET_FIRST);
+        mFps = (mode == MODE_FIXED_RATE) ? fps : recordedFps();
+
+        mBuffers = new ByteBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; ++i) {
+            mBuffers[i] = ByteBuffer.wrap(new byte[FrameFileFormat.frameSize(mWidth, mHeight)]);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * 再生するレートを返します。{@link #MODE_FIXED_RATE}以外では記録したフレームの平均のレートです。
+     */
+    @Override
+    public float getMaxFps() {
+        return mFps;
+    }
+
+    /**
+     * 記録されているフレームの数を返します。
+     */
+    public int getFrameCount() {
+        return mCount;
+    }
+
+    @Override
+    public void start(final FrameCallback callback) {
+        synchronized (mLock) {
+            if (mThread != null) {
+                return;
+            }
+            mFreeBuffers.clear();
+            for (ByteBuffer buffer : mBuffers) {
+                mFreeBuffers.add(buffer);
+            }
+            mRunning = true;
+            mFinished = false;
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    replay(callback);
+                }
+            }, "FrameReplay");
+            mThread.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        Thread thread;
+        synchronized (mLock) {
+            mRunning = false;
+            mLock.notifyAll();
+            thread = mThread;
+            mThread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void releaseFrame(ByteBuffer data) {
+        synchronized (mLock) {
+            mFreeBuffers.add(data);
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * 全てのフレームの再生が終わるか、停止されるまで待ちます。繰り返し再生の場合は停止されるまで待ちます。
+     */
+    public void awaitFinished() throws InterruptedException {
+        synchronized (mLock) {
+            while (!mFinished && (mThread != null)) {
+                mLock.wait();
+            }
+        }
+    }
+
+    /**
+     * 渡したフレームの数を返します。
+     */
+    public long getDeliveredFrameCount() {
+        synchronized (mLock) {
+            return mDeliveredFrameCount;
+        }
+    }
+
+    /**
+     * 空きバッファがなかったために落としたフレームの数を返します。
+     */
+    public long getDroppedFrameCount() {
+        synchronized (mLock) {
+            return mDroppedFrameCount;
+        }
+    }
+
+    private void replay(FrameCallback callback) {
+        int frameSize = FrameFileFormat.frameSize(mWidth, mHeight);
+        long intervalNanos = (long) (1000000000L / mFps);
+        ByteBuffer source = mMapped.duplicate();
+        long startNanos = System.nanoTime();
+        long firstTimestampMillis = 0;
+        long position = 0;
+
+        try {
+            while (true) {
+                int index = (int) (position % Math.max(1, mCount));
+                if ((mCount == 0) || ((position >= mCount) && !mLoop)) {
+                    break;
+                }
+                int offset = (int) FrameFileFormat.recordOffset(
+                        (mFirst + index) % mCapacity, mWidth, mHeight);
+                long timestampMillis = mMapped.getLong(offset);
+                if (index == 0) {
+                    // 繰り返すたびに時刻の基準を取り直します。
+                    startNanos = System.nanoTime();
+                    firstTimestampMillis = timestampMillis;
+                }
+
+                if (mMode != MODE_AS_FAST_AS_POSSIBLE) {
+                    long dueNanos = startNanos + ((mMode == MODE_REAL_TIME)
+                            ? (timestampMillis - firstTimestampMillis) * 1000000L
+                            : index * intervalNanos);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                    }
+                }
+
+                ByteBuffer buffer;
+                synchronized (mLock) {
+                    if (mMode == MODE_AS_FAST_AS_POSSIBLE) {
+                        while (mRunning && mFreeBuffers.isEmpty()) {
+                            mLock.wait();
+                        }
+                    }
+                    if (!mRunning) {
+                        return;
+                    }
+                    buffer = mFreeBuffers.poll();
+                    if (buffer == null) {
+                        mDroppedFrameCount++;
+                    }
+                }
+                position++;
+                if (buffer == null) {
+                    continue;
+                }
+
+                source.limit(offset + FrameFileFormat.RECORD_HEADER_SIZE + frameSize);
+                source.position(offset + FrameFileFormat.RECORD_HEADER_SIZE);
+                source.get(buffer.array(), 0, frameSize);
+                synchronized (mLock) {
+                    mDeliveredFrameCount++;
+                }
+                callback.onFrame(buffer);
+            }
+        } catch (InterruptedException e) {
+            // 停止されました。
+        } finally {
+            synchronized (mLock) {
+                mFinished = true;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 記録した先頭と最後のフレームの時刻から平均のレートを求めます。
+     */
+    private float recordedFps() {
+        if (mCount < 2) {
+            return DEFAULT_FPS;
+        }
+        long first = mMapped.getLong((int) FrameFileFormat.recordOffset(mFirst, mWidth, mHeight));
+        long last = mMapped.getLong((int) FrameFileFormat.recordOffset(
+                (mFirst + mCount - 1) % mCapacity, mWidth, mHeight));
+        if (last <= first) {
+            return DEFAULT_FPS;
+        }
+        return (mCount - 1) * 1000.0f / (last - first);
+    }
+}
@@ -0,0 +1,166 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * NV21プレビューフレームからスキャン帯の部分だけを切り出すための、不変の切り出し領域。
+ * スキャン帯は正立画像（フレームの回転を適用した後の画像）の縦方向中央にある帯として指定され、
+ * フレームの回転に応じて元のNV21画像の行または列の範囲に変換されます。
+ * 切り出したフレームで検出された座標は、{@link #getOffsetX()}と{@link #getOffsetY()}を加えることで
+ * 元のフレームの正立座標に戻すことができます。
+ */
+final class ScanBandCrop {
+    // {@link com.google.android.gms.vision.Frame}の回転定数に対応します。
+    private static final int ROTATION_0 = 0;
+    private static final int ROTATION_90 = 1;
+    private static final int ROTATION_180 = 2;
+    private static final int ROTATION_270 = 3;
+
+    private final int mFrameWidth;
+    private final int mFrameHeight;
+
+    // 元のNV21画像上の切り出し領域。NV21の色差サンプルに合わせて偶数に揃えています。
+    private final int mLeft;
+    private final int mTop;
+    private final int mWidth;
+    private final int mHeight;
+
+    // 切り出した画像の正立座標から、元の画像の正立座標への移動量。
+    private final int mOffsetX;
+    private final int mOffsetY;
+
+    private ScanBandCrop(int frameWidth, int frameHeight, int left, int top, int width, int height,
+                         int offsetX, int offsetY) {
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+        mOffsetX = offsetX;
+        mOffsetY = offsetY;
+    }
+
+    /**
+     * スキャン帯の切り出し領域を計算します。
+     * 帯の境界で切れたテキストが帯の内側に収まっているように見えないよう、帯の上下に余白を加えて切り出します。
+     *
+     * @param frameWidth  NV21フレームの幅
+     * @param frameHeight NV21フレームの高さ
+     * @param rotation    フレームの回転（{@link com.google.android.gms.vision.Frame#ROTATION_0}など）
+     * @param bandRatio   正立画像の高さに対するスキャン帯の高さの比率
+     * @param marginRatio スキャン帯の高さに対する上下それぞれの余白の比率
+     */
+    static ScanBandCrop create(int frameWidth, int frameHeight, int rotation,
+                               float bandRatio, float marginRatio) {
+        if ((bandRatio <= 0) || (marginRatio < 0)) {
+            throw new IllegalArgumentException("Invalid scan band: " + bandRatio + ", " + marginRatio);
+        }
+        boolean sideways = (rotation == ROTATION_90) || (rotation == ROTATION_270);
+        int uprightHeight = sideways ? frameWidth : frameHeight;
+
+        int bandHeight = Math.round(uprightHeight * bandRatio * (1 + 2 * marginRatio));
+        bandHeight = Math.min(Math.max(bandHeight, 2), uprightHeight);
+        int bandTop = (uprightHeight - bandHeight) / 2;
+        int bandBottom = bandTop + bandHeight;
+
+        // 正立画像の帯を、元のNV21画像の行（回転なし・180度）または列（90度・270度）の範囲に変換します。
+        int start;
+        int end;
+        if ((rotation == ROTATION_0) || (rotation == ROTATION_90)) {
+            start = bandTop;
+            end = bandBottom;
+        } else {
+            start = uprightHeight - bandBottom;
+            end = uprightHeight - bandTop;
+        }
+        start &= ~1;
+        end = Math.min((end + 1) & ~1, uprightHeight & ~1);
+
+        int left = sideways ? start : 0;
+        int top = sideways ? 0 : start;
+        int width = sideways ? end - start : frameWidth & ~1;
+        int height = sideways ? frameHeight & ~1 : end - start;
+
+        int offsetX;
+        int offsetY;
+        switch (rotation) {
+            case ROTATION_90:
+                offsetX = frameHeight - (top + height);
+                offsetY = left;
+                break;
+            case ROTATION_180:
+                offsetX = frameWidth - (left + width);
+                offsetY = frameHeight - (top + height);
+                break;
+            case ROTATION_270:
+                offsetX = top;
+                offsetY = frameWidth - (left + width);
+                break;
+            default:
+                offsetX = left;
+                offsetY = top;
+                break;
+        }
+        return new ScanBandCrop(frameWidth, frameHeight, left, top, width, height, offsetX, offsetY);
+    }
+
+    /**
+     * 切り出したNV21画像の幅を返します。
+     */
+    int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * 切り出したNV21画像の高さを返します。
+     */
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 切り出したNV21画像を格納するのに必要なバッファのサイズを返します。
+     */
+    int getBufferSize() {
+        return mWidth * mHeight * 3 / 2;
+    }
+
+    /**
+     * 切り出した画像で検出された正立座標のx座標に加える値を返します。
+     */
+    int getOffsetX() {
+        return mOffsetX;
+    }
+
+    /**
+     * 切り出した画像で検出された正立座標のy座標に加える値を返します。
+     */
+    int getOffsetY() {
+        return mOffsetY;
+    }
+
+    /**
+     * 元のNV21フレームからスキャン帯の輝度と色差を切り出してコピーします。
+     *
+     * @param src 元のNV21フレーム
+     * @param dst 少なくとも{@link #getBufferSize()}の大きさのコピー先
+     */
+    void copy(byte[] src, byte[] dst) {
+        int frameSize = mFrameWidth * mFrameHeight;
+        int cropSize = mWidth * mHeight;
+        if (mWidth == mFrameWidth) {
+            // 全ての列を使う場合、各平面の切り出し範囲は連続しているので1回でコピーできます。
+            System.arraycopy(src, mTop * mFrameWidth, dst, 0, cropSize);
+            System.arraycopy(src, frameSize + (mTop / 2) * mFrameWidth, dst, cropSize, cropSize / 2);
+            return;
+        }
+
+        for (int row = 0; row < mHeight; ++row) {
+            System.arraycopy(src, (mTop + row) * mFrameWidth + mLeft, dst, row * mWidth, mWidth);
+        }
+        // VU平面は縦横ともに半分の解像度で、各行にVとUが交互に並んでいます。
+        for (int row = 0; row < mHeight / 2; ++row) {
+            System.arraycopy(src, frameSize + (mTop / 2 + row) * mFrameWidth + mLeft,
+                    dst, cropSize + row * mWidth, mWidth);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+/**
+ * ピンチ操作による倍率の変化を丸める前の目標の倍率に積み上げ、その倍率に最も近いズームを求めます。
+ * <p>
+ * {@link android.view.ScaleGestureDetector}が報告する倍率の変化は前回のイベントからの小さな値（1.01など）です。
+ * 毎回ズームの段階に丸めてから次の変化を掛けると、半段階に満たない変化が捨てられ、ゆっくりしたピンチではズームが変わりません。
+ * 目標の倍率は丸めずに保持し、丸めるのは適用するズームを求める時だけにします。
+ */
+final class ZoomRatioTarget {
+    // サポートされるズームの倍率（100倍した値、昇順）
+    private final int[] mRatios;
+    private float mTarget;
+    private int mZoom;
+
+    /**
+     * @param ratios {@link android.hardware.Camera.Parameters#getZoomRatios()}の倍率。空ではない昇順の配列
+     * @param zoom   現在のズーム
+     */
+    ZoomRatioTarget(int[] ratios, int zoom) {
+        if (ratios.length == 0) {
+            throw new IllegalArgumentException("No zoom ratios supplied.");
+        }
+        mRatios = ratios.clone();
+        setZoom(zoom);
+    }
+
+    /**
+     * 目標の倍率をscale倍にし、最も近い倍率のズームを返します。目標は最小と最大の倍率の範囲に制限されます。
+     */
+    int scaleBy(float scale) {
+        float min = mRatios[0];
+        float max = mRatios[mRatios.length - 1];
+        mTarget = Math.max(min, Math.min(max, mTarget * scale));
+        // 倍率は昇順なので、目標に近い方へ1段階ずつ進めます。同じ距離の場合は現在のズームのままにします。
+        int zoom = mZoom;
+        while ((zoom < mRatios.length - 1)
+                && (Math.abs(mRatios[zoom + 1] - mTarget) < Math.abs(mRatios[zoom] - mTarget))) {
+            ++zoom;
+        }
+        while ((zoom > 0)
+                && (Math.abs(mRatios[zoom - 1] - mTarget) < Math.abs(mRatios[zoom] - mTarget))) {
+            --zoom;
+        }
+        mZoom = zoom;
+        return zoom;
+    }
+
+    /**
+     * ピンチ以外でズームが変更された場合に、目標の倍率をそのズームの倍率に合わせます。
+     */
+    void setZoom(int zoom) {
+        mZoom = Math.max(0, Math.min(mRatios.length - 1, zoom));
+        mTarget = mRatios[mZoom];
+    }
+
+    int getZoom() {
+        return mZoom;
+    }
+
+    /**
+     * 丸める前の目標の倍率（100倍した値）を返します。
+     */
+    float getTargetRatio() {
+        return mTarget;
+    }
+}
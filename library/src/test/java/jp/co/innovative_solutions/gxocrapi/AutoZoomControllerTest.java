@@ -0,0 +1,100 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 偽の時計と偽のカメラで{@link AutoZoomController}の判断を確認します。
+ * 偽のカメラは要求されたズームをすぐに適用し、テキストの高さはズームの倍率に比例して大きくなります。
+ */
+public class AutoZoomControllerTest {
+    private static final int MAX_ZOOM = 30;
+    private static final long FRAME_INTERVAL_MILLIS = 100;
+
+    private long mNowMillis = 10000;
+    private int mZoom;
+
+    @Test
+    public void smallTextZoomsInUntilReadable() {
+        AutoZoomController controller = new AutoZoomController(24, 64);
+        controller.start(mNowMillis);
+
+        // ズーム0で12ピクセルの文字は、倍率が2倍になる位置までズームインされます。
+        runCamera(controller, 5000, 12);
+
+        int height = textHeight(12);
+        assertTrue("height " + height, height >= 24 && height <= 64);
+        assertEquals(0, controller.getZoomOutCount());
+        assertTrue(controller.getZoomInCount() > 0);
+    }
+
+    @Test
+    public void waitsForTheCameraToSettleBetweenSteps() {
+        AutoZoomController controller = new AutoZoomController(24, 64);
+        controller.start(mNowMillis);
+
+        assertEquals(3, controller.onCandidates(mNowMillis, 10, 0, MAX_ZOOM));
+        assertEquals(3, controller.onCandidates(mNowMillis + AutoZoomController.SETTLE_MILLIS - 1, 10, 3, MAX_ZOOM));
+        assertEquals(6, controller.onCandidates(mNowMillis + AutoZoomController.SETTLE_MILLIS, 10, 3, MAX_ZOOM));
+        // 最大のズームを超えることはありません。
+        assertEquals(MAX_ZOOM, controller.onCandidates(mNowMillis + 10000, 10, MAX_ZOOM - 1, MAX_ZOOM));
+    }
+
+    @Test
+    public void largeOrMissingTextZoomsOut() {
+        AutoZoomController controller = new AutoZoomController(24, 64);
+        controller.start(mNowMillis);
+
+        assertEquals(17, controller.onCandidates(mNowMillis, 100, 20, MAX_ZOOM));
+
+        // テキストが見えなくなってもすぐにはズームアウトしません。
+        mZoom = 17;
+        mNowMillis += AutoZoomController.SETTLE_MILLIS;
+        assertEquals(17, controller.onCandidates(mNowMillis, 0, mZoom, MAX_ZOOM));
+        runCamera(controller, 10000, 0);
+        assertEquals(0, mZoom);
+        assertEquals(0, controller.getZoomInCount());
+    }
+
+    @Test
+    public void manualZoomSuspendsAutomaticZoom() {
+        AutoZoomController controller = new AutoZoomController(24, 64);
+        controller.start(mNowMillis);
+
+        controller.onManualZoom(mNowMillis);
+        assertEquals(5, controller.onCandidates(mNowMillis + 1000, 10, 5, MAX_ZOOM));
+        assertEquals(8, controller.onCandidates(
+                mNowMillis + AutoZoomController.MANUAL_HOLD_MILLIS, 10, 5, MAX_ZOOM));
+    }
+
+    @Test
+    public void unsupportedZoomIsLeftAlone() {
+        AutoZoomController controller = new AutoZoomController(24, 64);
+        controller.start(mNowMillis);
+        assertEquals(0, controller.onCandidates(mNowMillis, 10, 0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvertedRange() {
+        new AutoZoomController(64, 24);
+    }
+
+    /**
+     * ズーム0での高さがbaseHeightのテキストを、durationMillisの間カメラに映します。baseHeightが0の場合はテキストなしです。
+     */
+    private void runCamera(AutoZoomController controller, long durationMillis, int baseHeight) {
+        long end = mNowMillis + durationMillis;
+        while (mNowMillis < end) {
+            mZoom = controller.onCandidates(mNowMillis, textHeight(baseHeight), mZoom, MAX_ZOOM);
+            mNowMillis += FRAME_INTERVAL_MILLIS;
+        }
+    }
+
+    /**
+     * 偽のカメラの倍率はズーム0で1倍、最大のズームで4倍です。
+     */
+    private int textHeight(int baseHeight) {
+        return Math.round(baseHeight * (1 + 3.0f * mZoom / MAX_ZOOM));
+    }
+}
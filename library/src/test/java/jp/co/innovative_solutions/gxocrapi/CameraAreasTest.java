@@ -0,0 +1,58 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CameraAreasTest {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    @Test
+    public void scanBandWithoutRotationIsHorizontal() {
+        int[] area = CameraAreas.scanBand(WIDTH, HEIGHT, 0, 0.25f);
+        assertArrayEquals(new int[] {-1000, -250, 1000, 250}, area);
+    }
+
+    @Test
+    public void scanBandInPortraitSpansSensorColumns() {
+        // 縦持ちの背面カメラでは、画面の横方向の帯はセンサーの縦方向の帯になります。
+        int[] area = CameraAreas.scanBand(WIDTH, HEIGHT, 1, 0.25f);
+        assertArrayEquals(new int[] {-250, -1000, 250, 1000}, area);
+        assertArrayEquals(area, CameraAreas.scanBand(WIDTH, HEIGHT, 3, 0.25f));
+    }
+
+    @Test
+    public void uprightRectangleFollowsRotation() {
+        // 正立画像の左上の隅の矩形
+        assertArrayEquals(new int[] {-1000, -1000, -500, -500},
+                CameraAreas.fromUpright(WIDTH, HEIGHT, 0, 0, 0, 320, 180));
+        // 90度: 正立画像の左上はセンサーの左下
+        assertArrayEquals(new int[] {-1000, 500, -500, 1000},
+                CameraAreas.fromUpright(WIDTH, HEIGHT, 1, 0, 0, 180, 320));
+        // 180度: 右下
+        assertArrayEquals(new int[] {500, 500, 1000, 1000},
+                CameraAreas.fromUpright(WIDTH, HEIGHT, 2, 0, 0, 320, 180));
+        // 270度: 右上
+        assertArrayEquals(new int[] {500, -1000, 1000, -500},
+                CameraAreas.fromUpright(WIDTH, HEIGHT, 3, 0, 0, 180, 320));
+    }
+
+    @Test
+    public void rectangleOutsideTheFrameIsClamped() {
+        assertArrayEquals(new int[] {-1000, -1000, 1000, 1000},
+                CameraAreas.fromUpright(WIDTH, HEIGHT, 0, -100, -100, WIDTH + 100, HEIGHT + 100));
+    }
+
+    @Test
+    public void smallAreaIsExpandedAroundItsCenter() {
+        assertArrayEquals(new int[] {-100, 0, 100, 200},
+                CameraAreas.expand(new int[] {-10, 90, 10, 110}, 200));
+        // 範囲の端では内側にずらします。
+        assertArrayEquals(new int[] {800, -1000, 1000, -800},
+                CameraAreas.expand(new int[] {990, -1000, 1000, -990}, 200));
+        // 十分に大きい領域はそのままです。
+        assertArrayEquals(new int[] {-500, -500, 500, 500},
+                CameraAreas.expand(new int[] {-500, -500, 500, 500}, 200));
+    }
+}
@@ -0,0 +1,76 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CameraCapabilitiesTest {
+    private static CameraCapabilities create() {
+        return new CameraCapabilities(0, 0, 90,
+                new int[] {1920, 1080, 1280, 720, 640, 480},
+                new int[] {4032, 3024, 1920, 1080},
+                new int[] {15000, 30000, 30000, 30000},
+                Arrays.asList("auto", "continuous-picture", "fixed"),
+                Arrays.asList("off", "torch"));
+    }
+
+    @Test
+    public void encodedCapabilitiesRoundTrip() {
+        CameraCapabilities capabilities = create();
+        CameraCapabilities decoded = CameraCapabilities.decode(capabilities.encode());
+
+        assertEquals(capabilities, decoded);
+        assertEquals(capabilities.hashCode(), decoded.hashCode());
+        assertEquals(90, decoded.getOrientation());
+        assertEquals(3, decoded.getPreviewSizeCount());
+        assertEquals(1280, decoded.getPreviewWidth(1));
+        assertEquals(720, decoded.getPreviewHeight(1));
+        assertEquals(3024, decoded.getPictureHeight(0));
+        assertEquals(30000, decoded.getMinFps(1));
+        assertTrue(decoded.getFocusModes().contains("continuous-picture"));
+        assertEquals(Arrays.asList("off", "torch"), decoded.getFlashModes());
+    }
+
+    @Test
+    public void emptyListsRoundTrip() {
+        // フロントカメラにはフラッシュがなく、モードのリストがnullになることがあります。
+        CameraCapabilities capabilities = new CameraCapabilities(1, 1, 270,
+                new int[] {640, 480}, new int[0], new int[] {30000, 30000}, null, null);
+        CameraCapabilities decoded = CameraCapabilities.decode(capabilities.encode());
+
+        assertEquals(capabilities, decoded);
+        assertEquals(0, decoded.getPictureSizeCount());
+        assertEquals(Collections.<String>emptyList(), decoded.getFlashModes());
+    }
+
+    @Test
+    public void differentCapabilitiesAreNotEqual() {
+        CameraCapabilities other = new CameraCapabilities(0, 0, 90,
+                new int[] {1920, 1080, 1280, 720},
+                new int[] {4032, 3024, 1920, 1080},
+                new int[] {15000, 30000, 30000, 30000},
+                Arrays.asList("auto", "continuous-picture", "fixed"),
+                Arrays.asList("off", "torch"));
+        assertNotEquals(create(), other);
+    }
+
+    @Test
+    public void brokenOrOldFormatIsIgnored() {
+        String encoded = create().encode();
+        assertNull(CameraCapabilities.decode(null));
+        assertNull(CameraCapabilities.decode(""));
+        assertNull(CameraCapabilities.decode(encoded.substring(0, encoded.length() / 2)));
+        assertNull(CameraCapabilities.decode(encoded.replace("1280x720", "1280*720")));
+        assertNull(CameraCapabilities.decode(encoded.replace("1920x1080,1280", "1920x1080,abc")));
+        assertNull(CameraCapabilities.decode((CameraCapabilities.FORMAT_VERSION + 1)
+                + encoded.substring(encoded.indexOf(';'))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSizeList() {
+        new CameraCapabilities(0, 0, 90, new int[] {640}, new int[0], new int[0], null, null);
+    }
+}
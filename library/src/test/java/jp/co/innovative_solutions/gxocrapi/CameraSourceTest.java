@@ -0,0 +1,335 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import android.content.ContextWrapper;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.text.TextBlock;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * カメラの代わりの供給元と検出器を使って、{@link CameraSource}のフレーム処理ループを確認します。
+ * 検出時間はフレームごとに変えていますが、検査するのは配信の順序と完了だけで、処理時間には依存しません。
+ */
+public class CameraSourceTest {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+    private static final int FRAME_COUNT = 40;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void detectorWorkersDeliverEveryTakenFrameInOrder() throws Exception {
+        int workers = 3;
+        FakeFrameSource source = new FakeFrameSource(FRAME_COUNT, workers + 2);
+        FakeDetector<Object> detector = new FakeDetector<>();
+        RecordingProcessor processor = new RecordingProcessor();
+        CameraSource cameraSource = new CameraSource.Builder(new ContextWrapper(null), detector)
+                .setFrameSource(source)
+                .setDetectorWorkers(workers, processor)
+                .build();
+
+        cameraSource.start();
+        // 最後のフレームは後のフレームに置き換えられないため、必ず配信されます。
+        assertTrue(processor.awaitFrame(FRAME_COUNT, TIMEOUT_MILLIS));
+        cameraSource.stop();
+
+        List<Integer> delivered = processor.getFrameIds();
+        for (int i = 1; i < delivered.size(); ++i) {
+            assertTrue("Out of order: " + delivered, delivered.get(i) > delivered.get(i - 1));
+        }
+        assertEquals(FRAME_COUNT, (int) delivered.get(delivered.size() - 1));
+
+        // 受け取ったフレームは、検出されて配信されたか、取り出される前に置き換えられたかのどちらかです。
+        FrameStatistics.Snapshot statistics = cameraSource.getFrameStatistics();
+        assertEquals(FRAME_COUNT, statistics.getReceivedCount());
+        assertEquals(delivered.size(), statistics.getProcessedCount());
+        assertEquals(FRAME_COUNT, statistics.getProcessedCount() + statistics.getReplacedCount());
+        assertEquals(delivered.size(), detector.getDetectCount());
+        // 全てのバッファが供給元に戻されています。
+        assertEquals(workers + 2, source.getFreeBufferCount());
+        // カメラのプレビューバッファを使わない供給元では、停止後のバッファ不足の数は0です。
+        assertNull(cameraSource.getPreviewBufferPool());
+        assertEquals(0, cameraSource.getBufferStarvationCount());
+        assertEquals(0, cameraSource.getDroppedFrameCount());
+
+        cameraSource.release();
+        assertTrue(processor.isReleased());
+    }
+
+    @Test
+    public void workerDetectorsAreEachCalledFromOneThread() throws Exception {
+        FakeFrameSource source = new FakeFrameSource(FRAME_COUNT, 4);
+        FakeDetector<Object> first = new FakeDetector<>();
+        FakeDetector<Object> second = new FakeDetector<>();
+        RecordingProcessor processor = new RecordingProcessor();
+        CameraSource cameraSource = new CameraSource.Builder(new ContextWrapper(null), first)
+                .setFrameSource(source)
+                .setDetectorWorkers(processor, second)
+                .build();
+
+        cameraSource.start();
+        assertTrue(processor.awaitFrame(FRAME_COUNT, TIMEOUT_MILLIS));
+        cameraSource.stop();
+
+        // 各検出器は1つのワーカースレッドからだけ呼び出され、2つの検出器が同じスレッドを使うことはありません。
+        Set<String> firstThreads = first.getThreadNames();
+        Set<String> secondThreads = second.getThreadNames();
+        assertTrue(firstThreads.toString(), firstThreads.size() <= 1);
+        assertTrue(secondThreads.toString(), secondThreads.size() <= 1);
+        assertTrue(Collections.disjoint(firstThreads, secondThreads));
+        assertEquals(processor.getFrameIds().size(), first.getDetectCount() + second.getDetectCount());
+
+        cameraSource.release();
+        assertTrue(first.isReleased());
+        assertTrue(second.isReleased());
+        assertTrue(processor.isReleased());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void workerDetectorsMustNotBeShared() {
+        FakeDetector<Object> detector = new FakeDetector<>();
+        new CameraSource.Builder(new ContextWrapper(null), detector)
+                .setDetectorWorkers(new RecordingProcessor(), detector);
+    }
+
+    @Test
+    public void receiveFramePathRecordsEveryStage() throws Exception {
+        FakeFrameSource source = new FakeFrameSource(FRAME_COUNT, 3);
+        FakeDetector<TextBlock> detector = new FakeDetector<>();
+        ContextWrapper context = new ContextWrapper(null);
+        OcrDetectorProcessor processor = new OcrDetectorProcessor(
+                new GraphicOverlay<OcrGraphic>(context, null), null);
+        // アプリの以前の構成と同じく、プロセッサを検出器に設定してreceiveFrameで配信させます。
+        detector.setProcessor(processor);
+        CameraSource cameraSource = new CameraSource.Builder(context, detector)
+                .setFrameSource(source)
+                .setLatencyTracking(true)
+                .build();
+        processor.setCameraSource(cameraSource);
+        PipelineLatencyTracker tracker = cameraSource.getLatencyTracker();
+
+        cameraSource.start();
+        assertTrue(detector.awaitFrame(FRAME_COUNT, TIMEOUT_MILLIS));
+        cameraSource.stop();
+
+        // 検出結果が空のため結果は配信されませんが、絞り込みの終了までの全ての段階が検出したフレームごとに1回ずつ記録されます。
+        long processed = cameraSource.getFrameStatistics().getProcessedCount();
+        assertTrue(processed > 0);
+        for (int stage = PipelineLatencyTracker.STAGE_HANDOFF;
+             stage <= PipelineLatencyTracker.STAGE_FILTER_END; ++stage) {
+            assertEquals("stage " + stage, processed, tracker.getCount(stage));
+        }
+        assertEquals(0, tracker.getCount(PipelineLatencyTracker.STAGE_DELIVERED));
+
+        cameraSource.release();
+    }
+
+    /**
+     * 空いているバッファがある限り、指定した数のフレームを続けて供給する供給元。
+     */
+    static class FakeFrameSource implements FrameSource {
+        private final int mFrameCount;
+        private final BlockingQueue<ByteBuffer> mFreeBuffers;
+        private volatile boolean mStopped;
+        private Thread mThread;
+
+        FakeFrameSource(int frameCount, int bufferCount) {
+            mFrameCount = frameCount;
+            mFreeBuffers = new ArrayBlockingQueue<>(bufferCount);
+            for (int i = 0; i < bufferCount; ++i) {
+                mFreeBuffers.add(ByteBuffer.wrap(new byte[WIDTH * HEIGHT * 3 / 2]));
+            }
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public int getRotation() {
+            return Frame.ROTATION_0;
+        }
+
+        @Override
+        public float getMaxFps() {
+            return 30.0f;
+        }
+
+        @Override
+        public void start(final FrameCallback callback) throws IOException {
+            mStopped = false;
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int sent = 0;
+                    while (!mStopped && (sent < mFrameCount)) {
+                        ByteBuffer buffer;
+                        try {
+                            buffer = mFreeBuffers.poll(10, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        if (buffer != null) {
+                            sent++;
+                            buffer.array()[0] = (byte) sent;
+                            callback.onFrame(buffer);
+                        }
+                    }
+                }
+            }, "FakeFrameSource");
+            mThread.start();
+        }
+
+        @Override
+        public void stop() {
+            mStopped = true;
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void releaseFrame(ByteBuffer data) {
+            mFreeBuffers.add(data);
+        }
+
+        int getFreeBufferCount() {
+            return mFreeBuffers.size();
+        }
+    }
+
+    /**
+     * フレームIDによって検出時間を変え、後のフレームが先に検出を終えるようにする検出器。
+     * 検出時間を指定した場合は、全てのフレームで同じ時間をかけます。
+     */
+    static class FakeDetector<T> extends Detector<T> {
+        private final long mDetectMillis;
+        private final AtomicInteger mDetectCount = new AtomicInteger();
+        private final Set<String> mThreadNames = Collections.synchronizedSet(new HashSet<String>());
+        private volatile boolean mReleased;
+        private int mLastFrameId;
+
+        FakeDetector() {
+            this(-1);
+        }
+
+        FakeDetector(long detectMillis) {
+            mDetectMillis = detectMillis;
+        }
+
+        @Override
+        public SparseArray<T> detect(Frame frame) {
+            mDetectCount.incrementAndGet();
+            mThreadNames.add(Thread.currentThread().getName());
+            synchronized (this) {
+                mLastFrameId = Math.max(mLastFrameId, frame.getMetadata().getId());
+                notifyAll();
+            }
+            try {
+                if (mDetectMillis >= 0) {
+                    Thread.sleep(mDetectMillis);
+                } else {
+                    Thread.sleep((frame.getMetadata().getId() % 3 == 0) ? 8 : 1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new SparseArray<>();
+        }
+
+        @Override
+        public void release() {
+            mReleased = true;
+            super.release();
+        }
+
+        int getDetectCount() {
+            return mDetectCount.get();
+        }
+
+        Set<String> getThreadNames() {
+            synchronized (mThreadNames) {
+                return new HashSet<>(mThreadNames);
+            }
+        }
+
+        boolean isReleased() {
+            return mReleased;
+        }
+
+        synchronized boolean awaitFrame(int frameId, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (mLastFrameId < frameId) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 配信された検出結果のフレームIDを記録するプロセッサ。
+     */
+    static class RecordingProcessor implements Detector.Processor<Object> {
+        private final List<Integer> mFrameIds = new ArrayList<>();
+        private boolean mReleased;
+
+        @Override
+        public synchronized void receiveDetections(Detector.Detections<Object> detections) {
+            mFrameIds.add(detections.getFrameMetadata().getId());
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void release() {
+            mReleased = true;
+        }
+
+        synchronized boolean awaitFrame(int frameId, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!mFrameIds.contains(frameId)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        synchronized List<Integer> getFrameIds() {
+            return new ArrayList<>(mFrameIds);
+        }
+
+        synchronized boolean isReleased() {
+            return mReleased;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CodeConsensusTest {
+    @Test
+    public void singleVoteReportsImmediately() {
+        CodeConsensus consensus = new CodeConsensus(1, 0, 1);
+        consensus.onFrame();
+        assertEquals("ABC12D345E", consensus.vote(0, "ABC12D345E"));
+        assertEquals(1, consensus.getReportCount());
+    }
+
+    @Test
+    public void agreeingFramesReportTheCode() {
+        CodeConsensus consensus = new CodeConsensus(2, 0.6f, 10);
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC12D345E"));
+        consensus.onFrame();
+        assertEquals("ABC12D345E", consensus.vote(0, "ABC12D345E"));
+        // 報告した後は票が取り消されます。
+        assertEquals(0, consensus.getVoteCount(0));
+    }
+
+    @Test
+    public void misreadCharacterIsOutvotedPerPosition() {
+        CodeConsensus consensus = new CodeConsensus(2, 0.6f, 10);
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC12D345E"));
+        consensus.onFrame();
+        // 8文字目を読み違えたフレーム。8文字目は1票ずつで、まだ報告しません。
+        assertNull(consensus.vote(0, "ABC12D385E"));
+        consensus.onFrame();
+        // 3票のうち2票が4で、割合も0.6以上になります。
+        assertEquals("ABC12D345E", consensus.vote(0, "ABC12D345E"));
+    }
+
+    @Test
+    public void misreadsOfTheSameCodeCombine() {
+        // 同じコードを毎回1文字ずつ違う位置で読み違えたフレームです。互いに2文字しか違わないため、同じ候補の票になります。
+        CodeConsensus consensus = new CodeConsensus(2, 0.5f, 10);
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC12D845E"));
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC72D345E"));
+        consensus.onFrame();
+        // 3つ目のフレームも読み違えていますが、位置ごとには正しい文字が多数になります。
+        assertEquals("ABC12D345E", consensus.vote(0, "ABC12D345B"));
+        assertEquals(1, consensus.getReportCount());
+    }
+
+    @Test
+    public void alternatingCodesAreNeverMixed() {
+        // 同じ書式の2つのコードが並んでいて、フレームごとに交互に読み取られる場合です。
+        String[] codes = {"ABC12D345E", "XYZ98B765W"};
+        CodeConsensus consensus = new CodeConsensus(2, 0.5f, 10);
+        int reported = 0;
+        for (int n = 0; n < 40; ++n) {
+            consensus.onFrame();
+            String result = consensus.vote(0, codes[n % 2]);
+            if (result != null) {
+                // 報告するのは、どちらかのフレームが実際に読み取ったコードだけです。
+                assertTrue(result, result.equals(codes[0]) || result.equals(codes[1]));
+                reported++;
+            } else {
+                
+            }
+        }
+        assertTrue(reported > 0);
+    }
+
+    @Test
+    public void neighbouringCodeDoesNotOutvoteMisreads() {
+        CodeConsensus consensus = new CodeConsensus(2, 0.5f, 10);
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "XBC12D345E"));
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "AYC12D345E"));
+        consensus.onFrame();
+        // 隣のコードの票が加わっても、先頭の2文字だけを置き換えた"XYC12D345E"は報告しません。
+        assertNull(consensus.vote(0, "XYZ98B765W"));
+        assertEquals(2, consensus.getCandidateCount());
+        consensus.onFrame();
+        assertEquals("ABC12D345E", consensus.vote(0, "ABC12D345E"));
+    }
+
+    @Test
+    public void closeAlternatingCodesAreNeverMixed() {
+        // 2文字だけ違うため同じ候補の票になりますが、票が同じ数の位置があるうちは報告しません。
+        String[] codes = {"ABC12D345E", "ABC12D346F"};
+        CodeConsensus consensus = new CodeConsensus(2, 0.5f, 10);
+        for (int n = 0; n < 40; ++n) {
+            consensus.onFrame();
+            String result = consensus.vote(0, codes[n % 2]);
+            if (result != null) {
+                assertTrue(result, result.equals(codes[0]) || result.equals(codes[1]));
+            }
+        }
+    }
+
+    @Test
+    public void oldestCandidateIsReplaced() {
+        CodeConsensus consensus = new CodeConsensus(2, 0, 20);
+        String[] codes = {"AAAAAAAAAA", "BBBBBBBBBB", "CCCCCCCCCC", "DDDDDDDDDD", "EEEEEEEEEE"};
+        for (String code : codes) {
+            consensus.onFrame();
+            assertNull(consensus.vote(0, code));
+        }
+        // 最初のコードの候補が取り消されています。
+        
+        assertEquals(4, consensus.getVoteCount(0));
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "AAAAAAAAAA"));
+        consensus.onFrame();
+        assertEquals("EEEEEEEEEE", consensus.vote(0, "EEEEEEEEEE"));
+    }
+
+    @Test
+    public void oldFramesAreForgotten() {
+        CodeConsensus consensus = new CodeConsensus(2, 0.6f, 3);
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC12D345E"));
+        consensus.onFrame();
+        consensus.onFrame();
+        assertEquals(1, consensus.getVoteCount(0));
+        consensus.onFrame();
+        // 3フレームより前の票は取り消されています。
+        assertEquals(0, consensus.getVoteCount(0));
+        assertNull(consensus.vote(0, "ABC12D345E"));
+    }
+
+    @Test
+    public void formatsAreVotedSeparately() {
+        CodeConsensus consensus = new CodeConsensus(2, 0.6f, 10);
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC12D345E"));
+        consensus.onFrame();
+        assertNull(consensus.vote(1, "JP-12345"));
+        consensus.onFrame();
+        assertEquals("JP-12345", consensus.vote(1, "JP-12345"));
+    }
+
+    @Test
+    public void disagreementBlocksTheReport() {
+        CodeConsensus consensus = new CodeConsensus(2, 0.75f, 10);
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC12D345E"));
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "XYZ98B765W"));
+        consensus.onFrame();
+        // 2票ありますが、3票のうちの75%に届きません。
+        assertNull(consensus.vote(0, "ABC12D345E"));
+        consensus.onFrame();
+        assertEquals("ABC12D345E", consensus.vote(0, "ABC12D345E"));
+    }
+
+    @Test
+    public void reportsTheCostOfTheReportedCode() {
+        CodeConsensus consensus = new CodeConsensus(2, 0.6f, 10);
+        assertEquals(-1, consensus.getReportedFormat());
+        consensus.onFrame();
+        assertNull(consensus.vote(1, "JP-12345", 1));
+        consensus.onFrame();
+        assertNull(consensus.vote(1, "JP-12845", 0));
+        consensus.onFrame();
+        // 最後のフレームは読み違えたコードにそのまま一致しましたが、報告するのは直して読み取ったコードです。
+        assertEquals("JP-12345", consensus.vote(1, "JP-12345", 2));
+        assertEquals(1, consensus.getReportedFormat());
+        assertEquals(1, consensus.getReportedCost());
+    }
+
+    @Test
+    public void combinedCodeReportsTheLowestCostOfItsCandidate() {
+        CodeConsensus consensus = new CodeConsensus(2, 0.5f, 10);
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC12D845E", 2));
+        consensus.onFrame();
+        assertNull(consensus.vote(0, "ABC72D345E", 1));
+        consensus.onFrame();
+        assertEquals("ABC12D345E", consensus.vote(0, "ABC12D345B", 3));
+        assertEquals(0, consensus.getReportedFormat());
+        assertEquals(1, consensus.getReportedCost());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowMustHoldTheRequiredVotes() {
+        new CodeConsensus(3, 0.5f, 2);
+    }
+}
@@ -0,0 +1,80 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CodeCorrectorTest {
+    @Test
+    public void repairsConfusionsByPositionClass() {
+        CodeCorrector corrector = new CodeCorrector(CodeGrammar.DEFAULT, 4);
+        // 数字の位置のO、l、Sと、英字の位置の8を直します。
+        assertTrue(corrector.find("Lot ABCO1DS4l8"));
+        assertEquals("ABC01D541B", corrector.group());
+        assertEquals(4, corrector.start());
+        assertEquals(14, corrector.end());
+        assertEquals(4, corrector.cost());
+        assertEquals(0, corrector.format());
+    }
+
+    @Test
+    public void alphanumericPositionIsNotCorrected() {
+        CodeCorrector corrector = new CodeCorrector(CodeGrammar.DEFAULT, 2);
+        // 6文字目は英字でも数字でもよいため、Oも0もそのまま使います。
+        assertTrue(corrector.find("ABC12O345E"));
+        assertEquals("ABC12O345E", corrector.group());
+        assertEquals(0, corrector.cost());
+    }
+
+    @Test
+    public void skipsSpacesAndHyphensInsideTheCandidate() {
+        CodeCorrector corrector = new CodeCorrector(CodeGrammar.DEFAULT, 2);
+        assertTrue(corrector.find("ABC 12D-345E"));
+        assertEquals("ABC12D345E", corrector.group());
+        assertEquals(0, corrector.start());
+        assertEquals(12, corrector.end());
+        assertEquals(2, corrector.cost());
+    }
+
+    @Test
+    public void literalHyphenInTheFormatIsKept() {
+        CodeCorrector corrector = new CodeCorrector(CodeGrammar.compile("AA-NNNNN"), 1);
+        assertTrue(corrector.find("JP-1234S"));
+        assertEquals("JP-12345", corrector.group());
+        assertEquals(1, corrector.cost());
+    }
+
+    @Test
+    public void costAboveTheLimitIsRejected() {
+        CodeCorrector corrector = new CodeCorrector(CodeGrammar.DEFAULT, 2);
+        assertFalse(corrector.find("ABCOO DOOOE"));
+        assertFalse(corrector.find("ABC12D34"));
+        assertFalse(corrector.find("AB?12D345E"));
+    }
+
+    @Test
+    public void cheapestCorrectionWins() {
+        CodeCorrector corrector = new CodeCorrector(CodeGrammar.DEFAULT, 2);
+        // 左の候補は2文字、右の候補は1文字の修正が必要です。
+        assertTrue(corrector.find("ABCOODl23E XYZ9BZ876W"));
+        assertEquals("XYZ98Z876W", corrector.group());
+        assertEquals(1, corrector.cost());
+    }
+
+    @Test
+    public void earlierFormatWinsAtTheSameCost() {
+        CodeCorrector corrector = new CodeCorrector(CodeGrammar.compile("NNNN", "XXXX"), 1);
+        assertTrue(corrector.find("12O4"));
+        assertEquals(1, corrector.format());
+        assertEquals(0, corrector.cost());
+        corrector = new CodeCorrector(CodeGrammar.compile("NNNN", "AAAA"), 1);
+        assertTrue(corrector.find("12O4"));
+        assertEquals(0, corrector.format());
+        assertEquals("1204", corrector.group());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCost() {
+        new CodeCorrector(CodeGrammar.DEFAULT, 0);
+    }
+}
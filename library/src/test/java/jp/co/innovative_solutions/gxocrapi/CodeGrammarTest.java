@@ -0,0 +1,71 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CodeGrammarTest {
+    @Test
+    public void describesFormats() {
+        CodeGrammar grammar = CodeGrammar.compile(CodeGrammar.DEFAULT_FORMAT, "AA-NNNNN", "\\A\\NNN");
+        assertEquals(3, grammar.getFormatCount());
+        assertEquals("AA-NNNNN", grammar.getFormat(1));
+        assertEquals(10, grammar.getLength(0));
+        assertEquals(8, grammar.getLength(1));
+        assertEquals(4, grammar.getLength(2));
+        assertEquals(5, grammar.getGroupCount(0));
+        assertEquals(0, grammar.getGroupCount(1));
+        assertEquals(10, grammar.getMaxLength());
+        assertEquals(5, grammar.getGroupStart(0, 3));
+        assertEquals(6, grammar.getGroupEnd(0, 3));
+    }
+
+    @Test
+    public void escapedLettersAreLiterals() {
+        CodePatternMatcher matcher = new CodePatternMatcher(CodeGrammar.compile("\\A\\NNN"));
+        assertTrue(matcher.find("xAN12"));
+        assertEquals(1, matcher.start());
+        assertFalse(matcher.find("BC12"));
+    }
+
+    @Test
+    public void acceptsUpToMaxPositions() {
+        StringBuilder format = new StringBuilder();
+        for (int i = 0; i < CodeGrammar.MAX_POSITIONS / 2; ++i) {
+            format.append('A');
+        }
+        CodeGrammar grammar = CodeGrammar.compile(format.toString(), format.toString().replace('A', 'N'));
+        CodePatternMatcher matcher = new CodePatternMatcher(grammar);
+        // 2つ目の書式の最後の位置のビットは符号ビットです。
+        assertTrue(matcher.find("a" + format.toString().replace('A', '7')));
+        assertEquals(1, matcher.format());
+        assertEquals(1, matcher.start());
+    }
+
+    @Test
+    public void rejectsInvalidFormats() {
+        String[] invalid = {"", "()", "(AA", "AA)", "((A))", "A(A(A)A)", "AA\\", "AÄ"};
+        for (String format : invalid) {
+            try {
+                CodeGrammar.compile(format);
+                fail(format);
+            } catch (IllegalArgumentException expected) {
+                // 正しくない書式は例外になります。
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoFormats() {
+        CodeGrammar.compile();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyPositions() {
+        StringBuilder format = new StringBuilder();
+        for (int i = 0; i <= CodeGrammar.MAX_POSITIONS; ++i) {
+            format.append('N');
+        }
+        CodeGrammar.compile(format.toString());
+    }
+}
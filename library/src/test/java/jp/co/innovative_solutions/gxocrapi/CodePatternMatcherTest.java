@@ -0,0 +1,252 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link CodePatternMatcher}が変更前の正規表現と同じ結果になることを確認します。
+ * 正規表現との処理時間の比較はシステムプロパティ{@code gxocrapi.benchmark}がtrueの場合（{@code ./gradlew test -Pbenchmark}）だけ実行し、
+ * 結果を標準出力に表示します。環境に依存する速度の判定は行いません。
+ */
+public class CodePatternMatcherTest {
+    // 変更前の処理で使っていた正規表現
+    private static final String REGEX = "([a-zA-Z]{3})([0-9]{2})([a-zA-Z0-9])([0-9]{3})([a-zA-Z])";
+    private static final Pattern PATTERN = Pattern.compile(REGEX);
+
+    // OCRの結果に現れやすい文字。英数字の他に、空白、記号、全角数字、ラテン文字以外の英字を含みます。
+    private static final String ALPHABET = "ABCXYZabcxyzOIl0123456789 -/.\n１Äß";
+
+    // 処理時間の比較に使う入力。2つだけが一致します。
+    private static final String[] BENCHMARK_INPUTS = {
+            "TOKYO 100-0005 JAPAN", "Lot ABC12D345E", "ABC12D345", "abcdefghijklmnopqrstuvwxyz",
+            "0123456789", "XYZ98 765 4321", "Serial: QRS45T678U (2019)", "",
+    };
+
+    @Test
+    public void findsCodeInsideText() {
+        CodePatternMatcher matcher = new CodePatternMatcher();
+        assertTrue(matcher.find("No. ABC12D345E/2019"));
+        assertEquals(4, matcher.start());
+        assertEquals(14, matcher.end());
+        assertEquals("ABC12D345E", matcher.group());
+        assertEquals("ABC", matcher.group(1));
+        assertEquals("12", matcher.group(2));
+        assertEquals("D", matcher.group(3));
+        assertEquals("345", matcher.group(4));
+        assertEquals("E", matcher.group(5));
+        assertEquals('4', matcher.charAt(4, 1));
+    }
+
+    @Test
+    public void overlappingPrefixesStillMatch() {
+        // 先頭の候補が途中で失敗しても、その中から始まる一致を見つけます。
+        CodePatternMatcher matcher = new CodePatternMatcher();
+        assertTrue(matcher.find("ABCD12E345F"));
+        assertEquals(1, matcher.start());
+        assertEquals("BCD12E345F", matcher.group());
+        assertTrue(matcher.find("abc12xyz12A345B"));
+        assertEquals("xyz12A345B", matcher.group());
+    }
+
+    @Test
+    public void noMatch() {
+        CodePatternMatcher matcher = new CodePatternMatcher();
+        assertFalse(matcher.find(""));
+        assertFalse(matcher.find("ABC12D345"));
+        assertFalse(matcher.find("ABC12D3456"));
+        assertFalse(matcher.hasMatch());
+        try {
+            matcher.group();
+            fail();
+        } catch (IllegalStateException expected) {
+            // 一致がない場合はMatcherと同じく例外になります。
+        }
+    }
+
+    @Test
+    public void behavesLikeTheRegex() {
+        CodePatternMatcher matcher = new CodePatternMatcher();
+        Random random = new Random(20);
+        StringBuilder builder = new StringBuilder();
+        for (int n = 0; n < 200000; ++n) {
+            builder.setLength(0);
+            int length = random.nextInt(24);
+            for (int i = 0; i < length; ++i) {
+                builder.append(randomChar(random, n));
+            }
+            String input = builder.toString();
+            int from = (length > 0) ? random.nextInt(length + 1) : 0;
+
+            Matcher expected = PATTERN.matcher(input);
+            boolean found = expected.find(from);
+            assertEquals(input, found, matcher.find(input, from));
+            if (found) {
+                assertEquals(expected.groupCount(), matcher.groupCount());
+                for (int group = 0; group <= expected.groupCount(); ++group) {
+                    assertEquals(input, expected.start(group), matcher.start(group));
+                    assertEquals(input, expected.end(group), matcher.end(group));
+                    assertEquals(input, expected.group(group), matcher.group(group));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkInputsMatchLikeTheRegex() {
+        CodePatternMatcher matcher = new CodePatternMatcher();
+        int found = 0;
+        for (String input : BENCHMARK_INPUTS) {
+            Matcher expected = PATTERN.matcher(input);
+            boolean expectedFound = expected.find();
+            assertEquals(input, expectedFound, matcher.find(input));
+            if (expectedFound) {
+                assertEquals(input, expected.group(), matcher.group());
+                found++;
+            }
+        }
+        assertEquals(2, found);
+    }
+
+    @Test
+    public void comparedWithTheRegex() {
+        Assume.assumeTrue(Boolean.getBoolean("gxocrapi.benchmark"));
+        String[] inputs = BENCHMARK_INPUTS;
+        int iterations = 200000;
+        int found = 0;
+        CodePatternMatcher matcher = new CodePatternMatcher();
+        for (int warmup = 0; warmup < 2; ++warmup) {
+            long regexStart = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                // 変更前の処理と同じく、毎回コンパイルします。
+                if (Pattern.compile(REGEX).matcher(inputs[i % inputs.length]).find()) {
+                    found++;
+                }
+            }
+            long compiledStart = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                if (PATTERN.matcher(inputs[i % inputs.length]).find()) {
+                    found++;
+                }
+            }
+            long matcherStart = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                if (matcher.find(inputs[i % inputs.length])) {
+                    found++;
+                }
+            }
+            long end = System.nanoTime();
+            if (warmup == 1) {
+                System.out.println("CodePatternMatcher: regex compiled per call " + (compiledStart - regexStart) / iterations
+                        + " ns, precompiled regex " + (matcherStart - compiledStart) / iterations
+                        + " ns, hand-written " + (end - matcherStart) / iterations + " ns per input");
+            }
+        }
+        assertEquals(2 * 3 * iterations / inputs.length * 2, found);
+    }
+
+    @Test
+    public void reportsWhichFormatMatched() {
+        CodePatternMatcher matcher = new CodePatternMatcher(
+                CodeGrammar.compile(CodeGrammar.DEFAULT_FORMAT, "(AA)(NNNNNN)", "(AA)-(NNNNN)"));
+        assertTrue(matcher.find("ref JP-12345"));
+        assertEquals(2, matcher.format());
+        assertEquals("JP-12345", matcher.group());
+        assertEquals("12345", matcher.group(2));
+
+        assertTrue(matcher.find("old XY123456 label"));
+        assertEquals(1, matcher.format());
+        assertEquals(2, matcher.groupCount());
+
+        assertTrue(matcher.find("ABC12D345E"));
+        assertEquals(0, matcher.format());
+    }
+
+    @Test
+    public void longerFormatStartingFurtherLeftWins() {
+        // 8文字の書式が先に末尾まで一致しますが、10文字の書式の方が左から始まります。
+        CodePatternMatcher matcher = new CodePatternMatcher(CodeGrammar.compile("NNNNNNNN", "AANNNNNNNN"));
+        assertTrue(matcher.find("AB12345678"));
+        assertEquals(1, matcher.format());
+        assertEquals(0, matcher.start());
+    }
+
+    @Test
+    public void earlierFormatWinsAtTheSameStart() {
+        CodePatternMatcher matcher = new CodePatternMatcher(CodeGrammar.compile("XXXX", "AANN"));
+        assertTrue(matcher.find("AB12"));
+        assertEquals(0, matcher.format());
+        matcher = new CodePatternMatcher(CodeGrammar.compile("AANN", "XXXX"));
+        assertTrue(matcher.find("AB12"));
+        assertEquals(0, matcher.format());
+        assertTrue(matcher.find("1AB2"));
+        assertEquals(1, matcher.format());
+    }
+
+    @Test
+    public void severalFormatsBehaveLikeRegexAlternation() {
+        String[] formats = {"(AAA)(NN)(X)(NNN)(A)", "AANNNNNN", "(AA)-(NNNNN)", "N\\A\\XA", "XXX.N"};
+        CodePatternMatcher matcher = new CodePatternMatcher(CodeGrammar.compile(formats));
+        StringBuilder regex = new StringBuilder();
+        for (String format : formats) {
+            regex.append((regex.length() == 0) ? "(?:" : "|").append(toRegex(format));
+        }
+        Matcher expected = Pattern.compile(regex.append(")").toString()).matcher("");
+
+        Random random = new Random(21);
+        StringBuilder builder = new StringBuilder();
+        for (int n = 0; n < 200000; ++n) {
+            builder.setLength(0);
+            int length = random.nextInt(24);
+            for (int i = 0; i < length; ++i) {
+                builder.append((random.nextInt(8) == 0) ? "-.\\".charAt(random.nextInt(3)) : randomChar(random, n));
+            }
+            String input = builder.toString();
+            boolean found = expected.reset(input).find();
+            assertEquals(input, found, matcher.find(input));
+            if (found) {
+                assertEquals(input, expected.group(), matcher.group());
+            }
+        }
+    }
+
+    /**
+     * 書式を同じ意味の正規表現に変換します。グループは数えないため、非キャプチャにします。
+     */
+    private static String toRegex(String format) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < format.length(); ++i) {
+            char c = format.charAt(i);
+            if (c == 'A') {
+                regex.append("[a-zA-Z]");
+            } else if (c == 'N') {
+                regex.append("[0-9]");
+            } else if (c == 'X') {
+                regex.append("[a-zA-Z0-9]");
+            } else if (c == '(') {
+                regex.append("(?:");
+            } else if (c == ')') {
+                regex.append(')');
+            } else {
+                if (c == '\\') {
+                    c = format.charAt(++i);
+                }
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    private static char randomChar(Random random, int n) {
+        // 一致が十分に現れるように、半分の入力は英字と数字だけで作ります。
+        if ((n % 2) == 0) {
+            return (random.nextInt(2) == 0) ? (char) ('A' + random.nextInt(3)) : (char) ('0' + random.nextInt(3));
+        }
+        return ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+    }
+}
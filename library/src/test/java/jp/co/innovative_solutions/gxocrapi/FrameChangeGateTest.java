@@ -0,0 +1,59 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrameChangeGateTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    @Test
+    public void skipsUnchangedFramesUpToLimit() {
+        FrameChangeGate gate = new FrameChangeGate(2.0f, 3);
+        byte[] frame = createFrame(100);
+
+        assertTrue(gate.shouldProcess(frame, WIDTH, HEIGHT));
+        assertFalse(gate.shouldProcess(frame, WIDTH, HEIGHT));
+        assertFalse(gate.shouldProcess(frame, WIDTH, HEIGHT));
+        assertFalse(gate.shouldProcess(frame, WIDTH, HEIGHT));
+        // 連続読み飛ばしの上限に達したので、変化がなくても通過します。
+        assertTrue(gate.shouldProcess(frame, WIDTH, HEIGHT));
+
+        assertEquals(2, gate.getPassedCount());
+        assertEquals(3, gate.getSkippedCount());
+    }
+
+    @Test
+    public void passesChangedFrames() {
+        FrameChangeGate gate = new FrameChangeGate(2.0f, 10);
+        assertTrue(gate.shouldProcess(createFrame(100), WIDTH, HEIGHT));
+        assertFalse(gate.shouldProcess(createFrame(101), WIDTH, HEIGHT));
+
+        byte[] changed = createFrame(100);
+        // 画面の上半分にテキストが入ってきたような変化
+        Arrays.fill(changed, 0, WIDTH * HEIGHT / 2, (byte) 20);
+        assertTrue(gate.shouldProcess(changed, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void resetSignatureForcesNextFrame() {
+        FrameChangeGate gate = new FrameChangeGate(2.0f, 10);
+        byte[] frame = createFrame(100);
+        assertTrue(gate.shouldProcess(frame, WIDTH, HEIGHT));
+        gate.resetSignature();
+        assertTrue(gate.shouldProcess(frame, WIDTH, HEIGHT));
+
+        gate.resetCounts();
+        assertEquals(0, gate.getPassedCount());
+        assertEquals(0, gate.getSkippedCount());
+    }
+
+    private static byte[] createFrame(int luma) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(frame, (byte) luma);
+        return frame;
+    }
+}
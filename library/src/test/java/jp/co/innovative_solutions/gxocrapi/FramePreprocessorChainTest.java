@@ -0,0 +1,94 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FramePreprocessorChainTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 96;
+
+    @Test
+    public void stagesRunInOrderAndReportScale() {
+        FramePreprocessorChain chain = new FramePreprocessorChain(Arrays.<FramePreprocessor>asList(
+                new ContrastStretchPreprocessor(16),
+                new InvertPreprocessor(),
+                new DownscalePreprocessor(2)));
+        byte[] data = createFrame();
+        FramePreprocessor.Image image = new FramePreprocessor.Image();
+        image.set(data, WIDTH, HEIGHT);
+
+        chain.process(image);
+
+        assertEquals(WIDTH / 2, image.getWidth());
+        assertEquals(HEIGHT / 2, image.getHeight());
+        assertEquals(2.0f, chain.getOutputScale(), 0);
+        // 100..200の輝度は0..255に引き伸ばされてから反転されます。
+        assertEquals(255, data[0] & 0xff);
+        assertEquals(0, data[WIDTH / 2 - 1] & 0xff);
+        assertEquals(128, data[(WIDTH / 2) * (HEIGHT / 2)] & 0xff);
+        for (int i = 0; i < chain.getStageCount(); ++i) {
+            assertEquals(1, chain.getCount(i));
+        }
+    }
+
+    @Test
+    public void configuredChainDoesNotAllocatePerFrame() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        FramePreprocessorChain chain = new FramePreprocessorChain(Arrays.<FramePreprocessor>asList(
+                new ContrastStretchPreprocessor(16),
+                new InvertPreprocessor(),
+                new DownscalePreprocessor(2)));
+        byte[] data = createFrame();
+        FramePreprocessor.Image image = new FramePreprocessor.Image();
+        long threadId = Thread.currentThread().getId();
+
+        // JITのコンパイルが落ち着くまで実行してから計測します。
+        for (int i = 0; i < 2000; ++i) {
+            image.set(data, WIDTH, HEIGHT);
+            chain.process(image);
+        }
+
+        long overhead = measureOverhead(threads, threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; ++i) {
+            image.set(data, WIDTH, HEIGHT);
+            chain.process(image);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertTrue("allocated " + allocated + " bytes in 1000 frames", allocated < 1000);
+    }
+
+    /**
+     * 計測そのものが割り当てるバイト数を返します。
+     */
+    private static long measureOverhead(com.sun.management.ThreadMXBean threads, long threadId) {
+        long before = threads.getThreadAllocatedBytes(threadId);
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    /**
+     * 左半分の輝度が100、右半分が200の画像を作成します。
+     */
+    private static byte[] createFrame() {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                frame[y * WIDTH + x] = (byte) ((x < WIDTH / 2) ? 100 : 200);
+            }
+        }
+        Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 90);
+        return frame;
+    }
+}
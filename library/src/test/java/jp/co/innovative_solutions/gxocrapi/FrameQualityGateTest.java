@@ -0,0 +1,63 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameQualityGateTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    @Test
+    public void sharpEdgesScoreHigherThanBlurredEdges() {
+        float sharp = FrameQualityGate.computeSharpness(createStripes(false), WIDTH, HEIGHT);
+        float blurred = FrameQualityGate.computeSharpness(createStripes(true), WIDTH, HEIGHT);
+        assertTrue(sharp + " <= " + blurred, sharp > blurred * 4);
+    }
+
+    @Test
+    public void rejectsBlurredFramesAndCountsReason() {
+        FrameQualityGate gate = new FrameQualityGate(
+                FrameQualityGate.computeSharpness(createStripes(true), WIDTH, HEIGHT) * 2, true);
+
+        assertTrue(gate.shouldProcess(createStripes(false), WIDTH, HEIGHT));
+        assertFalse(gate.shouldProcess(createStripes(true), WIDTH, HEIGHT));
+
+        assertEquals(1, gate.getPassedCount());
+        assertEquals(1, gate.getBlurRejectedCount());
+        assertEquals(0, gate.getFocusRejectedCount());
+    }
+
+    @Test
+    public void rejectsFramesWhileFocusing() {
+        FrameQualityGate gate = new FrameQualityGate(0, true);
+        gate.setFocusMoving(true);
+        assertFalse(gate.shouldProcess(createStripes(false), WIDTH, HEIGHT));
+        gate.setFocusMoving(false);
+        assertTrue(gate.shouldProcess(createStripes(false), WIDTH, HEIGHT));
+
+        assertEquals(1, gate.getFocusRejectedCount());
+        gate.resetCounts();
+        assertEquals(0, gate.getFocusRejectedCount());
+        assertEquals(0, gate.getPassedCount());
+    }
+
+    /**
+     * 8画素幅の縦縞を作成します。blurがtrueの場合は縞の境界をなだらかにします。
+     */
+    private static byte[] createStripes(boolean blur) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int value;
+                if (blur) {
+                    value = (int) (128 + 100 * Math.sin(x * Math.PI / 8));
+                } else {
+                    value = ((x / 8) % 2 == 0) ? 30 : 220;
+                }
+                frame[y * WIDTH + x] = (byte) value;
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,87 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 偽の時計と偽の検出器で{@link FrameRateController}の判断を確認します。
+ * カメラは15fpsでフレームを届け、偽の検出器は決まった処理時間と候補の有無を返します。
+ */
+public class FrameRateControllerTest {
+    private static final float CAMERA_FPS = 15.0f;
+    private static final long FRAME_INTERVAL_MILLIS = 66;
+
+    private long mNowMillis = 10000;
+
+    @Test
+    public void startsAtCameraMaximum() {
+        FrameRateController controller = new FrameRateController(1.0f, 1);
+        controller.start(CAMERA_FPS, mNowMillis);
+        assertEquals(CAMERA_FPS, controller.getEffectiveFps(), 0.01f);
+    }
+
+    @Test
+    public void decaysToMinimumWhenNothingIsInView() {
+        FrameRateController controller = new FrameRateController(1.0f, 1);
+        controller.start(CAMERA_FPS, mNowMillis);
+
+        int processed = runCamera(controller, 10000, 20, false);
+
+        assertEquals(1.0f, controller.getEffectiveFps(), 0.01f);
+        // 15fpsから1秒ごとに半減するので、10秒間の大半は最低レートで動きます。
+        assertTrue("processed " + processed, processed < 40);
+    }
+
+    @Test
+    public void candidateRaisesRateImmediately() {
+        FrameRateController controller = new FrameRateController(1.0f, 1);
+        controller.start(CAMERA_FPS, mNowMillis);
+        runCamera(controller, 10000, 20, false);
+        assertEquals(1.0f, controller.getEffectiveFps(), 0.01f);
+
+        controller.onCandidates(mNowMillis, true);
+        assertEquals(CAMERA_FPS, controller.getEffectiveFps(), 0.01f);
+
+        int processed = runCamera(controller, 1000, 20, true);
+        assertTrue("processed " + processed, processed >= 14);
+    }
+
+    @Test
+    public void rateIsCappedByDetectorCapacity() {
+        FrameRateController controller = new FrameRateController(1.0f, 2);
+        controller.start(CAMERA_FPS, mNowMillis);
+
+        // 2ワーカーで1フレーム400msなので、処理能力は5fpsです。
+        runCamera(controller, 3000, 400, true);
+        assertEquals(5.0f, controller.getEffectiveFps(), 0.5f);
+    }
+
+    @Test
+    public void neverDropsBelowMinimum() {
+        FrameRateController controller = new FrameRateController(2.0f, 1);
+        controller.start(CAMERA_FPS, mNowMillis);
+        runCamera(controller, 2000, 2000, false);
+        assertEquals(2.0f, controller.getEffectiveFps(), 0.01f);
+    }
+
+    /**
+     * 指定した時間だけカメラのフレームを届け、コントローラーが受け付けたフレームを偽の検出器で処理します。
+     *
+     * @return 検出器に渡されたフレームの数
+     */
+    private int runCamera(FrameRateController controller, long durationMillis,
+                          long detectorLatencyMillis, boolean candidateInView) {
+        long end = mNowMillis + durationMillis;
+        int processed = 0;
+        while (mNowMillis < end) {
+            if (controller.shouldProcess(mNowMillis)) {
+                processed++;
+                controller.onFrameProcessed(detectorLatencyMillis);
+                controller.onCandidates(mNowMillis, candidateInView);
+            }
+            mNowMillis += FRAME_INTERVAL_MILLIS;
+        }
+        return processed;
+    }
+}
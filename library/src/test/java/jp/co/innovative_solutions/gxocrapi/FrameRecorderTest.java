@@ -0,0 +1,94 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameRecorderTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("recorder", ".nv21");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void ringKeepsNewestFramesForReplay() throws Exception {
+        FrameRecorder recorder = new FrameRecorder(mFile, 4);
+        recorder.open(WIDTH, HEIGHT, 1);
+        byte[] frame = new byte[FrameFileFormat.frameSize(WIDTH, HEIGHT)];
+        for (int i = 1; i <= 6; ++i) {
+            frame[0] = (byte) i;
+            recorder.record(frame, 100 + i, i * 33L);
+        }
+        recorder.close();
+        assertEquals(6, recorder.getRecordedCount());
+
+        ByteBuffer file = readFile();
+        assertEquals(4, file.getInt(FrameFileFormat.OFFSET_COUNT));
+        assertEquals(2, file.getInt(FrameFileFormat.OFFSET_FIRST));
+        assertEquals(1, file.getInt(FrameFileFormat.OFFSET_ROTATION));
+        int oldest = (int) FrameFileFormat.recordOffset(2, WIDTH, HEIGHT);
+        assertEquals(103, file.getInt(oldest + FrameFileFormat.RECORD_OFFSET_FRAME_ID));
+        assertEquals(99L, file.getLong(oldest));
+
+        final List<Integer> frames = new ArrayList<>();
+        final ReplayFrameSource replay = new ReplayFrameSource(
+                mFile, ReplayFrameSource.MODE_AS_FAST_AS_POSSIBLE, 0, 1, false);
+        assertEquals(1, replay.getRotation());
+        replay.start(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(ByteBuffer data) {
+                frames.add((int) data.array()[0]);
+                replay.releaseFrame(data);
+            }
+        });
+        replay.awaitFinished();
+        replay.stop();
+
+        assertEquals(4, frames.size());
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(i + 3, (int) frames.get(i));
+        }
+    }
+
+    @Test
+    public void disabledRecorderWritesNothing() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(mFile, 2);
+        recorder.open(WIDTH, HEIGHT, 0);
+        recorder.setEnabled(false);
+        recorder.record(new byte[FrameFileFormat.frameSize(WIDTH, HEIGHT)], 1, 0);
+        recorder.close();
+
+        assertEquals(0, recorder.getRecordedCount());
+        assertEquals(0, readFile().getInt(FrameFileFormat.OFFSET_COUNT));
+    }
+
+    private ByteBuffer readFile() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return ByteBuffer.wrap(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+}
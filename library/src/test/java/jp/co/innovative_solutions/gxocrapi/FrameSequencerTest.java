@@ -0,0 +1,176 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import android.content.ContextWrapper;
+
+import com.google.android.gms.vision.Detector;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 合成検出器を使って、{@link FrameSequencer}による並列検出ワーカーの配信順序を確認します。
+ * 実際の処理ループでの配信順序は{@link CameraSourceTest}で確認します。
+ * ワーカー数によるスループットの比較はシステムプロパティ{@code gxocrapi.benchmark}がtrueの場合（{@code ./gradlew test -Pbenchmark}）だけ実行し、
+ * 結果を標準出力に表示します。
+ */
+public class FrameSequencerTest {
+    private static final long DETECT_MILLIS = 20;
+    private static final long RUN_MILLIS = 1000;
+
+    @Test
+    public void frameIdOrder_deliversEveryFrameInOrder() throws Exception {
+        SyntheticPipeline pipeline = new SyntheticPipeline(4, FrameSequencer.ORDER_FRAME_ID, true);
+        pipeline.run(RUN_MILLIS / 2);
+
+        List<Integer> delivered = pipeline.delivered();
+        assertFalse(delivered.isEmpty());
+        for (int i = 0; i < delivered.size(); ++i) {
+            assertEquals(i, (int) delivered.get(i));
+        }
+    }
+
+    @Test
+    public void latestWins_neverDeliversOlderFrame() throws Exception {
+        SyntheticPipeline pipeline = new SyntheticPipeline(4, FrameSequencer.ORDER_LATEST_WINS, true);
+        pipeline.run(RUN_MILLIS / 2);
+
+        List<Integer> delivered = pipeline.delivered();
+        assertFalse(delivered.isEmpty());
+        for (int i = 1; i < delivered.size(); ++i) {
+            assertTrue(delivered.get(i) > delivered.get(i - 1));
+        }
+        assertEquals(pipeline.taken(), delivered.size() + pipeline.mSequencer.getDroppedCount());
+    }
+
+    @Test
+    public void cancel_releasesWaitingWorkers() throws Exception {
+        final FrameSequencer sequencer = new FrameSequencer(FrameSequencer.ORDER_FRAME_ID);
+        sequencer.issue();
+        final long ticket = sequencer.issue();
+        final boolean[] acquired = {true};
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acquired[0] = sequencer.acquire(ticket);
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        assertTrue(waiter.isAlive());
+
+        sequencer.cancel();
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+        assertFalse(acquired[0]);
+    }
+
+    @Test
+    public void workerPool_scalesNearLinearly() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("gxocrapi.benchmark"));
+        // JITのために一度実行してから計測します。
+        measureFps(1);
+        double singleFps = measureFps(1);
+        double poolFps = measureFps(4);
+        System.out.println("detector workers: 1 worker " + singleFps + " fps, 4 workers " + poolFps + " fps");
+        assertTrue("Expected near-linear scaling, got " + singleFps + " -> " + poolFps,
+                poolFps >= singleFps * 3.0);
+    }
+
+    /**
+     * 実際の{@link CameraSource}の処理ループを、待たずにフレームを供給する供給元と一定時間かかる検出器で動かし、
+     * 検出したフレームの毎秒の数を返します。各ワーカーはアプリと同じく専用の検出器を使います。
+     */
+    private static double measureFps(int workers) throws Exception {
+        CameraSourceTest.FakeFrameSource source =
+                new CameraSourceTest.FakeFrameSource(Integer.MAX_VALUE, workers + 2);
+        Detector<?>[] workerDetectors = new Detector<?>[workers - 1];
+        for (int i = 0; i < workerDetectors.length; ++i) {
+            workerDetectors[i] = new CameraSourceTest.FakeDetector<>(DETECT_MILLIS);
+        }
+        CameraSource cameraSource = new CameraSource.Builder(new ContextWrapper(null),
+                new CameraSourceTest.FakeDetector<>(DETECT_MILLIS))
+                .setFrameSource(source)
+                .setDetectorWorkers(new CameraSourceTest.RecordingProcessor(), workerDetectors)
+                .build();
+        cameraSource.start();
+        Thread.sleep(RUN_MILLIS);
+        cameraSource.stop();
+        long processed = cameraSource.getFrameStatistics().getProcessedCount();
+        cameraSource.release();
+        return processed * 1000.0 / RUN_MILLIS;
+    }
+
+    /**
+     * CameraSource.FrameProcessingRunnableと同じ手順で、常にフレームが保留中の状態を模擬します。
+     * 検出はスリープで置き換え、ジッターを有効にすると検出時間がフレームごとにばらつきます。
+     */
+    private static class SyntheticPipeline {
+        private final int mWorkers;
+        private final boolean mJitter;
+        private final FrameSequencer mSequencer;
+        private final Object mLock = new Object();
+        private final List<Integer> mDelivered = new ArrayList<>();
+        private int mNextFrameId;
+        private volatile boolean mActive = true;
+
+        SyntheticPipeline(int workers, int order, boolean jitter) {
+            mWorkers = workers;
+            mJitter = jitter;
+            mSequencer = new FrameSequencer(order);
+        }
+
+        void run(long millis) throws InterruptedException {
+            Thread[] threads = new Thread[mWorkers];
+            for (int i = 0; i < threads.length; ++i) {
+                final Random random = new Random(i);
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        while (mActive) {
+                            int frameId;
+                            long ticket;
+                            synchronized (mLock) {
+                                frameId = mNextFrameId++;
+                                ticket = mSequencer.issue();
+                            }
+                            try {
+                                Thread.sleep(mJitter ? 1 + random.nextInt((int) DETECT_MILLIS * 2) : DETECT_MILLIS);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                            if (mSequencer.acquire(ticket)) {
+                                try {
+                                    mDelivered.add(frameId);
+                                } finally {
+                                    mSequencer.release(ticket);
+                                }
+                            }
+                        }
+                    }
+                });
+                threads[i].start();
+            }
+            Thread.sleep(millis);
+            mActive = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        List<Integer> delivered() {
+            return mDelivered;
+        }
+
+        int taken() {
+            synchronized (mLock) {
+                return mNextFrameId;
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FrameSlot}の受け渡しの正しさを確認し、以前のモニターによる受け渡しと遅延を比較します。
+ * 比較はシステムプロパティ{@code gxocrapi.benchmark}がtrueの場合（{@code ./gradlew test -Pbenchmark}）だけ実行し、
+ * 結果を標準出力に表示します。環境に依存する速度の判定は行いません。
+ */
+public class FrameSlotTest {
+    private static final int WORKERS = 3;
+    private static final int FRAMES = 20000;
+
+    @Test
+    public void everyFrameIsProcessedOrReturnedExactlyOnce() throws Exception {
+        final FrameSlot<Integer> slot = new FrameSlot<>(WORKERS);
+        final int[] seen = new int[FRAMES + 1];
+        final AtomicInteger lastProcessed = new AtomicInteger();
+        Thread[] workers = startWorkers(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Integer frame = slot.poll();
+                        if (frame == null) {
+                            if (!slot.isOpen()) {
+                                return;
+                            }
+                            slot.await();
+                            continue;
+                        }
+                        synchronized (seen) {
+                            seen[frame]++;
+                        }
+                        lastProcessed.set(frame);
+                    }
+                } catch (InterruptedException e) {
+                    fail();
+                }
+            }
+        });
+
+        for (int i = 1; i <= FRAMES; ++i) {
+            Integer replaced = slot.offer(i);
+            if (replaced != null) {
+                synchronized (seen) {
+                    seen[replaced]++;
+                }
+            }
+        }
+        // 最新のフレームは必ず処理されます。
+        while (lastProcessed.get() != FRAMES) {
+            Thread.sleep(1);
+        }
+        slot.close();
+        joinAll(workers);
+
+        for (int i = 1; i <= FRAMES; ++i) {
+            assertEquals("frame " + i, 1, seen[i]);
+        }
+    }
+
+    @Test
+    public void closeWakesWaitingWorkers() throws Exception {
+        final FrameSlot<Integer> slot = new FrameSlot<>(WORKERS);
+        Thread[] workers = startWorkers(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (slot.isOpen()) {
+                        slot.await();
+                    }
+                } catch (InterruptedException e) {
+                    fail();
+                }
+            }
+        });
+        Thread.sleep(50);
+        slot.close();
+        joinAll(workers);
+    }
+
+    @Test
+    public void compareHandoffWithMonitor() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("gxocrapi.benchmark"));
+        // JITのために一度ずつ実行してから計測します。
+        runLockFree();
+        runMonitor();
+        Result lockFree = runLockFree();
+        Result monitor = runMonitor();
+        System.out.println("frame handoff (offer avg/max, handoff avg): lock-free " + lockFree
+                + ", monitor " + monitor);
+    }
+
+    private static Result runLockFree() throws InterruptedException {
+        final FrameSlot<Long> slot = new FrameSlot<>(WORKERS);
+        final Object workerLock = new Object();
+        final Result result = new Result();
+        Thread[] workers = startWorkers(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Long offered;
+                        synchronized (workerLock) {
+                            if (!slot.isOpen()) {
+                                return;
+                            }
+                            offered = slot.poll();
+                            if (offered != null) {
+                                result.onHandoff(offered);
+                                simulateWorkUnderLock();
+                            }
+                        }
+                        if (offered == null) {
+                            slot.await();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    fail();
+                }
+            }
+        });
+        for (int i = 0; i < FRAMES; ++i) {
+            long start = System.nanoTime();
+            slot.offer(start);
+            result.onOffer(System.nanoTime() - start);
+            Thread.yield();
+        }
+        slot.close();
+        joinAll(workers);
+        return result;
+    }
+
+    private static Result runMonitor() throws InterruptedException {
+        final MonitorSlot slot = new MonitorSlot();
+        final Result result = new Result();
+        Thread[] workers = startWorkers(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        synchronized (slot) {
+                            while (slot.mActive && (slot.mPending == null)) {
+                                slot.wait();
+                            }
+                            if (!slot.mActive) {
+                                return;
+                            }
+                            result.onHandoff(slot.mPending);
+                            slot.mPending = null;
+                            simulateWorkUnderLock();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    fail();
+                }
+            }
+        });
+        for (int i = 0; i < FRAMES; ++i) {
+            long start = System.nanoTime();
+            synchronized (slot) {
+                slot.mPending = start;
+                slot.notifyAll();
+            }
+            result.onOffer(System.nanoTime() - start);
+            Thread.yield();
+        }
+        synchronized (slot) {
+            slot.mActive = false;
+            slot.notifyAll();
+        }
+        joinAll(workers);
+        return result;
+    }
+
+    /**
+     * チケットの発行や切り出し用バッファの貸し出しなど、処理スレッドがロックの中で行う短い処理を模擬します。
+     */
+    private static void simulateWorkUnderLock() {
+        long end = System.nanoTime() + 2000;
+        while (System.nanoTime() < end) {
+            // busy wait
+        }
+    }
+
+    private static Thread[] startWorkers(Runnable runnable) {
+        Thread[] workers = new Thread[WORKERS];
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i] = new Thread(runnable, "worker-" + i);
+            workers[i].start();
+        }
+        return workers;
+    }
+
+    private static void joinAll(Thread[] workers) throws InterruptedException {
+        for (Thread worker : workers) {
+            worker.join(10000);
+            assertFalse(worker.getName() + " did not terminate", worker.isAlive());
+        }
+    }
+
+    /**
+     * 以前の実装と同じ、モニターとwait/notifyAllによる受け渡し。
+     */
+    private static final class MonitorSlot {
+        boolean mActive = true;
+        Long mPending;
+    }
+
+    private static final class Result {
+        private final AtomicLong mOfferTotal = new AtomicLong();
+        private final AtomicLong mOfferMax = new AtomicLong();
+        private final AtomicLong mOfferCount = new AtomicLong();
+        private final AtomicLong mHandoffTotal = new AtomicLong();
+        private final AtomicLong mHandoffCount = new AtomicLong();
+
+        void onOffer(long nanos) {
+            mOfferTotal.addAndGet(nanos);
+            mOfferCount.incrementAndGet();
+            long max;
+            while (nanos > (max = mOfferMax.get()) && !mOfferMax.compareAndSet(max, nanos)) {
+                // retry
+            }
+        }
+
+        void onHandoff(long offeredNanos) {
+            mHandoffTotal.addAndGet(System.nanoTime() - offeredNanos);
+            mHandoffCount.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return (mOfferTotal.get() / Math.max(1, mOfferCount.get())) + "ns/"
+                    + mOfferMax.get() / 1000 + "us, "
+                    + (mHandoffTotal.get() / Math.max(1, mHandoffCount.get())) + "ns";
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameStatisticsTest {
+
+    @Test
+    public void snapshotReflectsCountsAtTheTimeItWasTaken() {
+        FrameStatistics statistics = new FrameStatistics(1000);
+        for (int i = 0; i < 30; ++i) {
+            statistics.onReceived();
+        }
+        for (int i = 0; i < 12; ++i) {
+            statistics.onReplaced();
+        }
+        for (int i = 0; i < 8; ++i) {
+            statistics.onSkipped();
+        }
+        for (int i = 0; i < 10; ++i) {
+            statistics.onProcessed();
+        }
+        statistics.onDetectorError();
+
+        FrameStatistics.Snapshot snapshot = statistics.getSnapshot(3000);
+        statistics.onReceived();
+
+        assertEquals(2000, snapshot.getElapsedMillis());
+        assertEquals(30, snapshot.getReceivedCount());
+        assertEquals(12, snapshot.getReplacedCount());
+        assertEquals(8, snapshot.getSkippedCount());
+        assertEquals(10, snapshot.getProcessedCount());
+        assertEquals(1, snapshot.getDetectorErrorCount());
+        assertEquals(5.0f, snapshot.getProcessedFps(), 0.001f);
+        assertEquals(31, statistics.getSnapshot(3000).getReceivedCount());
+    }
+
+    @Test
+    public void resetStartsANewSession() {
+        FrameStatistics statistics = new FrameStatistics(0);
+        statistics.onReceived();
+        statistics.onProcessed();
+        statistics.onDetectorError();
+
+        statistics.reset(5000);
+        FrameStatistics.Snapshot snapshot = statistics.getSnapshot(5000);
+
+        assertEquals(0, snapshot.getElapsedMillis());
+        assertEquals(0, snapshot.getReceivedCount());
+        assertEquals(0, snapshot.getProcessedCount());
+        assertEquals(0, snapshot.getDetectorErrorCount());
+        assertEquals(0, snapshot.getProcessedFps(), 0);
+    }
+}
@@ -0,0 +1,119 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+public class PipelineLatencyTrackerTest {
+    private static final long MICROS = 1000;
+
+    @Test
+    public void stageLatenciesAreMeasuredFromThePreviousStage() {
+        PipelineLatencyTracker tracker = new PipelineLatencyTracker();
+        tracker.mark(1, PipelineLatencyTracker.STAGE_CALLBACK, 1000 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_HANDOFF, 1003 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_DETECT_START, 1010 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_DETECT_END, 1510 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_FILTER_START, 1520 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_FILTER_END, 1620 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_DELIVERED, 1621 * MICROS);
+
+        assertEquals(3, tracker.getMaxMicros(PipelineLatencyTracker.STAGE_HANDOFF));
+        assertEquals(500, tracker.getAverageMicros(PipelineLatencyTracker.STAGE_DETECT_END));
+        assertEquals(100, tracker.getMaxMicros(PipelineLatencyTracker.STAGE_FILTER_END));
+        // 合計はコールバックから配信まで
+        assertEquals(621, tracker.getMaxMicros(PipelineLatencyTracker.STAGE_CALLBACK));
+        // 500マイクロ秒は256以上512未満のバケットに入ります。
+        assertEquals(1, tracker.getBucketCount(PipelineLatencyTracker.STAGE_DETECT_END, 9));
+        assertEquals(512, tracker.getPercentileMicros(PipelineLatencyTracker.STAGE_DETECT_END, 50));
+    }
+
+    @Test
+    public void marksOfUnknownOrReusedFramesAreIgnored() {
+        PipelineLatencyTracker tracker = new PipelineLatencyTracker();
+        tracker.mark(5, PipelineLatencyTracker.STAGE_HANDOFF, 10 * MICROS);
+        assertEquals(0, tracker.getCount(PipelineLatencyTracker.STAGE_HANDOFF));
+
+        // 同じ枠を使う後のフレームが届くと、前のフレームの時刻は使われません。
+        tracker.mark(1, PipelineLatencyTracker.STAGE_CALLBACK, 10 * MICROS);
+        tracker.mark(65, PipelineLatencyTracker.STAGE_CALLBACK, 20 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_HANDOFF, 30 * MICROS);
+        assertEquals(0, tracker.getCount(PipelineLatencyTracker.STAGE_HANDOFF));
+        tracker.mark(65, PipelineLatencyTracker.STAGE_HANDOFF, 30 * MICROS);
+        assertEquals(10, tracker.getMaxMicros(PipelineLatencyTracker.STAGE_HANDOFF));
+
+        // 飛ばされた段階の次の段階は集計されません。
+        tracker.mark(65, PipelineLatencyTracker.STAGE_DETECT_END, 40 * MICROS);
+        assertEquals(0, tracker.getCount(PipelineLatencyTracker.STAGE_DETECT_END));
+    }
+
+    @Test
+    public void laterMarksOfTheSameStageAreIgnored() {
+        PipelineLatencyTracker tracker = new PipelineLatencyTracker();
+        tracker.mark(1, PipelineLatencyTracker.STAGE_CALLBACK, 0);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_HANDOFF, 10 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_DETECT_START, 20 * MICROS);
+        // プロセッサが検出の終了を記録した後に、カメラソースがもう一度記録する場合
+        tracker.mark(1, PipelineLatencyTracker.STAGE_DETECT_END, 120 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_FILTER_START, 125 * MICROS);
+        tracker.mark(1, PipelineLatencyTracker.STAGE_DETECT_END, 400 * MICROS);
+
+        assertEquals(1, tracker.getCount(PipelineLatencyTracker.STAGE_DETECT_END));
+        assertEquals(100, tracker.getMaxMicros(PipelineLatencyTracker.STAGE_DETECT_END));
+        assertEquals(5, tracker.getMaxMicros(PipelineLatencyTracker.STAGE_FILTER_START));
+    }
+
+    @Test
+    public void percentilesUseBucketUpperBounds() {
+        PipelineLatencyTracker tracker = new PipelineLatencyTracker();
+        for (int i = 1; i <= 100; ++i) {
+            tracker.mark(i, PipelineLatencyTracker.STAGE_CALLBACK, 0);
+            // 90フレームは100マイクロ秒、10フレームは10ミリ秒
+            long latency = (i <= 90) ? 100 * MICROS : 10000 * MICROS;
+            tracker.mark(i, PipelineLatencyTracker.STAGE_HANDOFF, latency);
+        }
+        assertEquals(100, tracker.getCount(PipelineLatencyTracker.STAGE_HANDOFF));
+        assertEquals(128, tracker.getPercentileMicros(PipelineLatencyTracker.STAGE_HANDOFF, 90));
+        assertEquals(16384, tracker.getPercentileMicros(PipelineLatencyTracker.STAGE_HANDOFF, 95));
+        assertEquals(10000, tracker.getMaxMicros(PipelineLatencyTracker.STAGE_HANDOFF));
+
+        tracker.reset();
+        assertEquals(0, tracker.getCount(PipelineLatencyTracker.STAGE_HANDOFF));
+        assertEquals(0, tracker.getPercentileMicros(PipelineLatencyTracker.STAGE_HANDOFF, 50));
+    }
+
+    @Test
+    public void markingDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        PipelineLatencyTracker tracker = new PipelineLatencyTracker();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 1; i <= 20000; ++i) {
+            markAllStages(tracker, i);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 1; i <= 1000; ++i) {
+            markAllStages(tracker, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertTrue("allocated " + allocated + " bytes in 1000 frames", allocated < 1000);
+    }
+
+    private static void markAllStages(PipelineLatencyTracker tracker, int frameId) {
+        for (int stage = 0; stage < PipelineLatencyTracker.STAGE_COUNT; ++stage) {
+            tracker.mark(frameId, stage);
+        }
+    }
+}
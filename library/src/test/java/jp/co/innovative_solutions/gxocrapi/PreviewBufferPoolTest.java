@@ -0,0 +1,49 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PreviewBufferPoolTest {
+    private static final int BUFFER_SIZE = 64;
+    private static final long FRAME_INTERVAL_MILLIS = 33;
+
+    @Test
+    public void countForBudgetRespectsMinimum() {
+        assertEquals(5, PreviewBufferPool.countForBudget(5 * BUFFER_SIZE + 10, BUFFER_SIZE, 2));
+        assertEquals(2, PreviewBufferPool.countForBudget(BUFFER_SIZE, BUFFER_SIZE, 2));
+    }
+
+    @Test
+    public void lookupFindsOnlyOwnArrays() {
+        PreviewBufferPool pool = new PreviewBufferPool(3, BUFFER_SIZE, FRAME_INTERVAL_MILLIS);
+        for (int i = 0; i < pool.getBufferCount(); ++i) {
+            assertSame(pool.getArray(i), pool.lookup(pool.getArray(i)).array());
+        }
+        assertNull(pool.lookup(new byte[BUFFER_SIZE]));
+    }
+
+    @Test
+    public void countsStarvationAndDroppedFrames() {
+        PreviewBufferPool pool = new PreviewBufferPool(2, BUFFER_SIZE, FRAME_INTERVAL_MILLIS);
+        long now = 1000;
+        pool.onQueued(now);
+        pool.onQueued(now);
+
+        // 1つが戻っている間はカメラにもう1つ残っています。
+        pool.onFrameReceived(now);
+        assertEquals(0, pool.getStarvationCount());
+
+        // 両方とも処理中になると、カメラはバッファ不足になります。
+        pool.onFrameReceived(now + 33);
+        assertEquals(1, pool.getStarvationCount());
+
+        // 100ms後にバッファが戻ると、その間の3フレームが落とされたと推定されます。
+        pool.onQueued(now + 133);
+        assertEquals(3, pool.getDroppedFrameCount());
+
+        pool.resetCounts();
+        assertEquals(0, pool.getStarvationCount());
+        assertEquals(0, pool.getDroppedFrameCount());
+    }
+}
@@ -0,0 +1,65 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PreviewSizePolicyTest {
+    // よくある背面カメラのプレビューサイズ
+    private static final int[] WIDTHS = {1920, 1280, 1440, 960, 800, 640, 352, 320};
+    private static final int[] HEIGHTS = {1080, 720, 1080, 720, 600, 480, 288, 240};
+
+    @Test
+    public void picksSmallestSizeThatMakesTextReadable() {
+        // 文字は正立画像の高さの5%で、24ピクセル以上必要です。
+        PreviewSizePolicy policy = new PreviewSizePolicy(24, 0.05f, 0);
+
+        // 横持ちでは高さ480以上が必要で、その中で最も小さいのは640x480です。
+        assertEquals(5, policy.select(WIDTHS, HEIGHTS, false, 0));
+        // 縦持ちではセンサーの幅が正立画像の高さになるため、幅480以上の最小の640x480です。
+        assertEquals(5, policy.select(WIDTHS, HEIGHTS, true, 0));
+    }
+
+    @Test
+    public void largerTextTargetNeedsLargerFrames() {
+        PreviewSizePolicy policy = new PreviewSizePolicy(40, 0.05f, 0);
+        // 高さ800以上が必要で、1440x1080と1920x1080のうち画素数が少ない方です。
+        assertEquals(2, policy.select(WIDTHS, HEIGHTS, false, 0));
+    }
+
+    @Test
+    public void pixelCapFallsBackToLargestAllowedText() {
+        PreviewSizePolicy policy = new PreviewSizePolicy(40, 0.05f, 1280 * 720);
+        int index = policy.select(WIDTHS, HEIGHTS, false, 0);
+        // 上限以内で最も文字が大きいのは高さ720の2つで、画素数が少ない960x720です。
+        assertEquals(3, index);
+        assertEquals(36.0f, policy.getTextHeight(WIDTHS[index], HEIGHTS[index], false), 0.001f);
+    }
+
+    @Test
+    public void everySizeOverTheCapPicksTheSmallest() {
+        PreviewSizePolicy policy = new PreviewSizePolicy(24, 0.05f, 100);
+        assertEquals(7, policy.select(WIDTHS, HEIGHTS, false, 0));
+    }
+
+    @Test
+    public void aspectRatioBreaksTies() {
+        int[] widths = {1200, 1080};
+        int[] heights = {900, 1000};
+        PreviewSizePolicy policy = new PreviewSizePolicy(10, 0.05f, 0);
+        // 画素数が同じ場合は縦横比が16:9に近い方を選びます。
+        assertEquals(0, policy.select(widths, heights, false, 16.0f / 9));
+        assertEquals(1, policy.select(widths, heights, false, 1.0f));
+    }
+
+    @Test
+    public void noCandidates() {
+        PreviewSizePolicy policy = new PreviewSizePolicy(24, 0.05f, 0);
+        assertEquals(-1, policy.select(new int[0], new int[0], false, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRatio() {
+        new PreviewSizePolicy(24, 1.5f, 0);
+    }
+}
@@ -0,0 +1,75 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link PreviewTransform}のビュー座標系への変換と、プレビューの座標系への逆変換が一致することを確認します。
+ */
+public class PreviewTransformTest {
+    private static final float DELTA = 1e-3f;
+
+    @Test
+    public void scalesPreviewToView() {
+        PreviewTransform transform = PreviewTransform.create(640, 480, 1280, 1440, false);
+        assertEquals(2.0f, transform.getScaleX(), DELTA);
+        assertEquals(3.0f, transform.getScaleY(), DELTA);
+        assertEquals(200.0f, transform.toViewX(100), DELTA);
+        assertEquals(300.0f, transform.toViewY(100), DELTA);
+    }
+
+    @Test
+    public void mirrorsFrontCamera() {
+        PreviewTransform transform = PreviewTransform.create(640, 480, 1280, 960, true);
+        assertTrue(transform.isMirrored());
+        assertEquals(1080.0f, transform.toViewX(100), DELTA);
+        assertEquals(100.0f, transform.toPreviewX(1080), DELTA);
+    }
+
+    @Test
+    public void inverseMatchesForward() {
+        for (int mirrored = 0; mirrored < 2; ++mirrored) {
+            PreviewTransform transform = PreviewTransform.create(1920, 1080, 1080, 1794, mirrored == 1);
+            for (int x = 0; x <= 1920; x += 97) {
+                assertEquals(x, transform.toPreviewX(transform.toViewX(x)), DELTA);
+            }
+            for (int y = 0; y <= 1080; y += 89) {
+                assertEquals(y, transform.toPreviewY(transform.toViewY(y)), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void scanBandIsMappedOnce() {
+        // ビューの高さ960の中央の、高さ300のバンド（330〜630）です。
+        PreviewTransform transform = PreviewTransform.create(640, 480, 1280, 960, false, 300);
+        assertEquals(0.0f, transform.getScanLeft(), DELTA);
+        assertEquals(165.0f, transform.getScanTop(), DELTA);
+        assertEquals(640.0f, transform.getScanRight(), DELTA);
+        assertEquals(315.0f, transform.getScanBottom(), DELTA);
+        assertEquals(15.0f, transform.getNearTop(), DELTA);
+        assertEquals(465.0f, transform.getNearBottom(), DELTA);
+    }
+
+    @Test
+    public void scanBandIsOrderedWhenMirrored() {
+        PreviewTransform transform = PreviewTransform.create(640, 480, 1280, 960, true, 300);
+        assertEquals(0.0f, transform.getScanLeft(), DELTA);
+        assertEquals(640.0f, transform.getScanRight(), DELTA);
+        assertEquals(165.0f, transform.getScanTop(), DELTA);
+    }
+
+    @Test
+    public void unknownSizesDoNotScale() {
+        PreviewTransform unknownPreview = PreviewTransform.create(0, 0, 1080, 1920, false, 330);
+        assertEquals(1.0f, unknownPreview.getScaleY(), DELTA);
+        assertEquals(795.0f, unknownPreview.getScanTop(), DELTA);
+        assertEquals(1125.0f, unknownPreview.getScanBottom(), DELTA);
+        PreviewTransform mirrored = PreviewTransform.create(640, 480, 0, 0, true);
+        assertEquals(1.0f, mirrored.getScaleX(), DELTA);
+        assertEquals(50.0f, mirrored.toViewY(50), DELTA);
+        // ビューのサイズがわからない間は、スキャンバンドは空です。
+        assertEquals(PreviewTransform.IDENTITY.getScanTop(), PreviewTransform.IDENTITY.getScanBottom(), DELTA);
+    }
+}
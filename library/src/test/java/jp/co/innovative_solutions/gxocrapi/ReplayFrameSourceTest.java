@@ -0,0 +1,107 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReplayFrameSourceTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("replay", ".nv21");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void replaysRingInRecordedOrder() throws Exception {
+        // 容量4のリングに5フレームを書いた状態（最も古いフレームはレコード1）
+        writeRecording(new int[]{4, 1, 2, 3}, 4, 1);
+        ReplayFrameSource source = new ReplayFrameSource(
+                mFile, ReplayFrameSource.MODE_AS_FAST_AS_POSSIBLE, 0, 1, false);
+        assertEquals(WIDTH, source.getWidth());
+        assertEquals(HEIGHT, source.getHeight());
+        assertEquals(4, source.getFrameCount());
+
+        final List<Integer> frames = new ArrayList<>();
+        final ReplayFrameSource replay = source;
+        replay.start(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(ByteBuffer data) {
+                frames.add((int) data.array()[0]);
+                // バッファが1つしかないため、返さなければ次のフレームは届きません。
+                replay.releaseFrame(data);
+            }
+        });
+        replay.awaitFinished();
+        replay.stop();
+
+        assertEquals(4, frames.size());
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(i + 1, (int) frames.get(i));
+        }
+        assertEquals(0, replay.getDroppedFrameCount());
+    }
+
+    @Test
+    public void dropsFramesWhenBuffersAreHeld() throws Exception {
+        writeRecording(new int[]{1, 2, 3, 4, 5}, 5, 0);
+        final ReplayFrameSource source = new ReplayFrameSource(
+                mFile, ReplayFrameSource.MODE_FIXED_RATE, 200.0f, 2, false);
+        source.start(new FrameSource.FrameCallback() {
+            @Override
+            public void onFrame(ByteBuffer data) {
+                // バッファを返さないため、3フレーム目以降は落とされます。
+            }
+        });
+        source.awaitFinished();
+        source.stop();
+
+        assertEquals(2, source.getDeliveredFrameCount());
+        assertEquals(3, source.getDroppedFrameCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherFiles() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        raf.write(new byte[64]);
+        raf.close();
+        new ReplayFrameSource(mFile, ReplayFrameSource.MODE_REAL_TIME, 0, 1, false);
+    }
+
+    /**
+     * 各レコードの画像の先頭バイトに指定した値を書き込み、時刻は値×33msとします。
+     */
+    private void writeRecording(int[] values, int count, int first) throws IOException {
+        int recordSize = FrameFileFormat.recordSize(WIDTH, HEIGHT);
+        ByteBuffer buffer = ByteBuffer.allocate(FrameFileFormat.HEADER_SIZE + values.length * recordSize);
+        FrameFileFormat.writeHeader(buffer, WIDTH, HEIGHT, 0, values.length, count, first);
+        for (int i = 0; i < values.length; ++i) {
+            int offset = (int) FrameFileFormat.recordOffset(i, WIDTH, HEIGHT);
+            buffer.putLong(offset, values[i] * 33L);
+            buffer.put(offset + FrameFileFormat.RECORD_HEADER_SIZE, (byte) values[i]);
+        }
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.write(buffer.array());
+        } finally {
+            raf.close();
+        }
+    }
+}
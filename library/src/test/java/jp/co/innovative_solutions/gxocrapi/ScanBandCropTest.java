@@ -0,0 +1,83 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ScanBandCrop}の切り出しと座標の移動量が、全ての回転で元のフレームと一致することを確認します。
+ */
+public class ScanBandCropTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void croppedPixelsMapBackToFullFrame() {
+        byte[] frame = createFrame(WIDTH, HEIGHT);
+        for (int rotation = 0; rotation < 4; ++rotation) {
+            ScanBandCrop crop = ScanBandCrop.create(WIDTH, HEIGHT, rotation, 0.25f, 0.25f);
+            byte[] cropped = new byte[crop.getBufferSize()];
+            crop.copy(frame, cropped);
+
+            boolean sideways = (rotation % 2) == 1;
+            int uprightWidth = sideways ? crop.getHeight() : crop.getWidth();
+            int uprightHeight = sideways ? crop.getWidth() : crop.getHeight();
+            for (int y = 0; y < uprightHeight; ++y) {
+                for (int x = 0; x < uprightWidth; ++x) {
+                    int expected = frame[rawIndex(rotation, WIDTH, HEIGHT,
+                            x + crop.getOffsetX(), y + crop.getOffsetY())];
+                    int actual = cropped[rawIndex(rotation, crop.getWidth(), crop.getHeight(), x, y)];
+                    assertEquals("rotation " + rotation + " at " + x + "," + y, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bandIsCenteredWithMargin() {
+        ScanBandCrop crop = ScanBandCrop.create(WIDTH, HEIGHT, 1, 0.25f, 0.25f);
+        // 正立画像の高さは64で、帯は16、余白を含めて24になります。
+        assertEquals(24, crop.getWidth());
+        assertEquals(HEIGHT, crop.getHeight());
+        assertEquals(0, crop.getOffsetX());
+        assertEquals(20, crop.getOffsetY());
+    }
+
+    @Test
+    public void copiesChromaRows() {
+        byte[] frame = createFrame(WIDTH, HEIGHT);
+        ScanBandCrop crop = ScanBandCrop.create(WIDTH, HEIGHT, 0, 0.5f, 0);
+        byte[] cropped = new byte[crop.getBufferSize()];
+        crop.copy(frame, cropped);
+
+        int top = crop.getOffsetY();
+        int cropLuma = crop.getWidth() * crop.getHeight();
+        for (int i = 0; i < cropLuma / 2; ++i) {
+            assertEquals(frame[WIDTH * HEIGHT + (top / 2) * WIDTH + i], cropped[cropLuma + i]);
+        }
+    }
+
+    /**
+     * 正立座標から元のNV21画像の輝度の位置を求めます。
+     */
+    private static int rawIndex(int rotation, int width, int height, int x, int y) {
+        switch (rotation) {
+            case 1:
+                return (height - 1 - x) * width + y;
+            case 2:
+                return (height - 1 - y) * width + (width - 1 - x);
+            case 3:
+                return x * width + (width - 1 - y);
+            default:
+                return y * width + x;
+        }
+    }
+
+    private static byte[] createFrame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int i = 0; i < frame.length; ++i) {
+            frame[i] = (byte) (i * 7 + i / width);
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,86 @@
+package jp.co.innovative_solutions.gxocrapi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ZoomRatioTarget}が、ゆっくりしたピンチの小さな倍率の変化を積み上げてズームを進めることを確認します。
+ */
+public class ZoomRatioTargetTest {
+    // 1段階が100%ずつの粗い倍率（1倍、2倍、3倍、4倍）
+    private static final int[] COARSE_RATIOS = {100, 200, 300, 400};
+    private static final float SLOW_PINCH = 1.01f;
+
+    @Test
+    public void slowPinchAccumulatesAcrossSteps() {
+        ZoomRatioTarget target = new ZoomRatioTarget(COARSE_RATIOS, 0);
+        // 1回の変化は半段階よりはるかに小さいですが、積み上げると目標の倍率に追いつきます。
+        int steps = 0;
+        while ((target.getZoom() < COARSE_RATIOS.length - 1) && (steps < 1000)) {
+            int before = target.getZoom();
+            int zoom = target.scaleBy(SLOW_PINCH);
+            assertTrue(zoom >= before);
+            steps++;
+        }
+        assertEquals(COARSE_RATIOS.length - 1, target.getZoom());
+        // 1.01^n が 3.5倍を超えるのは n=126 の時です。
+        assertEquals(126, steps);
+    }
+
+    @Test
+    public void manySmallStepsFollowTheRoundedRatio() {
+        int[] ratios = new int[31];
+        for (int i = 0; i < ratios.length; ++i) {
+            ratios[i] = 100 + i * 10;
+        }
+        ZoomRatioTarget target = new ZoomRatioTarget(ratios, 0);
+        float expected = 100.0f;
+        // 1.01^140 は4倍を超えるため、最後は最大の倍率で止まります。
+        for (int i = 0; i < 140; ++i) {
+            int zoom = target.scaleBy(SLOW_PINCH);
+            expected = Math.min(400.0f, expected * SLOW_PINCH);
+            assertEquals(expected, target.getTargetRatio(), 0.5f);
+            assertTrue(Math.abs(ratios[zoom] - target.getTargetRatio()) <= 5.0f);
+        }
+        assertEquals(ratios.length - 1, target.getZoom());
+    }
+
+    @Test
+    public void slowPinchOutAccumulatesFromTheMaximum() {
+        ZoomRatioTarget target = new ZoomRatioTarget(COARSE_RATIOS, 0);
+        for (int i = 0; i < 500; ++i) {
+            target.scaleBy(SLOW_PINCH);
+        }
+        // 最大の倍率で止めているため、縮小はすぐに効き始めます。
+        assertEquals(400.0f, target.getTargetRatio(), 0.01f);
+        int steps = 0;
+        while ((target.getZoom() == COARSE_RATIOS.length - 1) && (steps < 1000)) {
+            target.scaleBy(1.0f / SLOW_PINCH);
+            steps++;
+        }
+        assertEquals(COARSE_RATIOS.length - 2, target.getZoom());
+        // 400 / 1.01^n が 3.5倍を下回るのは n=14 の時です。
+        assertEquals(14, steps);
+    }
+
+    @Test
+    public void setZoomRestartsFromThatRatio() {
+        ZoomRatioTarget target = new ZoomRatioTarget(COARSE_RATIOS, 0);
+        for (int i = 0; i < 30; ++i) {
+            target.scaleBy(SLOW_PINCH);
+        }
+        assertEquals(0, target.getZoom());
+        target.setZoom(2);
+        assertEquals(300.0f, target.getTargetRatio(), 0.0f);
+        assertEquals(2, target.scaleBy(SLOW_PINCH));
+        // 範囲外のズームは最も近い段階になります。
+        target.setZoom(10);
+        assertEquals(COARSE_RATIOS.length - 1, target.getZoom());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyRatios() {
+        new ZoomRatioTarget(new int[0], 0);
+    }
+}